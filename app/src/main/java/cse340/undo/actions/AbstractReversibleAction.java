@@ -3,6 +3,8 @@ package cse340.undo.actions;
 import android.support.annotation.CallSuper;
 import android.util.Log;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import cse340.undo.app.DrawingView;
 
 /**
@@ -15,9 +17,41 @@ import cse340.undo.app.DrawingView;
  * @see AbstractReversibleAction#undoAction(DrawingView)
  */
 public abstract class AbstractReversibleAction extends AbstractAction {
+    /** Rough number of bytes retained by an action with only a few primitive fields. */
+    protected static final long BASE_RETAINED_SIZE = 32;
+
+    /** Id which is never given to an action, used to ask for a new one. */
+    protected static final long NEW_ID = 0;
+
+    /** Next id to give to an action. Atomic, since actions are re-read on background threads. */
+    private static final AtomicLong sNextId = new AtomicLong(NEW_ID + 1);
+
+    /** Unique id of this action, which is kept when the action is saved and re-read. */
+    private long mId = sNextId.getAndIncrement();
+
     /** Whether or not this action is currently done (a.k.a. not undone). */
     private boolean mDone;
 
+    /**
+     * Identifies this action across copies re-created from storage, e.g. by a TieredHistory or a
+     * JournalHistory, which are different objects with the same id.
+     *
+     * @return Unique id of this action.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Restores the id of an action re-created from storage.
+     *
+     * @param id    Id of the saved action.
+     */
+    void setId(long id) {
+        mId = id;
+        sNextId.accumulateAndGet(id + 1, Math::max);
+    }
+
     /**
      * @return True if the action has already been done, false otherwise.
      */
@@ -25,6 +59,15 @@ public abstract class AbstractReversibleAction extends AbstractAction {
         return mDone;
     }
 
+    /**
+     * Restores whether this action is done, for actions re-created from storage.
+     *
+     * @param done  True if the action has already been done, false otherwise.
+     */
+    void setDone(boolean done) {
+        mDone = done;
+    }
+
     /**
      * Does this action, which is guaranteed to have occurred, to the given DrawingView.
      *
@@ -58,6 +101,75 @@ public abstract class AbstractReversibleAction extends AbstractAction {
         mDone = false;
     }
 
+    /**
+     * Re-applies this action to a view which was restored to the state from just before it, e.g.
+     * from a checkpoint, and marks it done. Unlike doAction this is silent and may be called
+     * whether or not the action is already done. Subclasses that change the view must override this.
+     *
+     * @param view  DrawingView in which to re-apply this action.
+     */
+    @CallSuper
+    public void replay(DrawingView view) {
+        mDone = true;
+    }
+
+    /**
+     * Removes this action's effect from the view and marks it undone. Unlike undoAction this is
+     * silent and may be called whether or not the effect is still in the view, e.g. after the view
+     * was restored to a state from before it. Subclasses that change the view must override this.
+     *
+     * @param view  DrawingView from which to remove this action's effect.
+     */
+    @CallSuper
+    public void revert(DrawingView view) {
+        mDone = false;
+    }
+
+    /**
+     * Called once this action was evicted from the history while done, so it can never be undone
+     * again. Subclasses may hand their effect over to the view in a cheaper, permanent form and
+     * release what they only kept to undo it.
+     *
+     * @param view  DrawingView in which this action is done.
+     */
+    public void flatten(DrawingView view) {
+    }
+
+    /**
+     * Identifies the view state that replay and revert overwrite completely, if any. When several
+     * actions with equal keys are replayed or reverted together, only the last one applied has a
+     * visible effect, so the others only need to be marked done or undone.
+     *
+     * @return Key of the overwritten state, or null if this action's effect depends on the others.
+     * @see ActionBatch
+     */
+    public Object getStateKey() {
+        return null;
+    }
+
+    /**
+     * Tries to absorb an action which was done directly after this one, so that both are undone and
+     * redone as a single action. This action keeps the state it would restore on undo and takes on
+     * the result of next. Only called while both actions are done.
+     *
+     * @param next  Action done directly after this one.
+     * @return True if next was merged into this action and should be dropped, false otherwise.
+     */
+    public boolean mergeWith(AbstractReversibleAction next) {
+        return false;
+    }
+
+    /**
+     * Estimates how much memory this action keeps alive while it is stored in a history. Subclasses
+     * which hold on to large objects (paths, views, bitmaps) should override this. The estimate
+     * must not change while the action is in a history.
+     *
+     * @return Estimated retained size of this action, in bytes.
+     */
+    public long getRetainedSize() {
+        return BASE_RETAINED_SIZE;
+    }
+
     /** @inheritDoc */
     @Override
     public abstract String toString();
@@ -1,8 +1,19 @@
 package cse340.undo.actions;
 
+import android.graphics.Rect;
+
 /**
  * Any action which has a view that can be invalidated.
  */
 public abstract class AbstractReversibleViewAction extends AbstractReversibleAction {
     public abstract void invalidate();
+
+    /**
+     * Invalidates part of the rendered action, e.g. a segment which was just added to it.
+     *
+     * @param dirty Area to redraw, in DrawingView coordinates.
+     */
+    public void invalidate(Rect dirty) {
+        invalidate();
+    }
 }
@@ -0,0 +1,64 @@
+package cse340.undo.actions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import cse340.undo.app.DrawingView;
+
+/**
+ * Applies the net effect of many actions to a DrawingView at once. Actions which are overwritten by
+ * a later action in the same batch (see AbstractReversibleAction.getStateKey) are only marked done or
+ * undone, and every view added or removed by the rest is applied in a single layout pass.
+ */
+public final class ActionBatch {
+    private ActionBatch() {
+    }
+
+    /**
+     * Redoes actions silently with their replay methods.
+     *
+     * @param actions   Actions to redo, oldest first.
+     * @param view  DrawingView in which to redo the actions.
+     */
+    public static void replay(List<? extends AbstractReversibleAction> actions, DrawingView view) {
+        apply(actions, view, true);
+    }
+
+    /**
+     * Undoes actions silently with their revert methods.
+     *
+     * @param actions   Actions to undo, most recently done first.
+     * @param view  DrawingView in which to undo the actions.
+     */
+    public static void revert(List<? extends AbstractReversibleAction> actions, DrawingView view) {
+        apply(actions, view, false);
+    }
+
+    private static void apply(List<? extends AbstractReversibleAction> actions, DrawingView view,
+                              boolean replay) {
+        // Walk backwards so the last action applied for each key is the one that is kept.
+        boolean[] overwritten = new boolean[actions.size()];
+        Set<Object> keys = new HashSet<>();
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            Object key = actions.get(i).getStateKey();
+            overwritten[i] = key != null && !keys.add(key);
+        }
+
+        view.beginBatch();
+        try {
+            for (int i = 0; i < actions.size(); i++) {
+                AbstractReversibleAction action = actions.get(i);
+                if (overwritten[i]) {
+                    action.setDone(replay);
+                } else if (replay) {
+                    action.replay(view);
+                } else {
+                    action.revert(view);
+                }
+            }
+        } finally {
+            view.endBatch();
+        }
+    }
+}
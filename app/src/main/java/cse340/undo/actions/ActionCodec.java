@@ -0,0 +1,182 @@
+package cse340.undo.actions;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes reversible actions in a compact binary form, so they can be stored outside the
+ * heap and re-created later. Every record starts with a one byte type tag followed by the fields
+ * needed to do and undo the action again. Strokes are written with StrokeCodec. Only the actions in
+ * this package are supported; use canEncode to check before writing. The id of every action is
+ * written too, so a re-created action has the same id as the original.
+ *
+ * @see StrokeCodec
+ */
+public final class ActionCodec {
+    /** Type tags for the supported actions. */
+    private static final byte TYPE_STROKE = 1;
+    private static final byte TYPE_COLOR = 2;
+    private static final byte TYPE_OPACITY = 3;
+    private static final byte TYPE_THICKNESS = 4;
+    private static final byte TYPE_COMPOSITE = 5;
+
+    private ActionCodec() {
+    }
+
+    /**
+     * @param action    Action to check.
+     * @return True if the action can be written by this codec, false otherwise.
+     */
+    public static boolean canEncode(AbstractReversibleAction action) {
+        return typeOf(action) != 0;
+    }
+
+    /**
+     * Writes an action.
+     *
+     * @param action    Action to write.
+     * @param out   Output to write the action to.
+     * @throws IOException if the output could not be written.
+     * @throws IllegalArgumentException if the action is not supported by this codec.
+     */
+    public static void write(AbstractReversibleAction action, DataOutput out) throws IOException {
+        byte type = typeOf(action);
+        out.writeByte(type);
+        if (type != TYPE_STROKE) {
+            // StrokeCodec writes the id of strokes itself.
+            StrokeCodec.writeVarLong(out, action.getId());
+        }
+
+        switch (type) {
+            case TYPE_STROKE:
+                StrokeCodec.write((StrokeAction) action, out);
+                break;
+            case TYPE_COLOR:
+                ChangeColorAction color = (ChangeColorAction) action;
+                out.writeInt(color.mColor);
+                out.writeInt(color.mPrev);
+                break;
+            case TYPE_OPACITY:
+                ChangeOpacityAction opacity = (ChangeOpacityAction) action;
+                out.writeInt(opacity.mOpacity);
+                out.writeInt(opacity.mPrev);
+                break;
+            case TYPE_THICKNESS:
+                ChangeThicknessAction thickness = (ChangeThicknessAction) action;
+                out.writeInt(thickness.mThickness);
+                out.writeFloat(thickness.mPrev);
+                break;
+            case TYPE_COMPOSITE:
+                CompositeAction composite = (CompositeAction) action;
+                out.writeUTF(composite.getName());
+                out.writeInt(composite.getChildren().size());
+                for (AbstractReversibleAction child : composite.getChildren()) {
+                    write(child, out);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Cannot encode action: " + action);
+        }
+    }
+
+    /**
+     * Reads an action written by write from a stream.
+     *
+     * @param in    Input to read the action from.
+     * @param done  Whether the action is currently done (as opposed to undone).
+     * @return The re-created action.
+     * @throws IOException if the input could not be read or is corrupt.
+     */
+    public static AbstractReversibleAction read(DataInput in, boolean done) throws IOException {
+        return read(RecordInput.of(in), done);
+    }
+
+    /**
+     * Reads an action written by write.
+     *
+     * @param in    Input to read the action from, e.g. over a buffer.
+     * @param done  Whether the action is currently done (as opposed to undone).
+     * @return The re-created action.
+     * @throws IOException if the input could not be read or is corrupt.
+     */
+    public static AbstractReversibleAction read(RecordInput in, boolean done) throws IOException {
+        AbstractReversibleAction action;
+
+        byte type = in.readByte();
+        long id = type != TYPE_STROKE ? StrokeCodec.readVarLong(in) : AbstractReversibleAction.NEW_ID;
+        switch (type) {
+            case TYPE_STROKE:
+                action = StrokeCodec.read(in);
+                break;
+            case TYPE_COLOR:
+                ChangeColorAction color = new ChangeColorAction(in.readInt());
+                color.mPrev = in.readInt();
+                action = color;
+                break;
+            case TYPE_OPACITY:
+                ChangeOpacityAction opacity = new ChangeOpacityAction(in.readInt());
+                opacity.mPrev = in.readInt();
+                action = opacity;
+                break;
+            case TYPE_THICKNESS:
+                ChangeThicknessAction thickness = new ChangeThicknessAction(in.readInt());
+                thickness.mPrev = in.readFloat();
+                action = thickness;
+                break;
+            case TYPE_COMPOSITE:
+                action = readComposite(in, done);
+                break;
+            default:
+                throw new IOException("Unknown action type: " + type);
+        }
+
+        if (id != AbstractReversibleAction.NEW_ID) {
+            action.setId(id);
+        }
+        action.setDone(done);
+        return action;
+    }
+
+    private static CompositeAction readComposite(RecordInput in, boolean done) throws IOException {
+        String name = in.readUTF();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Illegal child count: " + count);
+        }
+
+        List<AbstractReversibleAction> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(read(in, done));
+        }
+        return new CompositeAction(name, children);
+    }
+
+    /**
+     * @param action    Action to check.
+     * @return Type tag of the action, or 0 if it is not supported.
+     */
+    private static byte typeOf(AbstractReversibleAction action) {
+        // Compare exact classes, since subclasses may have state this codec doesn't know about.
+        Class<?> cls = action.getClass();
+        if (cls == StrokeAction.class) {
+            return ((StrokeAction) action).getGeometry() != null ? TYPE_STROKE : 0;
+        } else if (cls == ChangeColorAction.class) {
+            return TYPE_COLOR;
+        } else if (cls == ChangeOpacityAction.class) {
+            return TYPE_OPACITY;
+        } else if (cls == ChangeThicknessAction.class) {
+            return TYPE_THICKNESS;
+        } else if (cls == CompositeAction.class) {
+            for (AbstractReversibleAction child : ((CompositeAction) action).getChildren()) {
+                if (!canEncode(child)) {
+                    return 0;
+                }
+            }
+            return TYPE_COMPOSITE;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,169 @@
+package cse340.undo.actions;
+
+import android.graphics.Paint;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable style of a stroke: color (including alpha), width, cap, join, paint style and flags.
+ * Styles are interned, so strokes drawn with the same brush share one BrushStyle and one Paint,
+ * and two styles are equal exactly when they are the same object.
+ *
+ * Interned styles are only weakly held, so a style is dropped once no stroke uses it anymore.
+ */
+public final class BrushStyle {
+    /** Interned styles, each mapped to a weak reference to itself. */
+    private static final Map<BrushStyle, WeakReference<BrushStyle>> sInterned = new WeakHashMap<>();
+
+    @ColorInt
+    private final int mColor;
+    private final float mWidth;
+    private final Paint.Cap mCap;
+    private final Paint.Join mJoin;
+    private final Paint.Style mStyle;
+    private final int mFlags;
+
+    /** Shared Paint drawing this style, or null until first needed. */
+    private Paint mPaint;
+
+    private BrushStyle(int color, float width, Paint.Cap cap, Paint.Join join, Paint.Style style, int flags) {
+        mColor = color;
+        mWidth = width;
+        mCap = cap;
+        mJoin = join;
+        mStyle = style;
+        mFlags = flags;
+    }
+
+    /**
+     * Returns the interned style of a paint.
+     *
+     * @param paint Paint whose style to take. It is not kept.
+     * @return The shared style with the paint's color, width, cap, join, style and flags.
+     */
+    public static BrushStyle of(Paint paint) {
+        return intern(new BrushStyle(paint.getColor(), paint.getStrokeWidth(), paint.getStrokeCap(),
+                paint.getStrokeJoin(), paint.getStyle(), paint.getFlags()));
+    }
+
+    private static synchronized BrushStyle intern(BrushStyle style) {
+        WeakReference<BrushStyle> ref = sInterned.get(style);
+        BrushStyle interned = ref == null ? null : ref.get();
+        if (interned == null) {
+            sInterned.put(style, new WeakReference<>(style));
+            interned = style;
+        }
+        return interned;
+    }
+
+    /**
+     * @param color New color, including alpha.
+     * @return The interned style which only differs from this one by its color.
+     */
+    public BrushStyle withColor(@ColorInt int color) {
+        return color == mColor ? this : intern(new BrushStyle(color, mWidth, mCap, mJoin, mStyle, mFlags));
+    }
+
+    /**
+     * @param alpha New alpha, in [0, 255].
+     * @return The interned style which only differs from this one by the alpha of its color.
+     */
+    public BrushStyle withAlpha(int alpha) {
+        return withColor(mColor & 0x00ffffff | (alpha & 0xff) << 24);
+    }
+
+    /**
+     * @param width New stroke width.
+     * @return The interned style which only differs from this one by its width.
+     */
+    public BrushStyle withWidth(float width) {
+        return width == mWidth ? this : intern(new BrushStyle(mColor, width, mCap, mJoin, mStyle, mFlags));
+    }
+
+    @ColorInt
+    public int getColor() {
+        return mColor;
+    }
+
+    public int getAlpha() {
+        return mColor >>> 24;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the Paint for this style, shared by everything drawn with it.
+     *
+     * @return Shared Paint, which must not be modified.
+     */
+    public synchronized Paint getPaint() {
+        if (mPaint == null) {
+            Paint paint = new Paint();
+            applyTo(paint);
+            mPaint = paint;
+        }
+        return mPaint;
+    }
+
+    /**
+     * Tells whether a paint draws this style, without interning anything.
+     *
+     * @param paint Paint to compare.
+     * @return true if the paint has this style's color, width, cap, join, style and flags.
+     */
+    public boolean matches(Paint paint) {
+        return paint.getColor() == mColor && Float.compare(paint.getStrokeWidth(), mWidth) == 0
+                && paint.getStrokeCap() == mCap && paint.getStrokeJoin() == mJoin
+                && paint.getStyle() == mStyle && paint.getFlags() == mFlags;
+    }
+
+    /**
+     * Sets the color, width, cap, join, style and flags of a paint to this style's.
+     *
+     * @param paint Paint to change.
+     */
+    public void applyTo(Paint paint) {
+        paint.setFlags(mFlags);
+        paint.setColor(mColor);
+        paint.setStrokeWidth(mWidth);
+        paint.setStrokeCap(mCap);
+        paint.setStrokeJoin(mJoin);
+        paint.setStyle(mStyle);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof BrushStyle)) {
+            return false;
+        }
+
+        BrushStyle other = (BrushStyle) o;
+        return mColor == other.mColor && Float.compare(mWidth, other.mWidth) == 0
+                && mCap == other.mCap && mJoin == other.mJoin && mStyle == other.mStyle
+                && mFlags == other.mFlags;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mColor;
+        hash = 31 * hash + Float.floatToIntBits(mWidth);
+        hash = 31 * hash + mCap.ordinal();
+        hash = 31 * hash + mJoin.ordinal();
+        hash = 31 * hash + mStyle.ordinal();
+        return 31 * hash + mFlags;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Brush #" + Integer.toHexString(mColor) + ", width " + mWidth;
+    }
+}
@@ -1,7 +1,6 @@
 package cse340.undo.actions;
 
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
 
@@ -13,7 +12,7 @@ import cse340.undo.app.DrawingView;
 public class ChangeColorAction extends AbstractReversibleAction {
     /** The color that this action changes the current paint to. */
     @ColorInt
-    protected final int mColor;
+    protected int mColor;
 
     /** The color that this action changes the current paint from. */
     @ColorInt
@@ -32,16 +31,47 @@ public class ChangeColorAction extends AbstractReversibleAction {
     @Override
     public void doAction(DrawingView view) {
         super.doAction(view);
-        Paint cur = view.getCurrentPaint();
+        BrushStyle cur = view.getCurrentStyle();
         mPrev = cur.getColor();
-        cur.setColor(mColor);
+        view.setCurrentStyle(cur.withColor(mColor));
     }
 
     /** @inheritDoc */
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        view.getCurrentPaint().setColor(mPrev);
+        view.setCurrentStyle(view.getCurrentStyle().withColor(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void replay(DrawingView view) {
+        super.replay(view);
+        view.setCurrentStyle(view.getCurrentStyle().withColor(mColor));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void revert(DrawingView view) {
+        super.revert(view);
+        view.setCurrentStyle(view.getCurrentStyle().withColor(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Object getStateKey() {
+        return getClass();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean mergeWith(AbstractReversibleAction next) {
+        if (next.getClass() != getClass()) {
+            return false;
+        }
+
+        mColor = ((ChangeColorAction) next).mColor;
+        return true;
     }
 
     @NonNull
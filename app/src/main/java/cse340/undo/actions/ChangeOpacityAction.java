@@ -1,7 +1,6 @@
 package cse340.undo.actions;
 
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
 
@@ -13,7 +12,7 @@ import cse340.undo.app.DrawingView;
 public class ChangeOpacityAction extends AbstractReversibleAction {
 
     /** The opacity that this action changes the current paint to. */
-    protected final int mOpacity;
+    protected int mOpacity;
 
     /** The opacity that this action changes the current paint from. */
     protected int mPrev;
@@ -31,16 +30,47 @@ public class ChangeOpacityAction extends AbstractReversibleAction {
     @Override
     public void doAction(DrawingView view) {
         super.doAction(view);
-        Paint cur = view.getCurrentPaint();
+        BrushStyle cur = view.getCurrentStyle();
         mPrev = cur.getAlpha();
-        cur.setAlpha(mOpacity);
+        view.setCurrentStyle(cur.withAlpha(mOpacity));
     }
 
     /** @inheritDoc */
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        view.getCurrentPaint().setAlpha(mPrev);
+        view.setCurrentStyle(view.getCurrentStyle().withAlpha(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void replay(DrawingView view) {
+        super.replay(view);
+        view.setCurrentStyle(view.getCurrentStyle().withAlpha(mOpacity));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void revert(DrawingView view) {
+        super.revert(view);
+        view.setCurrentStyle(view.getCurrentStyle().withAlpha(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Object getStateKey() {
+        return getClass();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean mergeWith(AbstractReversibleAction next) {
+        if (next.getClass() != getClass()) {
+            return false;
+        }
+
+        mOpacity = ((ChangeOpacityAction) next).mOpacity;
+        return true;
     }
 
     @NonNull
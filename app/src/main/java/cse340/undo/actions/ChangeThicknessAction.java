@@ -1,6 +1,5 @@
 package cse340.undo.actions;
 
-import android.graphics.Paint;
 import android.support.annotation.NonNull;
 
 import cse340.undo.app.DrawingView;
@@ -10,10 +9,10 @@ import cse340.undo.app.DrawingView;
  */
 public class ChangeThicknessAction extends AbstractReversibleAction {
     /** The thickness that this action changes the current paint to. */
-    private final int mThickness;
+    protected int mThickness;
 
     /** The thickness that this action changes the current paint from. */
-    private float mPrev;
+    protected float mPrev;
 
     /**
      * Creates an action that changes the paint thickness.
@@ -33,10 +32,9 @@ public class ChangeThicknessAction extends AbstractReversibleAction {
         // TODO: store any information you'll need to undo this later
         // TODO: don't store any information you won't need
 
-        Paint brush = view.getCurrentPaint();
-        mPrev = brush.getStrokeWidth();
-        brush.setStrokeWidth(mThickness);
-        view.setCurrentPaint(brush);
+        BrushStyle brush = view.getCurrentStyle();
+        mPrev = brush.getWidth();
+        view.setCurrentStyle(brush.withWidth(mThickness));
 
     }
 
@@ -46,9 +44,38 @@ public class ChangeThicknessAction extends AbstractReversibleAction {
         super.undoAction(view);
         // TODO: update the thickness in the view
 
-        Paint brush = view.getCurrentPaint();
-        brush.setStrokeWidth(mPrev);
-        view.setCurrentPaint(brush);
+        view.setCurrentStyle(view.getCurrentStyle().withWidth(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void replay(DrawingView view) {
+        super.replay(view);
+        view.setCurrentStyle(view.getCurrentStyle().withWidth(mThickness));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void revert(DrawingView view) {
+        super.revert(view);
+        view.setCurrentStyle(view.getCurrentStyle().withWidth(mPrev));
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Object getStateKey() {
+        return getClass();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean mergeWith(AbstractReversibleAction next) {
+        if (next.getClass() != getClass()) {
+            return false;
+        }
+
+        mThickness = ((ChangeThicknessAction) next).mThickness;
+        return true;
     }
 
     /** @inheritDoc */
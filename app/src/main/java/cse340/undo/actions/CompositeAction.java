@@ -0,0 +1,152 @@
+package cse340.undo.actions;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse340.undo.app.DrawingView;
+
+/**
+ * Reversible action made of other reversible actions, e.g. a macro such as "change color, change
+ * thickness, then stroke". It takes a single slot in a history. Its children are done in order and
+ * undone in reverse order inside one DrawingView batch, so their view changes are laid out and
+ * drawn once and only the composite itself is announced.
+ *
+ * @see DrawingView#beginBatch()
+ */
+public class CompositeAction extends AbstractReversibleAction {
+    /** Name used to describe the whole action. */
+    private final String mName;
+
+    /** Actions making up this one, in the order they are done. */
+    private final List<AbstractReversibleAction> mChildren;
+
+    /**
+     * Creates an empty composite action. Add children with add before doing it.
+     *
+     * @param name  Name used to describe the whole action.
+     */
+    public CompositeAction(String name) {
+        this(name, new ArrayList<>());
+    }
+
+    /**
+     * Creates a composite action from existing children.
+     *
+     * @param name  Name used to describe the whole action.
+     * @param children  Actions making up this one, in the order they are done.
+     */
+    CompositeAction(String name, List<AbstractReversibleAction> children) {
+        this.mName = name;
+        this.mChildren = children;
+    }
+
+    /**
+     * Appends a child, which will be done after the ones already added.
+     *
+     * @param child Action to append.
+     * @throws IllegalStateException if this action has already been done.
+     */
+    public void add(AbstractReversibleAction child) {
+        if (isDone()) {
+            throw new IllegalStateException("Cannot add to a composite action which was done: " + toString());
+        }
+        mChildren.add(child);
+    }
+
+    /**
+     * @return Actions making up this one, in the order they are done.
+     */
+    public List<AbstractReversibleAction> getChildren() {
+        return Collections.unmodifiableList(mChildren);
+    }
+
+    /**
+     * @return Name used to describe the whole action.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Does every child in order, as one batch of view changes.
+     *
+     * @param view  DrawingView in which to apply this action.
+     */
+    @Override
+    public void doAction(DrawingView view) {
+        super.doAction(view);
+
+        view.beginBatch();
+        try {
+            for (AbstractReversibleAction child : mChildren) {
+                child.doAction(view);
+            }
+        } finally {
+            view.endBatch();
+        }
+    }
+
+    /**
+     * Undoes every child in reverse order, as one batch of view changes.
+     *
+     * @param view  DrawingView in which to undo this action.
+     */
+    @Override
+    public void undoAction(DrawingView view) {
+        super.undoAction(view);
+
+        view.beginBatch();
+        try {
+            for (int i = mChildren.size() - 1; i >= 0; i--) {
+                mChildren.get(i).undoAction(view);
+            }
+        } finally {
+            view.endBatch();
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void replay(DrawingView view) {
+        super.replay(view);
+        ActionBatch.replay(mChildren, view);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void revert(DrawingView view) {
+        super.revert(view);
+        List<AbstractReversibleAction> reversed = new ArrayList<>(mChildren);
+        Collections.reverse(reversed);
+        ActionBatch.revert(reversed, view);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void flatten(DrawingView view) {
+        for (AbstractReversibleAction child : mChildren) {
+            child.flatten(view);
+        }
+    }
+
+    /**
+     * @return Estimated retained size of this action and its children, in bytes.
+     */
+    @Override
+    public long getRetainedSize() {
+        long size = BASE_RETAINED_SIZE;
+        for (AbstractReversibleAction child : mChildren) {
+            size += child.getRetainedSize();
+        }
+        return size;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mName + " (" + mChildren.size() + " actions)";
+    }
+}
@@ -0,0 +1,156 @@
+package cse340.undo.actions;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the records read by ActionCodec and StrokeCodec: only the reads they need, so records
+ * can be decoded from a stream or straight from a buffer, e.g. a memory-mapped file, without
+ * copying them first.
+ *
+ * @see ActionCodec
+ */
+public abstract class RecordInput {
+    /**
+     * @return Next byte.
+     * @throws IOException if the input could not be read or is at its end.
+     */
+    public abstract byte readByte() throws IOException;
+
+    /**
+     * @return Next int, big-endian.
+     * @throws IOException if the input could not be read or is at its end.
+     */
+    public abstract int readInt() throws IOException;
+
+    /**
+     * @return Next string, in modified UTF-8 as written by DataOutput.writeUTF.
+     * @throws IOException if the input could not be read or is corrupt.
+     */
+    public abstract String readUTF() throws IOException;
+
+    /**
+     * @return Next byte, in [0, 255].
+     * @throws IOException if the input could not be read or is at its end.
+     */
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    /**
+     * @return Next float, as written by DataOutput.writeFloat.
+     * @throws IOException if the input could not be read or is at its end.
+     */
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    /**
+     * @param in    Stream to read from.
+     * @return Input reading from the stream.
+     */
+    public static RecordInput of(DataInput in) {
+        return new StreamInput(in);
+    }
+
+    /**
+     * @param buffer    Buffer to read from, from its position on, which advances as it is read.
+     * @return Input reading from the buffer.
+     */
+    public static RecordInput of(ByteBuffer buffer) {
+        return new BufferInput(buffer);
+    }
+
+    private static final class StreamInput extends RecordInput {
+        private final DataInput mIn;
+
+        StreamInput(DataInput in) {
+            mIn = in;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            return mIn.readByte();
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            return mIn.readInt();
+        }
+
+        @Override
+        public String readUTF() throws IOException {
+            return mIn.readUTF();
+        }
+    }
+
+    private static final class BufferInput extends RecordInput {
+        private final ByteBuffer mBuffer;
+
+        BufferInput(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public byte readByte() throws IOException {
+            try {
+                return mBuffer.get();
+            } catch (BufferUnderflowException e) {
+                throw new EOFException();
+            }
+        }
+
+        @Override
+        public int readInt() throws IOException {
+            try {
+                return mBuffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new EOFException();
+            }
+        }
+
+        /**
+         * Decodes modified UTF-8: a two byte length, then one to three bytes per char.
+         */
+        @Override
+        public String readUTF() throws IOException {
+            int length = (readUnsignedByte() << 8) | readUnsignedByte();
+            if (mBuffer.remaining() < length) {
+                throw new EOFException();
+            }
+
+            char[] chars = new char[length];
+            int count = 0;
+            int end = mBuffer.position() + length;
+            while (mBuffer.position() < end) {
+                int b = readUnsignedByte();
+                if (b < 0x80) {
+                    chars[count++] = (char) b;
+                } else if ((b & 0xe0) == 0xc0 && mBuffer.position() < end) {
+                    chars[count++] = (char) ((b & 0x1f) << 6 | continuation());
+                } else if ((b & 0xf0) == 0xe0 && mBuffer.position() + 1 < end) {
+                    int high = (b & 0x0f) << 12 | continuation() << 6;
+                    chars[count++] = (char) (high | continuation());
+                } else {
+                    throw new UTFDataFormatException("Malformed string around byte " + mBuffer.position());
+                }
+            }
+            return new String(chars, 0, count);
+        }
+
+        /**
+         * @return Low six bits of the next byte, which must continue a char.
+         */
+        private int continuation() throws IOException {
+            int b = readUnsignedByte();
+            if ((b & 0xc0) != 0x80) {
+                throw new UTFDataFormatException("Malformed string around byte " + mBuffer.position());
+            }
+            return b & 0x3f;
+        }
+    }
+}
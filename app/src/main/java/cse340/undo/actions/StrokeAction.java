@@ -3,23 +3,36 @@ package cse340.undo.actions;
 
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.PathMeasure;
+import android.graphics.Rect;
 import android.support.annotation.NonNull;
-import android.view.View;
-import cse340.undo.app.StrokeView;
+
 import cse340.undo.app.DrawingView;
 
 /**
  * Reversible action which renders a stroke in DrawingView.
  */
 public class StrokeAction extends AbstractReversibleViewAction {
-    /** Path for this stroke. */
+    /** Rough number of bytes per quadratic segment in a Path (one verb and two points). */
+    private static final long SEGMENT_SIZE = 17;
+
+    /** Rough number of bytes held by the view or layer entry rendering the stroke. */
+    private static final long VIEW_SIZE = 256;
+
+    /** Path for this stroke (or null if it is derived from mGeometry). */
     private final Path mPath;
 
-    /** Paint used to draw this stroke. */
-    private final Paint mPaint;
+    /** Input points behind the path (or null if only the path is known). */
+    private final StrokeGeometry mGeometry;
 
-    /** View being used to render this stroke (or null if not rendered). */
-    private View mStrokeView;
+    /** Style used to draw this stroke, shared with every stroke drawn with the same brush. */
+    private final BrushStyle mStyle;
+
+    /** DrawingView rendering this stroke (or null if not rendered). */
+    private DrawingView mView;
+
+    /** Cached result of getRetainedSize (or 0 if not computed yet). */
+    private long mRetainedSize;
 
     /**
      * Creates an action that renders a stroke.
@@ -29,14 +42,71 @@ public class StrokeAction extends AbstractReversibleViewAction {
      * @throws IllegalArgumentException if stroke or paint are null.
      */
     public StrokeAction(Path path, Paint paint) {
-        if (path == null || paint == null) {
+        this(path, null, paint);
+    }
+
+    /**
+     * Creates an action that renders a stroke from its input points. The Path is the geometry's
+     * cached one, so the geometry may keep growing while the stroke is being drawn.
+     *
+     * @param geometry  Points of the stroke.
+     * @param paint Paint for stroke.
+     * @throws IllegalStateException if geometry or paint are null.
+     */
+    public StrokeAction(StrokeGeometry geometry, Paint paint) {
+        this(NEW_ID, null, geometry, paint);
+    }
+
+    /**
+     * Creates an action that renders a stroke whose input points are known. The geometry may keep
+     * growing along with the path while the stroke is being drawn.
+     *
+     * @param path  Path for stroke.
+     * @param geometry  Points the path was built from, or null if unknown.
+     * @param paint Paint for stroke.
+     * @throws IllegalArgumentException if stroke or paint are null.
+     */
+    public StrokeAction(Path path, StrokeGeometry geometry, Paint paint) {
+        this(NEW_ID, path, geometry, paint);
+    }
+
+    /**
+     * Re-creates a stroke which was previously saved, keeping its id. The id identifies the stroke
+     * in the DrawingView as well.
+     *
+     * @param id    Id of the saved stroke, or NEW_ID to give it a new one.
+     * @param path  Path for stroke, or null to derive it from the geometry.
+     * @param geometry  Points the path was built from, or null if unknown.
+     * @param paint Paint for stroke.
+     */
+    StrokeAction(long id, Path path, StrokeGeometry geometry, Paint paint) {
+        this(id, path, geometry, paint == null ? null : BrushStyle.of(paint));
+    }
+
+    /**
+     * Creates an action that renders a stroke from its input points with a given style.
+     *
+     * @param geometry  Points of the stroke.
+     * @param style Style for stroke.
+     * @throws IllegalStateException if geometry or style are null.
+     */
+    public StrokeAction(StrokeGeometry geometry, BrushStyle style) {
+        this(NEW_ID, null, geometry, style);
+    }
+
+    private StrokeAction(long id, Path path, StrokeGeometry geometry, BrushStyle style) {
+        if ((path == null && geometry == null) || style == null) {
             throw new IllegalStateException("Null stroke or paint");
         }
 
+        if (id != NEW_ID) {
+            setId(id);
+        }
         this.mPath = path;
+        this.mGeometry = geometry;
 
-        // Copy-construct paint to prevent changes to the original object from affecting this.
-        this.mPaint = new Paint(paint);
+        // Interned, so changes to the original paint don't affect this and equal styles share a Paint.
+        this.mStyle = style;
     }
 
     /**
@@ -47,8 +117,8 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void doAction(DrawingView view) {
         super.doAction(view);
-        mStrokeView = new StrokeView(view.getContext(), mPath, mPaint);
-        view.addView(mStrokeView);
+        view.showStroke(getId(), getPath(), mGeometry, mStyle.getPaint());
+        mView = view;
     }
 
     /**
@@ -59,11 +129,45 @@ public class StrokeAction extends AbstractReversibleViewAction {
     @Override
     public void undoAction(DrawingView view) {
         super.undoAction(view);
-        if (view.indexOfChild(mStrokeView) < 0) {
-            throw new IllegalStateException("StrokeView not found");
+        if (!view.removeStroke(getId())) {
+            throw new IllegalStateException("Stroke not found");
         }
+        mView = null;
+    }
 
-        view.removeView(mStrokeView);
+    /**
+     * Renders the stroke again if it was parked by a checkpoint or undone.
+     *
+     * @param view  DrawingView in which to render the stroke.
+     */
+    @Override
+    public void replay(DrawingView view) {
+        super.replay(view);
+        view.showStroke(getId(), getPath(), mGeometry, mStyle.getPaint());
+        mView = view;
+    }
+
+    /**
+     * De-renders the stroke, whether it is shown or parked by a checkpoint.
+     *
+     * @param view  DrawingView in which to de-render the stroke.
+     */
+    @Override
+    public void revert(DrawingView view) {
+        super.revert(view);
+        view.removeStroke(getId());
+        mView = null;
+    }
+
+    /**
+     * Hands the stroke over to the DrawingView's committed raster layer.
+     *
+     * @param view  DrawingView in which the stroke is rendered.
+     */
+    @Override
+    public void flatten(DrawingView view) {
+        view.flattenStroke(getId());
+        mView = null;
     }
 
     /**
@@ -71,13 +175,82 @@ public class StrokeAction extends AbstractReversibleViewAction {
      */
     @Override
     public void invalidate() {
-        mStrokeView.invalidate();
+        if (mView != null) {
+            mView.invalidateStroke(getId(), null);
+        }
+    }
+
+    /**
+     * Invalidates part of the rendered stroke, e.g. the segment which was just added.
+     *
+     * @param dirty Area to redraw, in DrawingView coordinates.
+     */
+    @Override
+    public void invalidate(Rect dirty) {
+        if (mView != null) {
+            mView.invalidateStroke(getId(), dirty);
+        }
+    }
+
+    /**
+     * @return Path for this stroke, derived from the geometry and cached there if needed.
+     */
+    public Path getPath() {
+        return mPath != null ? mPath : mGeometry.getPath();
+    }
+
+    /**
+     * @return Input points behind the path, or null if unknown.
+     */
+    public StrokeGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    /**
+     * @return Paint used to draw this stroke, shared with other strokes and not to be modified.
+     */
+    public Paint getPaint() {
+        return mStyle.getPaint();
+    }
+
+    /**
+     * @return Style used to draw this stroke.
+     */
+    public BrushStyle getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Estimates the size of the stroke from its number of segments. If the points are unknown, the
+     * length is used instead: DrawingView adds a segment at most every MIN_MOVE_DIST pixels, so the
+     * length gives an upper bound on the number of segments.
+     *
+     * @return Estimated retained size of this stroke, in bytes.
+     */
+    @Override
+    public long getRetainedSize() {
+        if (mRetainedSize == 0 && mGeometry != null) {
+            // Each point costs a segment in the path, plus its coordinates in the geometry.
+            long points = mGeometry.getPointCount();
+            mRetainedSize = super.getRetainedSize() + VIEW_SIZE
+                    + points * SEGMENT_SIZE + mGeometry.getRetainedSize();
+        } else if (mRetainedSize == 0) {
+            PathMeasure measure = new PathMeasure(mPath, false);
+            float length = 0;
+            do {
+                length += measure.getLength();
+            } while (measure.nextContour());
+
+            long segments = (long) (length / Math.max(1, DrawingView.MIN_MOVE_DIST)) + 1;
+            mRetainedSize = super.getRetainedSize() + VIEW_SIZE + segments * SEGMENT_SIZE;
+        }
+        return mRetainedSize;
     }
 
     @NonNull
     @Override
     public String toString() {
-        return "Drawing path " + mPath.toString();
+        return "Drawing path " + getPath().toString();
     }
 
 }
@@ -0,0 +1,260 @@
+package cse340.undo.actions;
+
+import android.graphics.Paint;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Compact binary form of a stroke: its id, its paint once, and its input points. Coordinates are
+ * quantized to 1/SCALE of a pixel, and each point is stored as the difference from the previous one
+ * as a pair of zig-zag varints, so the small steps between touch samples usually take one or two
+ * bytes per coordinate instead of four.
+ *
+ * Record layout: id (varint), paint flags (varint), color (int), stroke width (float), style, cap
+ * and join packed into one byte, point count (varint), then the points.
+ *
+ * The Encoder and Decoder work one point at a time, so a stroke can be written while it is drawn
+ * or read without buffering the whole record.
+ */
+public final class StrokeCodec {
+    /** Number of quantization steps per pixel. */
+    public static final int SCALE = 16;
+
+    private StrokeCodec() {
+    }
+
+    /**
+     * Writes a stroke record.
+     *
+     * @param stroke    Stroke to write. Its geometry must be known.
+     * @param out   Output to write the stroke to.
+     * @throws IOException if the output could not be written.
+     */
+    public static void write(StrokeAction stroke, DataOutput out) throws IOException {
+        StrokeGeometry geometry = stroke.getGeometry();
+
+        Encoder encoder = new Encoder(out);
+        encoder.begin(stroke.getId(), stroke.getPaint(), geometry.getPointCount());
+        for (int i = 0; i < geometry.getPointCount(); i++) {
+            encoder.addPoint(geometry.getX(i), geometry.getY(i));
+        }
+    }
+
+    /**
+     * Reads a stroke record written by write or an Encoder. Its Path is derived from the points
+     * when first needed.
+     *
+     * @param in    Input to read the stroke from.
+     * @return The re-created stroke, with its original id.
+     * @throws IOException if the input could not be read or is corrupt.
+     */
+    public static StrokeAction read(RecordInput in) throws IOException {
+        Decoder decoder = new Decoder(in);
+        StrokeGeometry geometry = new StrokeGeometry(decoder.getPointCount());
+        while (decoder.next()) {
+            geometry.addPoint(decoder.getX(), decoder.getY());
+        }
+        return new StrokeAction(decoder.getId(), null, geometry, decoder.getPaint());
+    }
+
+    /**
+     * Writes stroke records one point at a time.
+     */
+    public static final class Encoder {
+        private final DataOutput mOut;
+
+        /** Quantized coordinates of the previous point. */
+        private int mLastX, mLastY;
+
+        /** Number of points still to be added to the current stroke. */
+        private int mRemaining;
+
+        /**
+         * @param out   Output to write strokes to.
+         */
+        public Encoder(DataOutput out) {
+            mOut = out;
+        }
+
+        /**
+         * Starts a stroke record.
+         *
+         * @param id    Id of the stroke.
+         * @param paint Paint of the stroke.
+         * @param pointCount    Number of points which will be added.
+         * @throws IOException if the output could not be written.
+         * @throws IllegalStateException if the previous stroke is missing points.
+         */
+        public void begin(long id, Paint paint, int pointCount) throws IOException {
+            if (mRemaining != 0) {
+                throw new IllegalStateException("Previous stroke is missing " + mRemaining + " points");
+            }
+
+            writeVarLong(mOut, id);
+            writeVarLong(mOut, paint.getFlags());
+            mOut.writeInt(paint.getColor());
+            mOut.writeFloat(paint.getStrokeWidth());
+            mOut.writeByte(paint.getStyle().ordinal()
+                    | paint.getStrokeCap().ordinal() << 2
+                    | paint.getStrokeJoin().ordinal() << 4);
+            writeVarLong(mOut, pointCount);
+
+            mRemaining = pointCount;
+            mLastX = 0;
+            mLastY = 0;
+        }
+
+        /**
+         * Adds the next point of the current stroke.
+         *
+         * @param x Horizontal coordinate of the point.
+         * @param y Vertical coordinate of the point.
+         * @throws IOException if the output could not be written.
+         * @throws IllegalStateException if the stroke already has all its points.
+         */
+        public void addPoint(float x, float y) throws IOException {
+            if (mRemaining == 0) {
+                throw new IllegalStateException("Stroke already has all its points");
+            }
+
+            int qx = Math.round(x * SCALE), qy = Math.round(y * SCALE);
+            writeVarLong(mOut, zigZag(qx - mLastX));
+            writeVarLong(mOut, zigZag(qy - mLastY));
+            mLastX = qx;
+            mLastY = qy;
+            mRemaining--;
+        }
+    }
+
+    /**
+     * Reads a stroke record one point at a time. The header is read on construction.
+     */
+    public static final class Decoder {
+        private final RecordInput mIn;
+        private final long mId;
+        private final Paint mPaint;
+        private final int mPointCount;
+
+        /** Quantized coordinates of the current point. */
+        private int mX, mY;
+
+        /** Number of points read so far. */
+        private int mRead;
+
+        /**
+         * Reads the header of a stroke record.
+         *
+         * @param in    Input to read the stroke from.
+         * @throws IOException if the input could not be read or is corrupt.
+         */
+        public Decoder(RecordInput in) throws IOException {
+            mIn = in;
+            mId = readVarLong(in);
+
+            mPaint = new Paint((int) readVarLong(in));
+            mPaint.setColor(in.readInt());
+            mPaint.setStrokeWidth(in.readFloat());
+            int styles = in.readUnsignedByte();
+            mPaint.setStyle(enumAt(Paint.Style.values(), styles & 3));
+            mPaint.setStrokeCap(enumAt(Paint.Cap.values(), styles >> 2 & 3));
+            mPaint.setStrokeJoin(enumAt(Paint.Join.values(), styles >> 4 & 3));
+
+            long count = readVarLong(in);
+            if (count < 0 || count > Integer.MAX_VALUE / 2) {
+                throw new IOException("Illegal point count: " + count);
+            }
+            mPointCount = (int) count;
+        }
+
+        /**
+         * Reads the next point, if any.
+         *
+         * @return True if a point was read, false if the stroke has no more points.
+         * @throws IOException if the input could not be read or is corrupt.
+         */
+        public boolean next() throws IOException {
+            if (mRead == mPointCount) {
+                return false;
+            }
+
+            mX += unZigZag(readVarLong(mIn));
+            mY += unZigZag(readVarLong(mIn));
+            mRead++;
+            return true;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        /**
+         * @return Paint of the stroke, which the caller may keep.
+         */
+        public Paint getPaint() {
+            return mPaint;
+        }
+
+        public int getPointCount() {
+            return mPointCount;
+        }
+
+        /**
+         * @return Horizontal coordinate of the point read by next.
+         */
+        public float getX() {
+            return (float) mX / SCALE;
+        }
+
+        /**
+         * @return Vertical coordinate of the point read by next.
+         */
+        public float getY() {
+            return (float) mY / SCALE;
+        }
+    }
+
+    /**
+     * Writes an unsigned value 7 bits at a time, least significant first, with the high bit of each
+     * byte set if more bytes follow.
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(RecordInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Maps signed values to unsigned ones so that small magnitudes stay small: 0, -1, 1, -2, ...
+     * become 0, 1, 2, 3, ...
+     */
+    static long zigZag(int value) {
+        return (value << 1 ^ value >> 31) & 0xffffffffL;
+    }
+
+    static int unZigZag(long value) {
+        int v = (int) value;
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    private static <T> T enumAt(T[] values, int ordinal) throws IOException {
+        if (ordinal >= values.length) {
+            throw new IOException("Illegal ordinal: " + ordinal);
+        }
+        return values[ordinal];
+    }
+}
@@ -0,0 +1,447 @@
+package cse340.undo.actions;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * The input points behind a stroke, stored as interleaved x/y coordinates in a growable float array,
+ * optionally with a timestamp and a pressure per point in parallel arrays. Unlike a Path, the points
+ * can be inspected and serialized, and the Path can be rebuilt from them.
+ *
+ * The Path is derived lazily and cached. Once built, it is extended as points are added, so a
+ * stroke being drawn can be rendered from its cached Path without rebuilding it.
+ */
+public final class StrokeGeometry {
+    /** Initial number of points which can be stored before growing. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Number of line segments a curve of the Path is split into when measuring distances to it. */
+    private static final int FLATTEN_SEGMENTS = 8;
+
+    /**
+     * Most distances simplify measures per point before it gives up and keeps every point. Drawn
+     * strokes take a fraction of it, but some inputs, like a widening zigzag, take quadratic time,
+     * and simplify runs on the UI thread.
+     */
+    static final int SIMPLIFY_WORK_PER_POINT = 64;
+
+    /** Interleaved x/y coordinates of the points. */
+    private float[] mCoords;
+
+    /** Time of each point in milliseconds, or null if no point had one. */
+    private long[] mTimes;
+
+    /** Pressure of each point, or null if no point had one. */
+    private float[] mPressures;
+
+    /** Number of points stored in mCoords. */
+    private int mPointCount;
+
+    /** Path built from the points, or null until getPath is called. */
+    private Path mPath;
+
+    /**
+     * Creates an empty geometry.
+     */
+    public StrokeGeometry() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty geometry which can hold the given number of points without growing.
+     *
+     * @param capacity  Number of points to reserve space for.
+     */
+    public StrokeGeometry(int capacity) {
+        mCoords = new float[Math.max(1, capacity) * 2];
+    }
+
+    /**
+     * Appends a point to the stroke.
+     *
+     * @param x Horizontal coordinate of the point.
+     * @param y Vertical coordinate of the point.
+     */
+    public void addPoint(float x, float y) {
+        if (mPointCount * 2 == mCoords.length) {
+            grow();
+        }
+        mCoords[mPointCount * 2] = x;
+        mCoords[mPointCount * 2 + 1] = y;
+        mPointCount++;
+
+        if (mPath != null) {
+            appendToPath(mPath, mPointCount - 1);
+        }
+    }
+
+    /**
+     * Appends a point to the stroke, along with when and how hard it was touched. Points added
+     * without them have a time and pressure of 0.
+     *
+     * @param x Horizontal coordinate of the point.
+     * @param y Vertical coordinate of the point.
+     * @param time  Time of the point, in milliseconds, e.g. from MotionEvent.getEventTime.
+     * @param pressure  Pressure of the point, e.g. from MotionEvent.getPressure.
+     */
+    public void addPoint(float x, float y, long time, float pressure) {
+        if (mTimes == null) {
+            mTimes = new long[mCoords.length / 2];
+            mPressures = new float[mCoords.length / 2];
+        }
+        addPoint(x, y);
+        mTimes[mPointCount - 1] = time;
+        mPressures[mPointCount - 1] = pressure;
+    }
+
+    private void grow() {
+        mCoords = Arrays.copyOf(mCoords, mCoords.length * 2);
+        if (mTimes != null) {
+            mTimes = Arrays.copyOf(mTimes, mCoords.length / 2);
+            mPressures = Arrays.copyOf(mPressures, mCoords.length / 2);
+        }
+    }
+
+    /**
+     * @return Number of points in the stroke.
+     */
+    public int getPointCount() {
+        return mPointCount;
+    }
+
+    /**
+     * @param i Index of a point, in [0, getPointCount()).
+     * @return Horizontal coordinate of the point.
+     */
+    public float getX(int i) {
+        return mCoords[i * 2];
+    }
+
+    /**
+     * @param i Index of a point, in [0, getPointCount()).
+     * @return Vertical coordinate of the point.
+     */
+    public float getY(int i) {
+        return mCoords[i * 2 + 1];
+    }
+
+    /**
+     * @return True if the points have times and pressures.
+     */
+    public boolean hasTimesAndPressures() {
+        return mTimes != null;
+    }
+
+    /**
+     * @param i Index of a point, in [0, getPointCount()).
+     * @return Time of the point in milliseconds, or 0 if unknown.
+     */
+    public long getTime(int i) {
+        return mTimes == null ? 0 : mTimes[i];
+    }
+
+    /**
+     * @param i Index of a point, in [0, getPointCount()).
+     * @return Pressure of the point, or 0 if unknown.
+     */
+    public float getPressure(int i) {
+        return mPressures == null ? 0 : mPressures[i];
+    }
+
+    /**
+     * Computes the bounds of the points. The Path's curves use the points as control points, so
+     * they lie within these bounds too.
+     *
+     * @param out   Rectangle in which to store the bounds; set empty if there are no points.
+     */
+    public void computeBounds(RectF out) {
+        if (mPointCount == 0) {
+            out.setEmpty();
+            return;
+        }
+
+        float left = mCoords[0], top = mCoords[1], right = left, bottom = top;
+        for (int i = 2; i < mPointCount * 2; i += 2) {
+            left = Math.min(left, mCoords[i]);
+            right = Math.max(right, mCoords[i]);
+            top = Math.min(top, mCoords[i + 1]);
+            bottom = Math.max(bottom, mCoords[i + 1]);
+        }
+        out.set(left, top, right, bottom);
+    }
+
+    /**
+     * Tests whether a point is near the stroke, measuring against the polyline through its points,
+     * which the Path's curves follow closely.
+     *
+     * @param x Horizontal coordinate of the point.
+     * @param y Vertical coordinate of the point.
+     * @param radius    Maximum distance, e.g. half the stroke width plus some slop.
+     * @return True if the point is within the radius of the stroke.
+     */
+    public boolean isNear(float x, float y, float radius) {
+        float radiusSquared = radius * radius;
+        if (mPointCount == 1) {
+            float dx = x - mCoords[0], dy = y - mCoords[1];
+            return dx * dx + dy * dy <= radiusSquared;
+        }
+
+        for (int i = 1; i < mPointCount; i++) {
+            if (squaredDistanceToSegment(x, y, i - 1, i) <= radiusSquared) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Estimated size of the arrays holding the points, in bytes.
+     */
+    public long getRetainedSize() {
+        long size = (long) mCoords.length * Float.BYTES;
+        if (mTimes != null) {
+            size += (long) mTimes.length * Long.BYTES + (long) mPressures.length * Float.BYTES;
+        }
+        return size;
+    }
+
+    /**
+     * Simplifies the stroke with the Ramer-Douglas-Peucker algorithm: a point is dropped if it lies
+     * within the tolerance of the line between the points kept around it. Since the Path cuts the
+     * corners at its points, more points are then kept until the Path of the kept points is within
+     * the tolerance of the Path of all of them. The first and last points are always kept. Strokes
+     * which would take more than SIMPLIFY_WORK_PER_POINT distances per point are not simplified.
+     *
+     * @param tolerance Maximum distance between the Paths of the stroke and the simplified one,
+     *                  in pixels.
+     * @return New geometry with the points which were kept, or this one if none could be dropped
+     *         or simplifying would take too long.
+     */
+    public StrokeGeometry simplify(float tolerance) {
+        if (mPointCount < 3) {
+            return this;
+        }
+
+        // Times and pressures of the dropped points would be misleading, so they are dropped too.
+        boolean[] keep = new boolean[mPointCount];
+        keep[0] = true;
+        keep[mPointCount - 1] = true;
+        int kept = 2;
+
+        // Ranges of points still to be simplified, as pairs of first and last index.
+        int[] ranges = new int[64];
+        int top = 0;
+        ranges[top++] = 0;
+        ranges[top++] = mPointCount - 1;
+        float maxSquared = tolerance * tolerance;
+        long work = (long) SIMPLIFY_WORK_PER_POINT * mPointCount;
+
+        while (top > 0) {
+            int last = ranges[--top], first = ranges[--top];
+            work -= last - first - 1;
+            if (work < 0) {
+                return this;
+            }
+
+            int farthest = -1;
+            float farthestSquared = maxSquared;
+            for (int i = first + 1; i < last; i++) {
+                float squared = squaredDistanceToSegment(getX(i), getY(i), first, last);
+                if (squared > farthestSquared) {
+                    farthest = i;
+                    farthestSquared = squared;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                kept++;
+                if (top + 4 > ranges.length) {
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                }
+                ranges[top++] = first;
+                ranges[top++] = farthest;
+                ranges[top++] = farthest;
+                ranges[top++] = last;
+            }
+        }
+
+        int added = keepCurveWithin(keep, maxSquared, work);
+        if (added < 0 || kept + added == mPointCount) {
+            return this;
+        }
+        kept += added;
+        StrokeGeometry simplified = new StrokeGeometry(kept);
+        for (int i = 0; i < mPointCount; i++) {
+            if (keep[i] && mTimes != null) {
+                simplified.addPoint(getX(i), getY(i), mTimes[i], mPressures[i]);
+            } else if (keep[i]) {
+                simplified.addPoint(getX(i), getY(i));
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Keeps more points until the Path of the kept points is within the tolerance of the Path of
+     * all of them. Between two kept points, the Path of all points is sampled every quarter of a
+     * curve and each sample is measured against the curves of the two kept points. The dropped
+     * point whose curve has the worst sample is kept, until no sample is too far.
+     *
+     * @param keep  Whether each point is kept, updated in place.
+     * @param maxSquared    Squared tolerance.
+     * @param work  Number of samples which may be measured.
+     * @return Number of points which were kept in addition, or -1 if that took too many samples.
+     */
+    private int keepCurveWithin(boolean[] keep, float maxSquared, long work) {
+        int[] kept = new int[mPointCount];
+        int added = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int count = 0;
+            for (int i = 0; i < mPointCount; i++) {
+                if (keep[i]) {
+                    kept[count++] = i;
+                }
+            }
+
+            for (int j = 0; j + 1 < count; j++) {
+                int a = kept[j], b = kept[j + 1];
+                work -= (b - a) * 4 + 1;
+                if (work < 0) {
+                    return -1;
+                }
+
+                int worst = -1;
+                float worstSquared = maxSquared;
+                // The curves of a and b only count from their middle and up to it respectively.
+                for (int step = 2; step <= (b - a) * 4 + 2; step++) {
+                    int i = a + step / 4;
+                    float t = (step % 4) / 4f, u = 1 - t;
+                    float cx = getX(i), cy = getY(i);
+                    float sx = i == 0 ? cx : (getX(i - 1) + cx) / 2;
+                    float sy = i == 0 ? cy : (getY(i - 1) + cy) / 2;
+                    float ex = i == mPointCount - 1 ? cx : (getX(i + 1) + cx) / 2;
+                    float ey = i == mPointCount - 1 ? cy : (getY(i + 1) + cy) / 2;
+                    float squared = squaredDistanceToCurves(u * u * sx + 2 * u * t * cx + t * t * ex,
+                            u * u * sy + 2 * u * t * cy + t * t * ey, kept, count, j);
+                    if (squared > worstSquared) {
+                        worst = Math.max(a + 1, Math.min(b - 1, i));
+                        worstSquared = squared;
+                    }
+                }
+
+                if (worst > a && worst < b) {
+                    keep[worst] = true;
+                    added++;
+                    changed = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return Squared distance from (x, y) to the curves around the jth and (j + 1)th of the
+     *         given points in the Path through only those points.
+     */
+    private float squaredDistanceToCurves(float x, float y, int[] points, int count, int j) {
+        return Math.min(squaredDistanceToCurve(x, y, points, count, j),
+                squaredDistanceToCurve(x, y, points, count, j + 1));
+    }
+
+    /**
+     * @return Squared distance from (x, y) to the curve around the jth of the given points in the
+     *         Path through only those points: from halfway from the point before, or the first
+     *         point, to halfway to the point after, or the last point.
+     */
+    private float squaredDistanceToCurve(float x, float y, int[] points, int count, int j) {
+        float cx = getX(points[j]), cy = getY(points[j]);
+        float sx = j == 0 ? cx : (getX(points[j - 1]) + cx) / 2;
+        float sy = j == 0 ? cy : (getY(points[j - 1]) + cy) / 2;
+        float ex = j == count - 1 ? cx : (getX(points[j + 1]) + cx) / 2;
+        float ey = j == count - 1 ? cy : (getY(points[j + 1]) + cy) / 2;
+
+        float best = Float.MAX_VALUE, lastX = sx, lastY = sy;
+        for (int k = 1; k <= FLATTEN_SEGMENTS; k++) {
+            float t = (float) k / FLATTEN_SEGMENTS, u = 1 - t;
+            float qx = u * u * sx + 2 * u * t * cx + t * t * ex;
+            float qy = u * u * sy + 2 * u * t * cy + t * t * ey;
+            best = Math.min(best, squaredDistanceToSegment(x, y, lastX, lastY, qx, qy));
+            lastX = qx;
+            lastY = qy;
+        }
+        return best;
+    }
+
+    /**
+     * @return Squared distance from (x, y) to the segment between points a and b.
+     */
+    private float squaredDistanceToSegment(float x, float y, int a, int b) {
+        return squaredDistanceToSegment(x, y, getX(a), getY(a), getX(b), getY(b));
+    }
+
+    /**
+     * @return Squared distance from (x, y) to the segment between (ax, ay) and (bx, by).
+     */
+    private static float squaredDistanceToSegment(float x, float y, float ax, float ay, float bx, float by) {
+        float dx = bx - ax, dy = by - ay;
+        float px = x - ax, py = y - ay;
+
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared));
+        float ex = px - t * dx, ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Returns the Path for this stroke, building it on first use. Points added afterwards are
+     * appended to it, so callers showing it only need to invalidate the new segment.
+     *
+     * @return Cached Path for the stroke, which must not be modified.
+     */
+    public Path getPath() {
+        if (mPath == null) {
+            mPath = toPath();
+        }
+        return mPath;
+    }
+
+    /**
+     * Builds a new Path for this stroke: a quadratic bezier from the midpoint of each pair of points
+     * to the next, using the point as control, and a straight line from the last midpoint to the
+     * last point, so the Path ends where the stroke does.
+     *
+     * @return New Path for the stroke.
+     */
+    public Path toPath() {
+        Path path = new Path();
+        for (int i = 0; i < mPointCount; i++) {
+            appendToPath(path, i);
+        }
+        return path;
+    }
+
+    /**
+     * Appends point i to a path built from the points before it. The line to the last point is a
+     * bezier with the point as control and end, so moving its end to the next midpoint turns it
+     * into that point's curve without rebuilding the path.
+     */
+    private void appendToPath(Path path, int i) {
+        if (i == 0) {
+            path.moveTo(mCoords[0], mCoords[1]);
+            return;
+        }
+        float lastX = mCoords[i * 2 - 2], lastY = mCoords[i * 2 - 1];
+        float x = mCoords[i * 2], y = mCoords[i * 2 + 1];
+        if (i == 1) {
+            path.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
+        } else {
+            path.setLastPoint((x + lastX) / 2, (y + lastY) / 2);
+        }
+        path.quadTo(x, y, x, y);
+    }
+}
@@ -5,14 +5,28 @@ import android.support.constraint.ConstraintSet;
 import android.util.Log;
 import android.view.ViewGroup;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import cse340.undo.R;
 import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ActionBatch;
+import cse340.undo.actions.CompositeAction;
+import cse340.undo.actions.StrokeAction;
 import cse340.undo.history.AbstractHistory;
-import cse340.undo.history.StackHistory;
+import cse340.undo.history.Branch;
+import cse340.undo.history.BudgetHistory;
+import cse340.undo.history.CheckpointCache;
+import cse340.undo.history.CoalescingHistory;
+import cse340.undo.history.JournalHistory;
+import cse340.undo.history.RingHistory;
+import cse340.undo.history.TieredHistory;
+import cse340.undo.history.TreeHistory;
 
 /**
  * This is an Activity wrapper around DrawingView. Not only does it instantiate a DrawingView and
@@ -22,7 +36,7 @@ import cse340.undo.history.StackHistory;
  * that action to the history model. Then, we may choose to undo or redo by asking the history model
  * for the next undo/redo action and then undoing/doing that action on the DrawingView
  *
- * @see StackHistory
+ * @see RingHistory
  * @see AbstractReversibleDrawingActivity#doAction(AbstractAction)
  * @see AbstractReversibleDrawingActivity#undo()
  * @see AbstractReversibleDrawingActivity#redo()
@@ -30,14 +44,86 @@ import cse340.undo.history.StackHistory;
 public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingActivity {
     protected static final int DEFAULT_HISTORY_SIZE = 10;
 
+    /**
+     * Intent extra (an int) overriding the maximum number of history items given to the
+     * constructor.
+     */
+    public static final String EXTRA_HISTORY_SIZE = "cse340.undo.extra.HISTORY_SIZE";
+
+    /**
+     * Intent extra (a long) limiting the history by the memory its actions retain, in bytes,
+     * instead of by number of actions.
+     */
+    public static final String EXTRA_HISTORY_BUDGET = "cse340.undo.extra.HISTORY_BUDGET";
+
+    /**
+     * Intent extra (a boolean) keeping an unlimited history, of which only the maximum number of
+     * history items stay in memory and older ones are spilled to the cache directory.
+     */
+    public static final String EXTRA_HISTORY_SPILL = "cse340.undo.extra.HISTORY_SPILL";
+
+    /**
+     * Intent extra (a boolean) keeping undone actions on branches of an unlimited history instead
+     * of dropping them. Such a history is not journaled.
+     */
+    public static final String EXTRA_HISTORY_BRANCHES = "cse340.undo.extra.HISTORY_BRANCHES";
+
+    /** Maximum time between two paint changes for them to share a history entry, in milliseconds. */
+    protected static final long DEFAULT_COALESCE_WINDOW = 2000;
+
+    /**
+     * Most actions done between two checkpoints. Fewer are used for histories which can't undo
+     * twice as many, so that checkpoints are within reach of undo.
+     */
+    protected static final int MAX_CHECKPOINT_INTERVAL = 20;
+
+    /** Maximum total size of the compressed checkpoints, in bytes. */
+    protected static final long CHECKPOINT_BUDGET = 16 * 1024 * 1024;
+
+    /** Name of the journal file in the app's files directory. */
+    protected static final String JOURNAL_FILE = "history.journal";
+
+    /** Name of the file spilled actions are kept in, in the app's cache directory. */
+    protected static final String SPILL_FILE = "history.spill";
+
     private final String LOG_TAG = getClass().getSimpleName();
 
-    /** History model used to do/undo/redo actions. */
-    protected final AbstractHistory mModel;
+    /** Maximum number of history items, unless the intent says otherwise. */
+    private final int mHistorySize;
+
+    /** History model used to do/undo/redo actions. Created in onCreate, from the intent. */
+    protected AbstractHistory mModel;
+
+    /** History made by createHistory, which mModel wraps. */
+    private AbstractHistory mHistory;
+
+    /** Journal keeping mModel on disk, or null if it is not persisted. */
+    private JournalHistory mJournal;
 
     /** View groups containing undo and redo menu buttons. */
     private ViewGroup mUndoMenu, mRedoMenu;
 
+    /** Raster checkpoints used to jump through the history without replaying every action. */
+    private final CheckpointCache mCheckpoints;
+
+    /** Minimum number of actions done between two checkpoints, derived from mModel's capacity. */
+    private int mCheckpointInterval;
+
+    /** Number of actions done since the last checkpoint was taken. */
+    private int mSinceCheckpoint;
+
+    /**
+     * Number of done actions rendered by their own views on top of the DrawingView's base layer.
+     * Undoing more than this requires dropping the base layer first.
+     */
+    private int mLiveDepth;
+
+    /** Open transaction collecting actions to be done as one, or null if there is none. */
+    private CompositeAction mTransaction;
+
+    /** Actions done while the journal is being recovered, or null once it is recovered. */
+    private List<AbstractAction> mDeferred;
+
     /**
      * Class which defines a listener to be called when an action is done.
      */
@@ -66,16 +152,54 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     }
 
     /**
-     * Creates a new AbstractReversibleDrawingActivity with the given history limit.
+     * Creates a new AbstractReversibleDrawingActivity with the given history limit. Android only
+     * uses the constructor without arguments, so the intent may override the limit with
+     * EXTRA_HISTORY_SIZE, or limit the history by memory with EXTRA_HISTORY_BUDGET instead.
      *
      * @param history   Maximum number of history items to maintain.
+     * @throws IllegalArgumentException if history is not positive.
      */
     public AbstractReversibleDrawingActivity(int history) {
-        mModel = new StackHistory(history);
+        if (history <= 0) {
+            throw new IllegalArgumentException("Illegal history size: " + history);
+        }
+        mHistorySize = history;
+        mCheckpoints = new CheckpointCache(CHECKPOINT_BUDGET);
+    }
+
+    /**
+     * Creates the history which stores the actions, once the intent is known: a BudgetHistory if
+     * the intent has EXTRA_HISTORY_BUDGET, a TreeHistory if it has EXTRA_HISTORY_BRANCHES, a
+     * TieredHistory if it has EXTRA_HISTORY_SPILL, a RingHistory otherwise. Subclasses may
+     * override it to use another history; one which is Closeable is closed when the activity is
+     * destroyed.
+     *
+     * @return New, empty history.
+     */
+    protected AbstractHistory createHistory() {
+        long budget = getIntent().getLongExtra(EXTRA_HISTORY_BUDGET, 0);
+        if (budget > 0) {
+            return new BudgetHistory(budget);
+        } else if (getIntent().getBooleanExtra(EXTRA_HISTORY_BRANCHES, false)) {
+            return new TreeHistory();
+        }
+        int size = getIntent().getIntExtra(EXTRA_HISTORY_SIZE, mHistorySize);
+        if (getIntent().getBooleanExtra(EXTRA_HISTORY_SPILL, false)) {
+            return new TieredHistory(new File(getCacheDir(), SPILL_FILE), size);
+        }
+        return new RingHistory(size);
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Consecutive changes to the same paint property are merged into one history item, and
+        // the drawing and its history are journaled so they survive the app being killed. The
+        // journal can't keep undone branches, so a history keeping them is not journaled.
+        mHistory = createHistory();
+        mJournal = mHistory.supportsBranches() ? null : new JournalHistory(mHistory);
+        mModel = new CoalescingHistory(mJournal != null ? mJournal : mHistory, DEFAULT_COALESCE_WINDOW);
+        mCheckpointInterval = Math.max(1, Math.min(MAX_CHECKPOINT_INTERVAL, mModel.getCapacity() / 2));
+
         super.onCreate(savedInstanceState);
 
         // Add undo and redo menu buttons to the ConstraintLayout.
@@ -87,13 +211,62 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
 
         findViewById(R.id.fab_undo).setOnClickListener((v) -> undo());
         findViewById(R.id.fab_redo).setOnClickListener((v) -> redo());
+        // Either button may be hidden at the ends of a branch, so both can switch branches.
+        findViewById(R.id.fab_undo).setOnLongClickListener((v) -> switchToNextBranch());
+        findViewById(R.id.fab_redo).setOnLongClickListener((v) -> switchToNextBranch());
 
         mActionUndoListeners = new ArrayList<>();
         mActionListeners = new ArrayList<>();
 
+        // Actions which can't be undone anymore hand their strokes over to the raster layer.
+        mModel.setOnEvictedListener(action -> action.flatten(mDrawingView));
+
+        if (mJournal != null) {
+            // Rebuild the drawing and history from the last session, in the background.
+            mDeferred = new ArrayList<>();
+            mJournal.open(new File(getFilesDir(), JOURNAL_FILE), mDrawingView, this::onRecovered);
+        }
+
+        updateMenuButtons();
+
+
+    }
+
+    /**
+     * Called once the journal's actions are redone, to catch up with the actions done meanwhile.
+     */
+    private void onRecovered() {
+        mLiveDepth = mModel.getPosition();
+        mSinceCheckpoint = mLiveDepth;
+
+        List<AbstractAction> deferred = mDeferred;
+        mDeferred = null;
+        deferred.forEach(this::doAction);
         updateMenuButtons();
+    }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mJournal != null) {
+            mJournal.flush();
+        }
+    }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mCheckpoints.close();
+        if (mJournal != null) {
+            mJournal.close();
+        }
+        if (mHistory instanceof Closeable) {
+            try {
+                ((Closeable) mHistory).close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Could not close history " + mHistory, e);
+            }
+        }
     }
 
     /**
@@ -105,6 +278,18 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
     protected void doAction(AbstractAction action) {
         if (action == null) {
             return;
+        } else if (mDeferred != null) {
+            // The history isn't recovered yet, so this goes after the recovered actions.
+            mDeferred.add(action);
+            return;
+        }
+
+        if (mTransaction != null) {
+            if (!(action instanceof AbstractReversibleAction)) {
+                throw new IllegalStateException("Irreversible action in transaction: " + action);
+            }
+            mTransaction.add((AbstractReversibleAction) action);
+            return;
         }
 
         super.doAction(action);
@@ -116,6 +301,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
             Log.i(LOG_TAG, "Before add: " + mModel);
             mModel.addAction(ra);
             Log.i(LOG_TAG, "After add: " + mModel);
+            onDone(ra);
 
             Log.i(LOG_TAG, "calling listeners on action");
             mActionListeners.forEach(l -> l.onAction(ra));
@@ -124,11 +310,57 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
 
             Log.i(LOG_TAG, "Undoable action: " + action);
             mModel.clear();
+            mCheckpoints.clear();
+            mSinceCheckpoint = 0;
         }
 
         updateMenuButtons();
     }
 
+    /**
+     * Starts collecting actions into a transaction. Until commitTransaction or cancelTransaction,
+     * actions passed to doAction are not done right away but queued.
+     *
+     * @param name  Name announced for the whole transaction, e.g. the name of a macro.
+     * @throws IllegalStateException if a transaction is already open.
+     */
+    protected void beginTransaction(String name) {
+        if (mTransaction != null) {
+            throw new IllegalStateException("Transaction already open: " + mTransaction);
+        }
+        mTransaction = new CompositeAction(name);
+    }
+
+    /**
+     * Does every action queued since beginTransaction as a single action. It takes one slot in the
+     * history, is announced and reported to listeners once, and its view changes are drawn at once.
+     *
+     * @throws IllegalStateException if no transaction is open.
+     */
+    protected void commitTransaction() {
+        if (mTransaction == null) {
+            throw new IllegalStateException("No transaction to commit");
+        }
+
+        CompositeAction transaction = mTransaction;
+        mTransaction = null;
+        if (!transaction.getChildren().isEmpty()) {
+            doAction(transaction);
+        }
+    }
+
+    /**
+     * Drops every action queued since beginTransaction without doing them.
+     *
+     * @throws IllegalStateException if no transaction is open.
+     */
+    protected void cancelTransaction() {
+        if (mTransaction == null) {
+            throw new IllegalStateException("No transaction to cancel");
+        }
+        mTransaction = null;
+    }
+
     /**
      * Redoes the most recently undone action (if any).
      */
@@ -139,6 +371,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
 
         if (action != null) {
             action.doAction(mDrawingView);
+            onDone(action);
             Log.i(LOG_TAG, "calling action listeners on action");
             mActionListeners.forEach(l -> l.onAction(action));
         }
@@ -155,7 +388,7 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         Log.i(LOG_TAG, "After undo" + mModel);
 
         if (action != null) {
-            action.undoAction(mDrawingView);
+            undoAction(action);
             Log.i(LOG_TAG, "calling undo listeners on action");
             mActionUndoListeners.forEach(l -> l.onActionUndone(action));
         }
@@ -163,6 +396,212 @@ public abstract class AbstractReversibleDrawingActivity extends AbstractDrawingA
         updateMenuButtons();
     }
 
+    /**
+     * Undoes up to n actions at once. See jump.
+     *
+     * @param n Number of actions to undo.
+     */
+    protected void undo(int n) {
+        jump(-n);
+    }
+
+    /**
+     * Redoes up to n actions at once. See jump.
+     *
+     * @param n Number of actions to redo.
+     */
+    protected void redo(int n) {
+        jump(n);
+    }
+
+    /**
+     * Undoes or redoes actions until exactly the given number of actions is done. See jump.
+     *
+     * @param position  Number of actions which should be done, e.g. from a scrubber.
+     * @throws IllegalArgumentException if position is negative.
+     */
+    protected void seek(int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("Illegal position: " + position);
+        }
+        jump(position - mModel.getPosition());
+    }
+
+    /**
+     * Undoes or redoes several actions at once. Only the net effect is applied to the DrawingView:
+     * paint changes collapse to the final paint, and all stroke views are added or removed in a
+     * single layout pass. If a checkpoint is close to the target, it is restored and only the
+     * actions after it are replayed, so the strokes in the checkpoint are rendered by one bitmap.
+     * Listeners are called for every action, but the menu is updated once.
+     *
+     * @param steps Number of actions to redo if positive, or to undo if negative.
+     */
+    private void jump(int steps) {
+        if (steps == 0) {
+            return;
+        }
+
+        Log.i(LOG_TAG, "Before jump by " + steps + ": " + mModel);
+        int count = steps < 0 ? jumpBack(-steps) : jumpForward(steps);
+        Log.i(LOG_TAG, "After jump: " + mModel);
+
+        if (count > 0) {
+            mDrawingView.announceForAccessibility((steps < 0 ? "Undid " : "Redid ") + count + " actions");
+        }
+        updateMenuButtons();
+    }
+
+    /**
+     * Undoes up to n actions, restoring a checkpoint if one is found within the checkpoint
+     * interval before the target.
+     *
+     * @param n Number of actions to undo.
+     * @return Number of actions undone.
+     */
+    private int jumpBack(int n) {
+        List<AbstractReversibleAction> undone = mModel.undo(n);
+
+        // Peek further back for an action with a checkpoint, without changing the history.
+        List<AbstractReversibleAction> replayed = new ArrayList<>();
+        CheckpointCache.Checkpoint checkpoint = null;
+        for (AbstractReversibleAction action; replayed.size() < mCheckpointInterval
+                && (action = mModel.peekUndo(replayed.size())) != null; ) {
+            checkpoint = mCheckpoints.get(action);
+            if (checkpoint != null) {
+                break;
+            }
+            replayed.add(action);
+        }
+
+        mDrawingView.beginBatch();
+        if (checkpoint == null || replayed.size() >= undone.size()) {
+            if (mDrawingView.hasBaseLayer() && undone.size() > mLiveDepth) {
+                mDrawingView.dropBaseLayer();
+            }
+            mLiveDepth = Math.max(0, mLiveDepth - undone.size());
+            ActionBatch.revert(undone, mDrawingView);
+        } else {
+            mDrawingView.restoreCheckpoint(checkpoint.decode(), checkpoint.getPaint());
+            ActionBatch.revert(undone, mDrawingView);
+            Collections.reverse(replayed);
+            ActionBatch.replay(replayed, mDrawingView);
+            mLiveDepth = replayed.size();
+        }
+        mDrawingView.endBatch();
+
+        for (AbstractReversibleAction action : undone) {
+            mActionUndoListeners.forEach(l -> l.onActionUndone(action));
+        }
+        return undone.size();
+    }
+
+    /**
+     * Redoes up to n actions, restoring the checkpoint of the last of them that has one.
+     *
+     * @param n Number of actions to redo.
+     * @return Number of actions redone.
+     */
+    private int jumpForward(int n) {
+        List<AbstractReversibleAction> redone = mModel.redo(n);
+
+        int anchor = redone.size() - 1;
+        CheckpointCache.Checkpoint checkpoint = null;
+        while (anchor >= 0 && (checkpoint = mCheckpoints.get(redone.get(anchor))) == null) {
+            anchor--;
+        }
+
+        mDrawingView.beginBatch();
+        if (checkpoint == null) {
+            ActionBatch.replay(redone, mDrawingView);
+            mLiveDepth += redone.size();
+            mSinceCheckpoint += redone.size();
+        } else {
+            // Everything up to the anchor ends up parked under the checkpoint's bitmap.
+            ActionBatch.replay(redone.subList(0, anchor + 1), mDrawingView);
+            mDrawingView.restoreCheckpoint(checkpoint.decode(), checkpoint.getPaint());
+            ActionBatch.replay(redone.subList(anchor + 1, redone.size()), mDrawingView);
+            mLiveDepth = redone.size() - 1 - anchor;
+            mSinceCheckpoint = mLiveDepth;
+        }
+        mDrawingView.endBatch();
+
+        for (AbstractReversibleAction action : redone) {
+            mActionListeners.forEach(l -> l.onAction(action));
+        }
+        return redone.size();
+    }
+
+    /**
+     * Undoes an action on the DrawingView. If its stroke is only rendered by the base layer, the
+     * base layer is dropped first so that every stroke has its own view again.
+     *
+     * @param action    Action to undo.
+     */
+    private void undoAction(AbstractReversibleAction action) {
+        if (mDrawingView.hasBaseLayer() && mLiveDepth == 0) {
+            mDrawingView.dropBaseLayer();
+        }
+        mLiveDepth = Math.max(0, mLiveDepth - 1);
+        action.undoAction(mDrawingView);
+    }
+
+    /**
+     * Bookkeeping after an action is done or redone. Takes a checkpoint every mCheckpointInterval
+     * actions. Only strokes are used as anchors, since paint changes may still absorb later ones.
+     *
+     * @param action    Action which was just done.
+     */
+    private void onDone(AbstractReversibleAction action) {
+        mLiveDepth++;
+        mSinceCheckpoint++;
+        if (mSinceCheckpoint >= mCheckpointInterval && action instanceof StrokeAction
+                && !mCheckpoints.contains(action)) {
+            DrawingView.Snapshot snapshot = mDrawingView.snapshotStrokes();
+            if (snapshot != null) {
+                mCheckpoints.capture(action, snapshot, mDrawingView.getCurrentPaint());
+                mSinceCheckpoint = 0;
+            }
+        }
+    }
+
+    /**
+     * Moves to another branch of the history by undoing back to the common ancestor of the current
+     * and target branches, then redoing down to the tip of the target branch.
+     *
+     * @param branch    Branch to switch to, from the history model's getBranches.
+     * @throws IllegalStateException if the history model does not support branches.
+     * @see AbstractHistory#supportsBranches()
+     */
+    protected void switchBranch(Branch branch) {
+        if (!mModel.supportsBranches()) {
+            throw new IllegalStateException("History does not support branches: " + mModel);
+        }
+
+        Log.i(LOG_TAG, "Switching to " + branch);
+        undo(mModel.selectBranch(branch));
+        redo(branch.getDepth() - mModel.getPosition());
+    }
+
+    /**
+     * Switches to the branch added after the one redo currently leads to, or back to the first
+     * branch from the last one.
+     *
+     * @return True if the history has another branch to switch to, false otherwise.
+     */
+    protected boolean switchToNextBranch() {
+        if (!mModel.supportsBranches()) {
+            return false;
+        }
+
+        List<Branch> branches = mModel.getBranches();
+        if (branches.size() < 2) {
+            return false;
+        }
+        int current = branches.indexOf(mModel.getCurrentBranch());
+        switchBranch(branches.get((current + 1) % branches.size()));
+        return true;
+    }
+
     protected void updateMenuButtons() {
         setViewVisibility(mUndoMenu, mModel.canUndo());
         setViewVisibility(mRedoMenu, mModel.canRedo());
@@ -0,0 +1,134 @@
+package cse340.undo.app;
+
+/**
+ * Smooths a stroke by passing on points along a centripetal Catmull-Rom spline through its
+ * samples, a fixed number per segment between two samples. Unlike a uniform spline, the
+ * centripetal one neither overshoots nor loops at sharp turns.
+ *
+ * Each segment depends on the sample after it, so the points of a segment are passed on once the
+ * next sample is taken, and those of the last one when the stroke is finished. The ends of the
+ * spline continue the stroke in a straight line. Time and pressure are interpolated linearly.
+ */
+public class CatmullRomFilter implements StrokeFilter {
+    /** Shortest knot interval, so repeated points don't divide by 0. */
+    private static final float MIN_KNOT_INTERVAL = 1e-4f;
+
+    /** Number of points passed on for each segment. */
+    private final int mSubdivisions;
+
+    /** Control points of the current segment, the second and third one being its ends. */
+    private final float[] mX = new float[4];
+    private final float[] mY = new float[4];
+    private final long[] mTime = new long[4];
+    private final float[] mPressure = new float[4];
+
+    /** Number of control points set. */
+    private int mCount;
+
+    private CatmullRomFilter(int subdivisions) {
+        mSubdivisions = subdivisions;
+    }
+
+    /**
+     * @param subdivisions  Number of points passed on for each segment between two samples.
+     * @return Factory of filters smoothing strokes with that many points per segment.
+     * @throws IllegalArgumentException if subdivisions is less than 1.
+     */
+    public static Factory withSubdivisions(int subdivisions) {
+        if (subdivisions < 1) {
+            throw new IllegalArgumentException("Need at least one subdivision: " + subdivisions);
+        }
+        return () -> new CatmullRomFilter(subdivisions);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void addPoint(float x, float y, long time, float pressure, Sink out) {
+        if (mCount == 0) {
+            // The first control point is only known once the second sample is taken.
+            set(0, x, y, time, pressure);
+            set(1, x, y, time, pressure);
+            mCount = 2;
+            out.addPoint(x, y, time, pressure);
+            return;
+        } else if (x == mX[mCount - 1] && y == mY[mCount - 1]) {
+            return;
+        }
+
+        set(mCount++, x, y, time, pressure);
+        if (mCount == 3) {
+            mX[0] = 2 * mX[1] - mX[2];
+            mY[0] = 2 * mY[1] - mY[2];
+        } else if (mCount == 4) {
+            passSegment(out);
+            shift();
+        }
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void finish(Sink out) {
+        if (mCount == 3) {
+            set(3, 2 * mX[2] - mX[1], 2 * mY[2] - mY[1], mTime[2], mPressure[2]);
+            mCount = 4;
+            passSegment(out);
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Passes on the points of the segment between the second and third control points, the last
+     * one being the third control point.
+     */
+    private void passSegment(Sink out) {
+        float t0 = 0;
+        float t1 = t0 + knotInterval(0, 1);
+        float t2 = t1 + knotInterval(1, 2);
+        float t3 = t2 + knotInterval(2, 3);
+
+        for (int i = 1; i <= mSubdivisions; i++) {
+            float fraction = (float) i / mSubdivisions;
+            float t = t1 + (t2 - t1) * fraction;
+            out.addPoint(evaluate(mX, t0, t1, t2, t3, t), evaluate(mY, t0, t1, t2, t3, t),
+                    mTime[1] + Math.round((mTime[2] - mTime[1]) * (double) fraction),
+                    mPressure[1] + (mPressure[2] - mPressure[1]) * fraction);
+        }
+    }
+
+    /**
+     * @return Knot interval between two control points: the square root of their distance.
+     */
+    private float knotInterval(int i, int j) {
+        float dx = mX[j] - mX[i], dy = mY[j] - mY[i];
+        return Math.max(MIN_KNOT_INTERVAL, (float) Math.sqrt(Math.sqrt(dx * dx + dy * dy)));
+    }
+
+    /**
+     * Evaluates one coordinate of the spline with the Barry and Goldman pyramid.
+     */
+    private static float evaluate(float[] p, float t0, float t1, float t2, float t3, float t) {
+        float a1 = ((t1 - t) * p[0] + (t - t0) * p[1]) / (t1 - t0);
+        float a2 = ((t2 - t) * p[1] + (t - t1) * p[2]) / (t2 - t1);
+        float a3 = ((t3 - t) * p[2] + (t - t2) * p[3]) / (t3 - t2);
+        float b1 = ((t2 - t) * a1 + (t - t0) * a2) / (t2 - t0);
+        float b2 = ((t3 - t) * a2 + (t - t1) * a3) / (t3 - t1);
+        return ((t2 - t) * b1 + (t - t1) * b2) / (t2 - t1);
+    }
+
+    private void set(int i, float x, float y, long time, float pressure) {
+        mX[i] = x;
+        mY[i] = y;
+        mTime[i] = time;
+        mPressure[i] = pressure;
+    }
+
+    /**
+     * Drops the first control point, so the next sample completes the next segment.
+     */
+    private void shift() {
+        for (int i = 0; i < 3; i++) {
+            set(i, mX[i + 1], mY[i + 1], mTime[i + 1], mPressure[i + 1]);
+        }
+        mCount = 3;
+    }
+}
@@ -0,0 +1,231 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Raster layer holding the strokes of a DrawingView which can no longer be undone. Strokes are
+ * rasterized on a background thread into a back bitmap, which is then swapped with the bitmap being
+ * drawn. Only after the swap does the DrawingView drop the stroke's vector form, so it is shown the
+ * whole time.
+ *
+ * The old front bitmap becomes the next back bitmap; it lacks the batch that was just swapped in, so
+ * that batch is drawn into it again before the next one. All methods must be called on the UI thread.
+ */
+class CommittedLayer {
+    /**
+     * A stroke waiting to be rasterized.
+     */
+    private static final class Entry {
+        final long mId;
+        final Path mPath;
+        final Paint mPaint;
+
+        Entry(long id, Path path, Paint paint) {
+            mId = id;
+            mPath = path;
+            mPaint = paint;
+        }
+    }
+
+    /** View which draws the layer and owns the vector form of the strokes. */
+    private final DrawingView mView;
+
+    /** Bitmap which is drawn, and the previous one, which is reused as the next back bitmap. */
+    private Bitmap mFront, mSpare;
+
+    /** Whether mFront was shared, so it must not become the next back bitmap. */
+    private boolean mFrontShared;
+
+    /** Strokes which are in mFront but not in mSpare. */
+    private List<Entry> mSpareMissing;
+
+    /** Strokes waiting for the next batch. */
+    private List<Entry> mPending;
+
+    /** Batch being rasterized, or null if there is none. */
+    private List<Entry> mInFlight;
+
+    /** Size of the layer, 0 until the view is laid out. */
+    private int mWidth, mHeight;
+
+    /** Thread which rasterizes strokes, or null until needed. */
+    private ExecutorService mWorker;
+
+    CommittedLayer(DrawingView view) {
+        mView = view;
+        mSpareMissing = new ArrayList<>();
+        mPending = new ArrayList<>();
+    }
+
+    /**
+     * Queues a stroke to be rasterized. The DrawingView's removeStroke is called for it once it is
+     * in the bitmap which is drawn.
+     *
+     * @param id    Id of the stroke.
+     * @param path  Path of the stroke, which must not change anymore.
+     * @param paint Paint of the stroke, which must not change anymore.
+     */
+    void add(long id, Path path, Paint paint) {
+        mPending.add(new Entry(id, path, paint));
+        rasterize();
+    }
+
+    /**
+     * Resizes the layer, keeping the top left of what was rasterized so far.
+     *
+     * @param width New width of the layer.
+     * @param height    New height of the layer.
+     */
+    void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight) {
+            return;
+        }
+        mWidth = width;
+        mHeight = height;
+
+        if (mFront != null && width > 0 && height > 0) {
+            Bitmap resized = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            new Canvas(resized).drawBitmap(mFront, 0, 0, null);
+            mFront = resized;
+            mFrontShared = false;
+        }
+        mSpare = null;
+        mSpareMissing = new ArrayList<>();
+        rasterize();
+    }
+
+    /**
+     * Draws the rasterized strokes.
+     *
+     * @param canvas    Canvas to draw on.
+     */
+    void draw(Canvas canvas) {
+        if (mFront != null) {
+            canvas.drawBitmap(mFront, 0, 0, null);
+        }
+    }
+
+    /**
+     * Shares the bitmap which is drawn, e.g. to render it on another thread. It is never drawn
+     * into again; the next batch goes into a copy of it instead.
+     *
+     * @return The bitmap which is drawn, or null if no stroke was rasterized yet.
+     */
+    Bitmap share() {
+        mFrontShared = mFront != null;
+        return mFront;
+    }
+
+    /**
+     * Stops the background thread. A batch being rasterized is queued again in front of the
+     * pending strokes, which all stay in vector form until restart is called or more strokes are
+     * added.
+     */
+    void release() {
+        if (mWorker != null) {
+            mWorker.shutdownNow();
+            mWorker = null;
+        }
+        if (mInFlight != null) {
+            mInFlight.addAll(mPending);
+            mPending = mInFlight;
+            mInFlight = null;
+        }
+    }
+
+    /**
+     * Starts rasterizing the pending strokes again after release.
+     */
+    void restart() {
+        rasterize();
+    }
+
+    /**
+     * Starts rasterizing the pending strokes, unless a batch is already in flight.
+     */
+    private void rasterize() {
+        if (mInFlight != null || mPending.isEmpty() || mWidth == 0 || mHeight == 0) {
+            return;
+        }
+        if (mWorker == null) {
+            mWorker = Executors.newSingleThreadExecutor();
+        }
+
+        List<Entry> batch = mPending;
+        mPending = new ArrayList<>();
+        mInFlight = batch;
+
+        Bitmap spare = mSpare;
+        Bitmap front = mFront;
+        List<Entry> missing = mSpareMissing;
+        int width = mWidth, height = mHeight;
+        mSpare = null;
+
+        mWorker.execute(() -> {
+            Bitmap back;
+            if (spare != null) {
+                back = spare;
+            } else if (front != null) {
+                // Only reads front, which the UI thread also only reads.
+                back = front.copy(Bitmap.Config.ARGB_8888, true);
+            } else {
+                back = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+
+            Canvas canvas = new Canvas(back);
+            if (spare != null) {
+                for (Entry entry : missing) {
+                    canvas.drawPath(entry.mPath, entry.mPaint);
+                }
+            }
+            for (Entry entry : batch) {
+                canvas.drawPath(entry.mPath, entry.mPaint);
+            }
+
+            mView.post(() -> swap(back, batch, width, height));
+        });
+    }
+
+    /**
+     * Makes a rasterized back bitmap the front one and drops the vector form of its strokes.
+     */
+    private void swap(Bitmap back, List<Entry> batch, int width, int height) {
+        if (batch != mInFlight) {
+            // Released while rasterizing, so the batch was queued again.
+            return;
+        }
+        mInFlight = null;
+
+        if (width != mWidth || height != mHeight) {
+            // Resized while rasterizing, so rasterize the batch again at the new size.
+            batch.addAll(mPending);
+            mPending = batch;
+        } else {
+            if (mFrontShared) {
+                mSpare = null;
+                mSpareMissing = new ArrayList<>();
+                mFrontShared = false;
+            } else {
+                mSpare = mFront;
+                mSpareMissing = batch;
+            }
+            mFront = back;
+
+            mView.beginBatch();
+            for (Entry entry : batch) {
+                mView.removeStroke(entry.mId);
+            }
+            mView.endBatch();
+            mView.invalidate();
+        }
+        rasterize();
+    }
+}
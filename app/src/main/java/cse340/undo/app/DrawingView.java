@@ -2,44 +2,188 @@ package cse340.undo.app;
 
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.view.ViewGroup;
 import android.widget.FrameLayout;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import cse340.undo.BuildConfig;
 import cse340.undo.actions.AbstractAction;
 import cse340.undo.actions.AbstractReversibleViewAction;
+import cse340.undo.actions.BrushStyle;
 import cse340.undo.actions.StrokeAction;
+import cse340.undo.actions.StrokeGeometry;
 
 /***
  * The canvas on which the drawing takes place. Drawings are made up of
- * strokes, which are handled by the StrokeAction class.
- * This canvas doesn't know anything about undo, and you won't need
- * to modify it to add features, or to add support for undo.
+ * strokes, which are handled by the StrokeAction class. Each pointer
+ * draws a stroke of its own, which is passed to the listeners once done.
+ * The canvas doesn't keep the history itself, but it helps undo along:
+ * committed strokes are indexed by id so actions can show, find, flatten
+ * and remove them, and it can snapshot its strokes and restore a
+ * checkpoint as its base layer.
  */
 public class DrawingView extends FrameLayout {
     public static final String LOG_TAG = "DrawingView";
 
+    /**
+     * How committed strokes are rendered: one StrokeView each, all by one StrokeLayer, by one
+     * StrokeLayer through cached tiles, or by an InkSurface on its own render thread.
+     */
+    public enum RenderMode {
+        VIEWS, LAYER, TILES, SURFACE
+    }
+
     /** State machine enum and field. */
     private enum DrawingModel {
         START, DRAWING
     }
 
-    /** What state the PPS is in. */
+    /** What state the PPS is in: DRAWING while any stroke is being drawn. */
     private DrawingModel mState;
 
-    /** Drawing fields. */
-    private Path mCurrentPath;
+    /**
+     * A stroke being drawn by one pointer, from the time it touches down until it lifts.
+     */
+    private static final class ActiveStroke {
+        /** Id of the pointer drawing the stroke. */
+        final int mPointerId;
+
+        /** Points of the stroke. It is rendered from the geometry's cached Path. */
+        final StrokeGeometry mGeometry;
+
+        /** Stroke drawing buffer. Used to render the line while it's being drawn. */
+        final StrokeAction mBuffer;
+
+        /**
+         * Filters the touch samples go through, in order, each one passing its points on to its
+         * sink, or null to add samples as they come.
+         */
+        StrokeFilter[] mFilters;
+        StrokeFilter.Sink[] mSinks;
+
+        /** Last point added to the path, and end of the last segment, where the next one starts. */
+        final PointF mLastPoint = new PointF();
+        final PointF mLastMid = new PointF();
+
+        /** Area covered by the segments added since the last redraw. */
+        final RectF mPendingDirty = new RectF();
+
+        /** Total length of the stroke. */
+        float mDistance;
+
+        /** Last touch samples, oldest first, and how many there are. */
+        final float[] mSampleX = new float[3];
+        final float[] mSampleY = new float[3];
+        final long[] mSampleTime = new long[3];
+        int mSampleCount;
+
+        /**
+         * Predicted tail of the stroke, from its end to where the pointer is expected to be. It is
+         * drawn on top of everything and replaced on every move, but never part of the stroke.
+         */
+        final Path mPrediction = new Path();
+
+        /** Area covered by mPrediction. */
+        final RectF mPredictionBounds = new RectF();
+
+        ActiveStroke(int pointerId, StrokeGeometry geometry, StrokeAction buffer) {
+            mPointerId = pointerId;
+            mGeometry = geometry;
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * The committed strokes at some point, which can be rendered on any thread: the raster under
+     * them and their paths, none of which change anymore.
+     */
+    public static final class Snapshot {
+        private final int mWidth, mHeight;
+
+        /** Raster drawn under the paths, or null if there is none. */
+        private final Bitmap mRaster;
+
+        /** Paths of the strokes on top of the raster and their paints, in drawing order. */
+        private final List<Path> mPaths;
+        private final List<Paint> mPaints;
+
+        Snapshot(int width, int height, Bitmap raster, List<Path> paths, List<Paint> paints) {
+            mWidth = width;
+            mHeight = height;
+            mRaster = raster;
+            mPaths = paths;
+            mPaints = paints;
+        }
+
+        /**
+         * Renders the strokes. Safe to call on any thread.
+         *
+         * @return New bitmap of the strokes.
+         */
+        public Bitmap render() {
+            Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            if (mRaster != null) {
+                canvas.drawBitmap(mRaster, 0, 0, null);
+            }
+            for (int i = 0; i < mPaths.size(); i++) {
+                canvas.drawPath(mPaths.get(i), mPaints.get(i));
+            }
+            return bitmap;
+        }
+    }
+
+    /** Strokes being drawn, in the order their pointers touched down. */
+    private final List<ActiveStroke> mActiveStrokes;
+
+    /** Makes the filters touch samples go through for each stroke, in order. */
+    private final List<StrokeFilter.Factory> mStrokeFilters;
+
+    /** Stroke whose filters are running, which mFilterSink adds their points to. */
+    private ActiveStroke mFilteredStroke;
+
+    /** End of every stroke's filter chain, shared by all strokes so none allocates its own. */
+    private final StrokeFilter.Sink mFilterSink = (x, y, time, pressure) -> {
+        mEventTime = time;
+        mEventPressure = pressure;
+        addMovePoint(mFilteredStroke, x, y);
+    };
+
+    /** Whether each pointer draws a stroke of its own, instead of extra fingers navigating. */
+    private boolean mMultiPointer;
+
+    /** Id of the pointer drawing when not in multi-pointer mode. */
+    private int mDrawingPointerId;
+
+    /** Paint of the next stroke. */
     private Paint mCurrentPaint;
 
-    /** Stroke drawing buffer. Used to render the line while it's being drawn. */
-    protected AbstractReversibleViewAction mBuffer;
+    /** Style of mCurrentPaint when last looked up, or null. Checked against the paint before use. */
+    private BrushStyle mCurrentStyle;
+
+    /** Time and pressure of the touch sample being handled, recorded with each point. */
+    private long mEventTime;
+    private float mEventPressure;
 
     /** Stroke event listeners. */
     public interface OnStrokeCompletedListener {
@@ -49,15 +193,108 @@ public class DrawingView extends FrameLayout {
     /** Collection of current stroke listeners. */
     private final Set<OnStrokeCompletedListener> mListeners;
 
+    /** Range of zoom, in screen pixels per document pixel. */
+    public static final float MIN_SCALE = 0.05f, MAX_SCALE = 8;
+
+    /** Transform from document to screen coordinates, and back. */
+    private final Matrix mViewport;
+    private final Matrix mInverseViewport;
+
+    /** Recognizes pinches, which zoom the viewport. */
+    private final ScaleGestureDetector mScaleDetector;
+
+    /** Whether fingers are panning and zooming instead of drawing, until the last one is up. */
+    private boolean mNavigating;
+
+    /** Focus of the fingers when last panned, in screen coordinates, and whether it is known. */
+    private float mFocusX, mFocusY;
+    private boolean mFocusKnown;
+
+    /** Reusable point and values for mapping between screen and document coordinates. */
+    private final float[] mTouchPoint = new float[2];
+    private final float[] mViewportValues = new float[9];
+
     /** Min distance the user should move before you add to the path. */
     public static int MIN_MOVE_DIST = 5;
 
-    /** Used to track last touch point for path drawing. */
-    private final PointF mLastPoint;
-    private final PointF mStartPoint;
+    /**
+     * Whether touch handling is logged. Off in release builds, where handling a move allocates
+     * nothing in LAYER and TILES modes: no log strings, no boxed ids, no temporary objects.
+     */
+    private static final boolean LOG_INPUT = BuildConfig.DEBUG;
+
+    /** Points reserved for the stroke being drawn, so its arrays rarely grow while drawing. */
+    private static final int LIVE_STROKE_CAPACITY = 256;
+
+    /** Default tolerance for simplifying completed strokes, in pixels; too small to be seen. */
+    public static final float DEFAULT_SIMPLIFY_TOLERANCE = 0.75f;
+
+    /** Tolerance for simplifying completed strokes, or 0 to keep every point. */
+    private float mSimplifyTolerance;
+
+    /** Area covered by the last segment, used to redraw only that part of the stroke. */
+    private final RectF mSegmentBounds;
+    private final Rect mDirty;
+
+    /** Default time after the last touch sample to which strokes are predicted, in milliseconds. */
+    public static final int DEFAULT_PREDICTION_TIME = 16;
 
-    /** Used to track the total length of the stroke */
-    private int mDistance;
+    /** Farthest a predicted tail may reach past the last touch sample, in pixels. */
+    private static final float MAX_PREDICTION_DIST = 48;
+
+    /** Samples further apart than this, in milliseconds, are too stale to predict from. */
+    private static final long MAX_SAMPLE_INTERVAL = 50;
+
+    /** Time after the last touch sample to which strokes are predicted, or 0 not to predict. */
+    private int mPredictionTime;
+
+    /** Reusable area of a predicted tail on screen. */
+    private final RectF mPredictionArea;
+    private final Rect mPredictionDirty;
+
+    /** Rendering of the strokes restored from a checkpoint, drawn under the stroke views. */
+    private Bitmap mBaseLayer;
+
+    /** Raster of the strokes which can no longer be undone, drawn under everything else. */
+    private final CommittedLayer mCommitted;
+
+    /** How committed strokes are rendered. */
+    private RenderMode mRenderMode;
+
+    /**
+     * Layer rendering every stroke in LAYER and TILES modes. Always the first child. In SURFACE
+     * mode it is hidden and only keeps the strokes for snapshots and flattening.
+     */
+    private final StrokeLayer mStrokeLayer;
+
+    /** Surface rendering every stroke in SURFACE mode, right above mStrokeLayer, or null. */
+    private InkSurface mSurface;
+
+    /** Stroke views by stroke id in VIEWS mode, whether attached or parked. */
+    private final Map<Long, View> mStrokeViews;
+
+    /** Bounds of every committed stroke, shown or parked, in either render mode. */
+    private final StrokeIndex mIndex;
+
+    /** Reusable area and point of a findStrokes query, in document coordinates. */
+    private final RectF mQueryArea = new RectF();
+    private final float[] mQueryPoint = new float[2];
+
+    /** Area of the document covered by the raster layers: the size of this view, at the origin. */
+    private final RectF mRasterArea = new RectF();
+
+    /** Reusable bounds for updating mIndex. */
+    private final RectF mStrokeBounds;
+
+    /**
+     * Stroke views whose strokes are part of mBaseLayer, oldest first. They are detached so they
+     * aren't laid out or drawn, but kept so they can be re-attached if mBaseLayer is dropped.
+     */
+    private final List<View> mParkedStrokes;
+
+    /** Number of unfinished beginBatch calls, and whether children changed since the first. */
+    private int mBatchDepth;
+    private boolean mBatchChanged;
 
     /**
      * Creates a new, empty DrawingView with default paint properties.
@@ -66,11 +303,41 @@ public class DrawingView extends FrameLayout {
         super(context, attributeSet);
 
         mListeners = new HashSet<>();
+        mStrokeViews = new HashMap<>();
+        mParkedStrokes = new ArrayList<>();
 
-        mLastPoint = new PointF();
-        mStartPoint = new PointF();
+        mCommitted = new CommittedLayer(this);
 
-        mDistance = 0;
+        mRenderMode = RenderMode.LAYER;
+        mIndex = new StrokeIndex();
+        mStrokeBounds = new RectF();
+        mStrokeLayer = new StrokeLayer(context, mIndex);
+        addView(mStrokeLayer);
+
+        mActiveStrokes = new ArrayList<>();
+        mStrokeFilters = new ArrayList<>();
+        mSegmentBounds = new RectF();
+        mDirty = new Rect();
+        mPredictionArea = new RectF();
+        mPredictionDirty = new Rect();
+
+        mViewport = new Matrix();
+        mInverseViewport = new Matrix();
+        mScaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float scale = getViewportScale();
+                float target = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * detector.getScaleFactor()));
+                mViewport.postScale(target / scale, target / scale, detector.getFocusX(), detector.getFocusY());
+                onViewportChanged();
+                return true;
+            }
+        });
+        // Strokes may be drawn anywhere in the document, not only within the children's bounds.
+        setClipChildren(false);
+
+        mSimplifyTolerance = DEFAULT_SIMPLIFY_TOLERANCE;
+        mPredictionTime = DEFAULT_PREDICTION_TIME;
 
         mCurrentPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mCurrentPaint.setDither(true);
@@ -78,48 +345,95 @@ public class DrawingView extends FrameLayout {
         mCurrentPaint.setStrokeJoin(Paint.Join.ROUND);
         mCurrentPaint.setStrokeCap(Paint.Cap.ROUND);
 
-        mCurrentPath = new Path();
-
         mState = DrawingModel.START;
     }
 
     /**
      * Handles touch events for the purposes of drawing on the canvas. On touch down,
      * begins drawing a path using the current paint. On touch move, continues drawing.
-     * On touch up, notifies listeners of the completed stroke.
+     * On touch up, notifies listeners of the completed stroke. In multi-pointer mode, every
+     * pointer does so with a stroke of its own.
      *
      * @param event Event to use for drawing.
      * @return True if the event was handled, false otherwise.
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        Log.i(LOG_TAG, "Touch at (" + x + ", " + y + ")");
+        if (!mMultiPointer) {
+            mScaleDetector.onTouchEvent(event);
+            if (handleNavigation(event)) {
+                return true;
+            }
+        }
 
         // Handle input events.
         switch (mState) {
             case START:
-                return handleStartState(event, x, y);
+                return handleStartState(event);
             case DRAWING:
-                return handleDrawingState(event, x, y);
+                return handleDrawingState(event);
             default:
                 break;
         }
         return false;
     }
 
+    /**
+     * Pans and zooms when more than one finger is down, cancelling the stroke being drawn. The
+     * viewport follows the focus of the fingers; pinches are handled by mScaleDetector.
+     *
+     * @param event The MotionEvent that triggered onTouchEvent
+     * @return true if the event was used for navigation, false if it is for drawing
+     */
+    private boolean handleNavigation(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                if (!mNavigating && mState == DrawingModel.DRAWING) {
+                    onDrawCancel();
+                    mState = DrawingModel.START;
+                }
+                mNavigating = true;
+                mFocusKnown = false;
+                return true;
+            case MotionEvent.ACTION_POINTER_UP:
+                // The focus jumps when a finger lifts, so start over from the next move.
+                mFocusKnown = false;
+                return mNavigating;
+            case MotionEvent.ACTION_MOVE:
+                if (!mNavigating) {
+                    return false;
+                }
+                float focusX = 0, focusY = 0;
+                for (int i = 0; i < event.getPointerCount(); i++) {
+                    focusX += event.getX(i) / event.getPointerCount();
+                    focusY += event.getY(i) / event.getPointerCount();
+                }
+                if (mFocusKnown) {
+                    mViewport.postTranslate(focusX - mFocusX, focusY - mFocusY);
+                    onViewportChanged();
+                }
+                mFocusX = focusX;
+                mFocusY = focusY;
+                mFocusKnown = true;
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                boolean navigating = mNavigating;
+                mNavigating = false;
+                return navigating;
+            default:
+                return mNavigating;
+        }
+    }
+
     /**
      * Private helper method to handle the Start state in the PPS
      * @param event The MotionEvent that triggered onTouchEvent
-     * @param x The x coordinate of the touch event
-     * @param y The y coordinate of the touch event
      * @return true if the event was consumed, false otherwise
      */
-    private boolean handleStartState(MotionEvent event, float x, float y) {
-        Log.i(LOG_TAG, "onDrawStart");
-        if (event.getAction() == MotionEvent.ACTION_DOWN) {
-            onDrawStart(x, y);
+    private boolean handleStartState(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            startPointer(event, event.getActionIndex());
             mState = DrawingModel.DRAWING;
             return true;
         }
@@ -129,23 +443,62 @@ public class DrawingView extends FrameLayout {
     /**
      * Private helper method to handle the Drawing state in the PPS
      * @param event The MotionEvent that triggered onTouchEvent
-     * @param x The x coordinate of the touch event
-     * @param y The y coordinate of the touch event
      * @return true if the event was consumed, false otherwise
      */
-    private boolean handleDrawingState(MotionEvent event, float x, float y) {
-        switch (event.getAction()) {
+    private boolean handleDrawingState(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_POINTER_DOWN:
+                // Only reached in multi-pointer mode; otherwise the pointer navigates.
+                startPointer(event, event.getActionIndex());
+                return true;
             case MotionEvent.ACTION_MOVE:
-                Log.i(LOG_TAG, "onDrawMove");
-                onDrawMove(x, y);
+                if (LOG_INPUT) {
+                    Log.i(LOG_TAG, "onDrawMove");
+                }
+                // One event carries the moves of every pointer. Each stroke takes the samples
+                // batched into the event since the last one, oldest first, then all the new
+                // segments are redrawn at once.
+                for (int i = 0; i < mActiveStrokes.size(); i++) {
+                    ActiveStroke stroke = mActiveStrokes.get(i);
+                    int index = event.findPointerIndex(stroke.mPointerId);
+                    if (index < 0) {
+                        continue;
+                    }
+                    for (int h = 0; h < event.getHistorySize(); h++) {
+                        readSample(event, index, h);
+                        addInputPoint(stroke, mTouchPoint[0], mTouchPoint[1]);
+                    }
+                    readSample(event, index, -1);
+                    if (mMultiPointer) {
+                        onDrawMove(stroke.mPointerId, mTouchPoint[0], mTouchPoint[1]);
+                    } else {
+                        onDrawMove(mTouchPoint[0], mTouchPoint[1]);
+                    }
+                }
+                redrawActiveStrokes();
                 return true;
+            case MotionEvent.ACTION_POINTER_UP:
             case MotionEvent.ACTION_UP:
-                Log.i(LOG_TAG, "onDrawEnd");
-                onDrawEnd(x, y);
-                mState = DrawingModel.START;
+                if (LOG_INPUT) {
+                    Log.i(LOG_TAG, "onDrawEnd");
+                }
+                int index = event.getActionIndex();
+                readSample(event, index, -1);
+                if (mMultiPointer) {
+                    onDrawEnd(event.getPointerId(index), mTouchPoint[0], mTouchPoint[1]);
+                } else {
+                    onDrawEnd(mTouchPoint[0], mTouchPoint[1]);
+                }
+                if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+                    // The last pointer is up, so no stroke can still be drawn.
+                    onDrawCancel();
+                }
+                mState = mActiveStrokes.isEmpty() ? DrawingModel.START : DrawingModel.DRAWING;
                 return true;
             case MotionEvent.ACTION_CANCEL:
-                Log.i(LOG_TAG, "onDrawCancel");
+                if (LOG_INPUT) {
+                    Log.i(LOG_TAG, "onDrawCancel");
+                }
                 onDrawCancel();
                 mState = DrawingModel.START;
                 return true;
@@ -156,80 +509,934 @@ public class DrawingView extends FrameLayout {
     }
 
     /**
-     * Triggered when drawing starts.
+     * Starts a stroke for the pointer which just touched down.
+     *
+     * @param event The MotionEvent that triggered onTouchEvent
+     * @param index Index of the pointer in the event.
+     */
+    private void startPointer(MotionEvent event, int index) {
+        readSample(event, index, -1);
+        if (LOG_INPUT) {
+            Log.i(LOG_TAG, "onDrawStart");
+        }
+        if (mMultiPointer) {
+            onDrawStart(event.getPointerId(index), mTouchPoint[0], mTouchPoint[1]);
+        } else {
+            mDrawingPointerId = event.getPointerId(index);
+            onDrawStart(mTouchPoint[0], mTouchPoint[1]);
+        }
+    }
+
+    /**
+     * Triggered when drawing starts, unless in multi-pointer mode. Starts a stroke for the pointer
+     * which touched down.
      *
      * @param x Horizontal coordinate of touch.
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawStart(float x, float y) {
-        // Start a new drawing path.
-        mCurrentPath.moveTo(x, y);
-        mStartPoint.x = x;
-        mStartPoint.y = y;
-        mLastPoint.x = x;
-        mLastPoint.y = y;
-        mDistance = 0;
-        Log.i(LOG_TAG, "onDrawStart: starting new stroke @ " + mLastPoint);
+        onDrawStart(mDrawingPointerId, x, y);
+    }
+
+    /**
+     * Reads a touch sample of a pointer: its position in document coordinates into mTouchPoint,
+     * and its time and pressure into mEventTime and mEventPressure.
+     *
+     * @param event The MotionEvent that triggered onTouchEvent
+     * @param index Index of the pointer in the event.
+     * @param pos   Index of a historical sample, or -1 for the current one.
+     */
+    private void readSample(MotionEvent event, int index, int pos) {
+        if (pos < 0) {
+            mTouchPoint[0] = event.getX(index);
+            mTouchPoint[1] = event.getY(index);
+            mEventTime = event.getEventTime();
+            mEventPressure = event.getPressure(index);
+        } else {
+            mTouchPoint[0] = event.getHistoricalX(index, pos);
+            mTouchPoint[1] = event.getHistoricalY(index, pos);
+            mEventTime = event.getHistoricalEventTime(pos);
+            mEventPressure = event.getHistoricalPressure(index, pos);
+        }
+        mInverseViewport.mapPoints(mTouchPoint);
+        if (LOG_INPUT) {
+            Log.i(LOG_TAG, "Touch at (" + mTouchPoint[0] + ", " + mTouchPoint[1] + ")");
+        }
+    }
+
+    /**
+     * Triggered when a pointer starts drawing. Unless in multi-pointer mode, it is only called
+     * through onDrawStart(float, float).
+     *
+     * @param pointerId Id of the pointer.
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
+     */
+    protected void onDrawStart(int pointerId, float x, float y) {
+        if (LOG_INPUT) {
+            Log.i(LOG_TAG, "onDrawStart: starting new stroke @ (" + x + ", " + y + ")");
+        }
+
+        // Start a new stroke; its path is derived from the points and grows with them. Each stroke
+        // owns its geometry, so strokes never share points.
+        StrokeGeometry geometry = new StrokeGeometry(LIVE_STROKE_CAPACITY);
+        geometry.addPoint(x, y, mEventTime, mEventPressure);
+        ActiveStroke stroke = new ActiveStroke(pointerId, geometry, new StrokeAction(geometry, mCurrentPaint));
+        stroke.mLastPoint.set(x, y);
+        stroke.mLastMid.set(x, y);
+        mActiveStrokes.add(stroke);
 
-        mBuffer = new StrokeAction(mCurrentPath, mCurrentPaint);
-        mBuffer.doAction(this);
+        stroke.mBuffer.doAction(this);
+
+        addSample(stroke, x, y);
+        if (!mStrokeFilters.isEmpty()) {
+            createFilters(stroke);
+            // Filters pass the first point on as is, which is already in the geometry.
+            filterPoint(stroke, x, y);
+        }
     }
 
     /**
-     * Triggered when drawing moves. If we've moved enough, add a new point to the path.
+     * Chains new filters for a stroke, the last one passing its points on to the stroke itself.
+     */
+    private void createFilters(ActiveStroke stroke) {
+        int count = mStrokeFilters.size();
+        stroke.mFilters = new StrokeFilter[count];
+        stroke.mSinks = new StrokeFilter.Sink[count];
+        for (int i = 0; i < count; i++) {
+            stroke.mFilters[i] = mStrokeFilters.get(i).create();
+        }
+        stroke.mSinks[count - 1] = mFilterSink;
+        for (int i = count - 2; i >= 0; i--) {
+            StrokeFilter next = stroke.mFilters[i + 1];
+            StrokeFilter.Sink nextSink = stroke.mSinks[i + 1];
+            stroke.mSinks[i] = (x, y, time, pressure) -> next.addPoint(x, y, time, pressure, nextSink);
+        }
+    }
+
+    /**
+     * Triggered when drawing moves, unless in multi-pointer mode.
      *
      * @param x Horizontal coordinate of touch.
      * @param y Vertical coordinate of touch.
      */
     protected void onDrawMove(float x, float y) {
+        onDrawMove(mDrawingPointerId, x, y);
+    }
+
+    /**
+     * Triggered when a pointer moves. If it moved enough, add a new point to its path. The new
+     * segments of every stroke are redrawn together once the whole event is handled. Unless in
+     * multi-pointer mode, it is only called through onDrawMove(float, float).
+     *
+     * @param pointerId Id of the pointer.
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
+     */
+    protected void onDrawMove(int pointerId, float x, float y) {
+        ActiveStroke stroke = findActiveStroke(pointerId);
+        if (stroke != null) {
+            addInputPoint(stroke, x, y);
+        }
+    }
+
+    /**
+     * Takes a touch sample of a stroke, at mEventTime and mEventPressure: it is used to predict the
+     * stroke, then goes through the stroke's filters, if any, before being added.
+     *
+     * @param stroke    Stroke being drawn.
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
+     */
+    private void addInputPoint(ActiveStroke stroke, float x, float y) {
+        addSample(stroke, x, y);
+        if (stroke.mFilters == null) {
+            addMovePoint(stroke, x, y);
+        } else {
+            filterPoint(stroke, x, y);
+        }
+    }
+
+    /**
+     * Passes a touch sample, at mEventTime and mEventPressure, through the filters of a stroke.
+     */
+    private void filterPoint(ActiveStroke stroke, float x, float y) {
+        mFilteredStroke = stroke;
+        stroke.mFilters[0].addPoint(x, y, mEventTime, mEventPressure, stroke.mSinks[0]);
+        mFilteredStroke = null;
+    }
+
+    /**
+     * Ends the filters of a stroke, adding the points they held back.
+     */
+    private void finishFilters(ActiveStroke stroke) {
+        if (stroke.mFilters == null) {
+            return;
+        }
+        mFilteredStroke = stroke;
+        for (int i = 0; i < stroke.mFilters.length; i++) {
+            stroke.mFilters[i].finish(stroke.mSinks[i]);
+        }
+        mFilteredStroke = null;
+    }
+
+    /**
+     * Redraws every segment added since the last redraw, and predicts where each stroke goes
+     * next. The areas are invalidated before the next frame, so all the strokes are drawn in it
+     * at once.
+     */
+    private void redrawActiveStrokes() {
+        for (int i = 0; i < mActiveStrokes.size(); i++) {
+            ActiveStroke stroke = mActiveStrokes.get(i);
+            if (!stroke.mPendingDirty.isEmpty()) {
+                stroke.mPendingDirty.roundOut(mDirty);
+                stroke.mPendingDirty.setEmpty();
+                // The stroke buffer has access to the path, only redraw the new segments (see
+                // invalidateArea for when that limits the redraw).
+                stroke.mBuffer.invalidate(mDirty);
+            }
+            predict(stroke);
+        }
+    }
+
+    /**
+     * Adds a point to a stroke's path if its pointer moved enough, growing its mPendingDirty by
+     * the new segment without redrawing it yet. Points which went through filters are added
+     * unless they repeat the last one; the filters decide how far apart they are.
+     *
+     * @param stroke    Stroke being drawn.
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
+     */
+    private void addMovePoint(ActiveStroke stroke, float x, float y) {
         // Only add a bezier when the distance is larger than a threshold (MIN_MOVE_DIST).
         // If the distance is smaller, wait until a ACTION_MOVE event that creates a large enough distance.
-        if (Math.sqrt(Math.pow(x - mLastPoint.x, 2) + Math.pow(y - mLastPoint.y, 2)) >= MIN_MOVE_DIST) {
-            // For each ACTION_MOVE event, add a quadratic bezier from the last point (in the drawing path) to current point.
-            // Each bezier is a smooth arc to be added in the drawing path.
-            mCurrentPath.quadTo(mLastPoint.x, mLastPoint.y,
-                    (x + mLastPoint.x) / 2, (y + mLastPoint.y) / 2);
-            mDistance += Math.sqrt(Math.pow(y - mLastPoint.y, 2) + Math.pow(x - mLastPoint.x, 2));
-            mLastPoint.x = x;
-            mLastPoint.y = y;
+        PointF last = stroke.mLastPoint, lastMid = stroke.mLastMid;
+        float dx = x - last.x, dy = y - last.y;
+        float squaredDistance = dx * dx + dy * dy;
+        if (stroke.mFilters == null ? squaredDistance >= MIN_MOVE_DIST * MIN_MOVE_DIST : squaredDistance > 0) {
+            // For each ACTION_MOVE event, add a point, which appends a quadratic bezier from the last
+            // point to the current one to the stroke's path. Each bezier is a smooth arc.
+            float midX = (x + last.x) / 2, midY = (y + last.y) / 2;
+            stroke.mGeometry.addPoint(x, y, mEventTime, mEventPressure);
+            stroke.mDistance += Math.sqrt(squaredDistance);
 
-            // The stroke buffer has access to currentPath, invalidate to trigger redraw.
-            mBuffer.invalidate();
+            // A quadratic bezier lies within the bounds of its start, control and end points. The
+            // path also goes on in a straight line from the new midpoint to the new point.
+            mSegmentBounds.set(lastMid.x, lastMid.y, lastMid.x, lastMid.y);
+            mSegmentBounds.union(last.x, last.y);
+            mSegmentBounds.union(x, y);
+            float padding = StrokeLayer.getPadding(stroke.mBuffer.getPaint());
+            mSegmentBounds.inset(-padding, -padding);
+            stroke.mPendingDirty.union(mSegmentBounds);
+
+            if (mSurface != null) {
+                mSegmentBounds.roundOut(mDirty);
+                mSurface.appendQuad(stroke.mBuffer.getId(), last.x, last.y, midX, midY, mDirty);
+            }
+
+            last.x = x;
+            last.y = y;
+            lastMid.x = midX;
+            lastMid.y = midY;
         }
     }
 
     /**
-     * Triggered when drawing ends. Commits the current buffer as a done action by triggering
-     * callbacks.
+     * Records a touch sample of a stroke, at mEventTime, keeping the last three. Samples at the
+     * same time as the previous one replace it.
+     */
+    private void addSample(ActiveStroke stroke, float x, float y) {
+        int count = stroke.mSampleCount;
+        if (count > 0 && stroke.mSampleTime[count - 1] == mEventTime) {
+            count--;
+        } else if (count == stroke.mSampleTime.length) {
+            System.arraycopy(stroke.mSampleX, 1, stroke.mSampleX, 0, count - 1);
+            System.arraycopy(stroke.mSampleY, 1, stroke.mSampleY, 0, count - 1);
+            System.arraycopy(stroke.mSampleTime, 1, stroke.mSampleTime, 0, count - 1);
+            count--;
+        }
+        stroke.mSampleX[count] = x;
+        stroke.mSampleY[count] = y;
+        stroke.mSampleTime[count] = mEventTime;
+        stroke.mSampleCount = count + 1;
+    }
+
+    /**
+     * Replaces the predicted tail of a stroke. The pointer's velocity and acceleration over the
+     * last samples are extrapolated mPredictionTime ahead, and the tail curves from the end of the
+     * stroke through its last point to there, as the next segment would. There is no tail if the
+     * pointer is still or the samples are stale.
+     */
+    private void predict(ActiveStroke stroke) {
+        clearPrediction(stroke);
+        if (mPredictionTime == 0 || stroke.mSampleCount < 2) {
+            return;
+        }
+
+        float[] sx = stroke.mSampleX, sy = stroke.mSampleY;
+        long[] st = stroke.mSampleTime;
+        int last = stroke.mSampleCount - 1;
+        long dt = st[last] - st[last - 1];
+        if (dt <= 0 || dt > MAX_SAMPLE_INTERVAL) {
+            return;
+        }
+        float vx = (sx[last] - sx[last - 1]) / dt;
+        float vy = (sy[last] - sy[last - 1]) / dt;
+        float ax = 0, ay = 0;
+        if (stroke.mSampleCount == 3) {
+            long dt0 = st[1] - st[0];
+            if (dt0 > 0 && dt0 <= MAX_SAMPLE_INTERVAL) {
+                ax = (vx - (sx[1] - sx[0]) / dt0) * 2 / (dt + dt0);
+                ay = (vy - (sy[1] - sy[0]) / dt0) * 2 / (dt + dt0);
+            }
+        }
+
+        float t = mPredictionTime;
+        float dx = vx * t + ax * t * t / 2, dy = vy * t + ay * t * t / 2;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length < 1) {
+            return;
+        } else if (length > MAX_PREDICTION_DIST) {
+            dx *= MAX_PREDICTION_DIST / length;
+            dy *= MAX_PREDICTION_DIST / length;
+        }
+        float endX = sx[last] + dx, endY = sy[last] + dy;
+
+        PointF lastPoint = stroke.mLastPoint, lastMid = stroke.mLastMid;
+        stroke.mPrediction.moveTo(lastMid.x, lastMid.y);
+        stroke.mPrediction.quadTo(lastPoint.x, lastPoint.y, endX, endY);
+        RectF bounds = stroke.mPredictionBounds;
+        bounds.set(lastMid.x, lastMid.y, lastMid.x, lastMid.y);
+        bounds.union(lastPoint.x, lastPoint.y);
+        bounds.union(endX, endY);
+        float padding = StrokeLayer.getPadding(stroke.mBuffer.getPaint());
+        bounds.inset(-padding, -padding);
+        invalidatePrediction(stroke);
+    }
+
+    /**
+     * Removes the predicted tail of a stroke, if any.
+     */
+    private void clearPrediction(ActiveStroke stroke) {
+        if (!stroke.mPrediction.isEmpty()) {
+            invalidatePrediction(stroke);
+            stroke.mPrediction.rewind();
+        }
+    }
+
+    private void invalidatePrediction(ActiveStroke stroke) {
+        mViewport.mapRect(mPredictionArea, stroke.mPredictionBounds);
+        mPredictionArea.roundOut(mPredictionDirty);
+        invalidateArea(this, mPredictionDirty);
+    }
+
+    /**
+     * @param pointerId Id of a pointer.
+     * @return The stroke the pointer is drawing, or null if it isn't drawing.
+     */
+    private ActiveStroke findActiveStroke(int pointerId) {
+        for (int i = 0; i < mActiveStrokes.size(); i++) {
+            if (mActiveStrokes.get(i).mPointerId == pointerId) {
+                return mActiveStrokes.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Triggered when drawing ends, unless in multi-pointer mode.
+     *
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
      */
     protected void onDrawEnd(float x, float y) {
-        if (mDistance >= MIN_MOVE_DIST) {
-            mBuffer.undoAction(this);
+        onDrawEnd(mDrawingPointerId, x, y);
+    }
+
+    /**
+     * Triggered when a pointer stops drawing. Commits its stroke as a done action by triggering
+     * callbacks, simplified first unless simplification is off. Each stroke is committed on its own.
+     * Unless in multi-pointer mode, it is only called through onDrawEnd(float, float).
+     *
+     * @param pointerId Id of the pointer.
+     * @param x Horizontal coordinate of touch.
+     * @param y Vertical coordinate of touch.
+     */
+    protected void onDrawEnd(int pointerId, float x, float y) {
+        ActiveStroke stroke = findActiveStroke(pointerId);
+        if (stroke == null) {
+            return;
+        }
+        mActiveStrokes.remove(stroke);
+        clearPrediction(stroke);
+        finishFilters(stroke);
+
+        if (stroke.mDistance >= MIN_MOVE_DIST) {
+            stroke.mBuffer.undoAction(this);
+            AbstractReversibleViewAction action = simplify(stroke);
 
-            Log.i(LOG_TAG, "Stroke completed, triggering " + mListeners.size() + " listener" + (mListeners.size() == 1 ? "" : "s"));
+            if (LOG_INPUT) {
+                Log.i(LOG_TAG, "Stroke completed, triggering " + mListeners.size() + " listener" + (mListeners.size() == 1 ? "" : "s"));
+            }
             for (OnStrokeCompletedListener l : mListeners) {
-                l.onStrokeCompleted(mBuffer);
+                l.onStrokeCompleted(action);
             }
         }
+    }
+
+    /**
+     * Replaces a completed stroke by one with fewer points, each dropped point being within
+     * mSimplifyTolerance of the simplified stroke, so it is cheaper to draw, keep and save.
+     *
+     * @param stroke    Completed stroke, which is not shown.
+     * @return The simplified stroke, or the stroke's buffer if it can't be simplified.
+     */
+    private AbstractReversibleViewAction simplify(ActiveStroke stroke) {
+        if (mSimplifyTolerance <= 0) {
+            return stroke.mBuffer;
+        }
 
-        // Very important; buffer has a reference to currentPath. If we don't reinitialize, every
-        // buffer will share the same path.
-        mCurrentPath = new Path();
-        mBuffer = null;
+        StrokeGeometry simplified = stroke.mGeometry.simplify(mSimplifyTolerance);
+        if (simplified == stroke.mGeometry) {
+            return stroke.mBuffer;
+        }
+        if (LOG_INPUT) {
+            Log.i(LOG_TAG, "Simplified stroke from " + stroke.mGeometry.getPointCount() + " to " + simplified.getPointCount() + " points");
+        }
+        return new StrokeAction(simplified, stroke.mBuffer.getStyle());
     }
 
     /**
-     * Triggered when drawing is cancelled. Trashes the current buffer and ignores callbacks.
+     * Triggered when drawing is cancelled. Trashes every stroke being drawn and ignores callbacks.
      */
     protected void onDrawCancel() {
-        if (mBuffer != null) {
-            mBuffer.undoAction(this);
+        for (int i = 0; i < mActiveStrokes.size(); i++) {
+            ActiveStroke stroke = mActiveStrokes.get(i);
+            clearPrediction(stroke);
+            stroke.mBuffer.undoAction(this);
+        }
+        mActiveStrokes.clear();
+    }
+
+    /**
+     * Draws the committed raster layer, or the base layer which already includes it, under the
+     * stroke views, and the predicted tails of the strokes being drawn over them. The children apply
+     * the viewport themselves, so they can cull what is off screen.
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        canvas.save();
+        canvas.concat(mViewport);
+        if (mBaseLayer != null) {
+            canvas.drawBitmap(mBaseLayer, 0, 0, null);
+        } else {
+            mCommitted.draw(canvas);
+        }
+        canvas.restore();
+        super.dispatchDraw(canvas);
+
+        if (!mActiveStrokes.isEmpty()) {
+            canvas.save();
+            canvas.concat(mViewport);
+            for (int i = 0; i < mActiveStrokes.size(); i++) {
+                ActiveStroke stroke = mActiveStrokes.get(i);
+                if (!stroke.mPrediction.isEmpty()) {
+                    canvas.drawPath(stroke.mPrediction, stroke.mBuffer.getPaint());
+                }
+            }
+            canvas.restore();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mRasterArea.set(0, 0, w, h);
+        mCommitted.setSize(w, h);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mCommitted.restart();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mCommitted.release();
+    }
+
+    //region Checkpoints
+    /**
+     * Captures every committed stroke (the raster layers, the stroke layer and the attached stroke
+     * views) in the document area the size of this view at its origin, without rendering them, so
+     * the snapshot can be rendered off the UI thread. Strokes being drawn are left out.
+     *
+     * @return Snapshot of the strokes, or null if this view hasn't been laid out yet or some
+     *         strokes lie outside that area.
+     */
+    public Snapshot snapshotStrokes() {
+        if (getWidth() == 0 || getHeight() == 0 || !mIndex.isWithin(mRasterArea)) {
+            return null;
+        }
+
+        Bitmap raster = mBaseLayer != null ? mBaseLayer : mCommitted.share();
+        List<Path> paths = new ArrayList<>();
+        List<Paint> paints = new ArrayList<>();
+        mStrokeLayer.collectStrokes(mRasterArea, paths, paints);
+        for (int i = 0; i < getChildCount(); i++) {
+            View child = getChildAt(i);
+            if (child instanceof StrokeView) {
+                paths.add(((StrokeView) child).mPath);
+                paints.add(((StrokeView) child).mPaint);
+            }
+        }
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            if (isActive(paths.get(i))) {
+                paths.remove(i);
+                paints.remove(i);
+            }
+        }
+        return new Snapshot(getWidth(), getHeight(), raster, paths, paints);
+    }
+
+    /**
+     * @return Whether a path is that of a stroke being drawn, which still changes.
+     */
+    private boolean isActive(Path path) {
+        for (int i = 0; i < mActiveStrokes.size(); i++) {
+            if (mActiveStrokes.get(i).mBuffer.getPath() == path) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Restores a checkpoint: the given bitmap becomes the base layer and the paint is reset. Every
+     * stroke is parked, so afterwards the view shows exactly the checkpoint. Actions after the
+     * checkpoint show their strokes again with showStroke.
+     *
+     * @param baseLayer Rendering of the strokes in the checkpoint.
+     * @param paint Paint at the time of the checkpoint.
+     */
+    public void restoreCheckpoint(Bitmap baseLayer, Paint paint) {
+        if (mState == DrawingModel.DRAWING) {
+            onDrawCancel();
+            mState = DrawingModel.START;
+        }
+
+        mStrokeLayer.parkAll();
+        if (mSurface != null) {
+            mSurface.parkAll();
+        }
+        for (int i = 0; i < getChildCount(); ) {
+            View child = getChildAt(i);
+            if (child instanceof StrokeView) {
+                mParkedStrokes.add(child);
+                removeViewInLayout(child);
+            } else {
+                i++;
+            }
+        }
+
+        mBaseLayer = baseLayer;
+        mCurrentPaint.set(paint);
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Drops the base layer and re-attaches every parked stroke view under the attached ones, so
+     * that each stroke is rendered by its own view again.
+     */
+    public void dropBaseLayer() {
+        if (mBaseLayer == null) {
+            return;
+        }
+
+        mStrokeLayer.unparkAll();
+        if (mSurface != null) {
+            mSurface.unparkAll();
+        }
+
+        int index = 0;
+        while (index < getChildCount() && !(getChildAt(index) instanceof StrokeView)) {
+            index++;
+        }
+        for (View stroke : mParkedStrokes) {
+            addViewInLayout(stroke, index++, generateDefaultLayoutParams(), true);
+        }
+        mParkedStrokes.clear();
+
+        mBaseLayer = null;
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * @return True if some strokes are rendered by a base layer instead of their views.
+     */
+    public boolean hasBaseLayer() {
+        return mBaseLayer != null;
+    }
+
+    //endregion
+
+    //region Strokes
+    /**
+     * Shows a committed stroke on top of the others. If the stroke is parked, it is unparked; if it
+     * is already shown, nothing changes.
+     *
+     * @param id    Unique id of the stroke.
+     * @param path  Path of the stroke. Call invalidateStroke if it changes.
+     * @param paint Paint of the stroke.
+     */
+    public void showStroke(long id, Path path, Paint paint) {
+        showStroke(id, path, null, paint);
+    }
+
+    /**
+     * Shows a committed stroke whose points are known, so that it can be drawn in less detail when
+     * zoomed out.
+     *
+     * @param id    Unique id of the stroke.
+     * @param path  Path of the stroke. Call invalidateStroke if it changes.
+     * @param geometry  Points the path was built from, or null if unknown.
+     * @param paint Paint of the stroke.
+     * @see #showStroke(long, Path, Paint)
+     */
+    public void showStroke(long id, Path path, StrokeGeometry geometry, Paint paint) {
+        if (!mIndex.contains(id)) {
+            StrokeLayer.computeBounds(path, paint, mStrokeBounds);
+            mIndex.put(id, mStrokeBounds);
+        }
+
+        if (mRenderMode != RenderMode.VIEWS) {
+            mStrokeLayer.show(id, path, geometry, paint);
+            if (mSurface != null) {
+                mSurface.show(id, path, paint);
+            }
+            return;
+        }
+
+        View stroke = mStrokeViews.get(id);
+        if (stroke == null) {
+            stroke = new StrokeView(getContext(), path, paint);
+            ((StrokeView) stroke).setViewport(mViewport);
+            mStrokeViews.put(id, stroke);
+            addView(stroke);
+        } else if (mParkedStrokes.remove(stroke)) {
+            addView(stroke);
+        }
+    }
+
+    /**
+     * Redraws part of a shown stroke whose path changed, e.g. while it is being drawn.
+     *
+     * @param id    Unique id of the stroke.
+     * @param dirty Area which changed, or null if the whole stroke may have changed.
+     */
+    public void invalidateStroke(long id, Rect dirty) {
+        StrokeLayer.Stroke layerStroke = mStrokeLayer.get(id);
+        View stroke = layerStroke == null ? mStrokeViews.get(id) : null;
+
+        if (layerStroke != null) {
+            // Before the bounds change, which the layer shares with the index.
+            mStrokeLayer.invalidateStroke(id, dirty);
+        }
+        if (dirty != null) {
+            mStrokeBounds.set(dirty);
+            mIndex.grow(id, mStrokeBounds);
+        } else if (layerStroke != null) {
+            StrokeLayer.computeBounds(layerStroke.mPath, layerStroke.mPaint, mStrokeBounds);
+            mIndex.put(id, mStrokeBounds);
+        } else if (stroke instanceof StrokeView) {
+            StrokeLayer.computeBounds(((StrokeView) stroke).mPath, ((StrokeView) stroke).mPaint, mStrokeBounds);
+            mIndex.put(id, mStrokeBounds);
+        }
+
+        if (layerStroke != null) {
+            if (mSurface != null && dirty == null) {
+                // Segments drawn by onDrawMove are appended as they come; anything else is copied.
+                mSurface.replace(id, layerStroke.mPath);
+            }
+            return;
+        }
+
+        if (stroke == null) {
+            return;
+        }
+        if (dirty == null) {
+            stroke.invalidate();
+        } else {
+            invalidateArea(stroke, dirty);
+        }
+    }
+
+    /**
+     * Redraws part of a view. View.invalidate(Rect) is deprecated since hardware accelerated
+     * rendering, the default, ignores the rectangle and redraws the whole view; only software
+     * rendering still clips to it, so it is only passed on there. With hardware acceleration, a
+     * redraw is limited instead by each view having its own display list, by the stroke layer's
+     * cached tiles, and by the InkSurface, which locks only the dirty area of its own surface.
+     *
+     * @param view  View to redraw.
+     * @param dirty Area to redraw, in the view's coordinates.
+     */
+    @SuppressWarnings("deprecation")
+    static void invalidateArea(View view, Rect dirty) {
+        if (view.isHardwareAccelerated()) {
+            view.invalidate();
+        } else {
+            view.invalidate(dirty);
+        }
+    }
+
+    /**
+     * Removes a committed stroke, whether it is shown or parked.
+     *
+     * @param id    Unique id of the stroke.
+     * @return True if the stroke was found, false otherwise.
+     */
+    public boolean removeStroke(long id) {
+        mIndex.remove(id);
+        if (mStrokeLayer.remove(id)) {
+            if (mSurface != null) {
+                mSurface.remove(id);
+            }
+            return true;
+        }
+
+        View stroke = mStrokeViews.remove(id);
+        if (stroke == null) {
+            return false;
+        }
+        if (!mParkedStrokes.remove(stroke)) {
+            removeView(stroke);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the committed strokes which may intersect an area, e.g. for an eraser or a selection.
+     * Only strokes whose bounds touch the area are visited, and strokes in the raster layer are not
+     * included since they can no longer be changed.
+     *
+     * @param area  Area to search, in view coordinates.
+     * @return Ids of the strokes whose bounds intersect the area, in no particular order.
+     */
+    public List<Long> findStrokes(RectF area) {
+        // The index holds document coordinates.
+        mInverseViewport.mapRect(mQueryArea, area);
+        List<Long> ids = new ArrayList<>();
+        mIndex.query(mQueryArea, ids::add);
+        return ids;
+    }
+
+    /**
+     * Finds the committed strokes which may cover a point, e.g. to pick a stroke by tapping it.
+     *
+     * @param x Horizontal coordinate of the point, in view coordinates.
+     * @param y Vertical coordinate of the point, in view coordinates.
+     * @return Ids of the strokes whose bounds contain the point, in no particular order.
+     */
+    public List<Long> findStrokes(float x, float y) {
+        mQueryPoint[0] = x;
+        mQueryPoint[1] = y;
+        mInverseViewport.mapPoints(mQueryPoint);
+        List<Long> ids = new ArrayList<>();
+        mIndex.query(mQueryPoint[0], mQueryPoint[1], ids::add);
+        return ids;
+    }
+
+    /**
+     * Moves a stroke which can no longer be undone into the committed raster layer. It is
+     * rasterized in the background and its vector form is removed once that is done, so afterwards
+     * it costs no more to draw or keep than any other pixels. Strokes reaching outside the raster
+     * layer's area of the document are kept as they are.
+     *
+     * @param id    Unique id of the stroke.
+     */
+    public void flattenStroke(long id) {
+        RectF bounds = mIndex.getBounds(id);
+        if (bounds == null || !mRasterArea.contains(bounds)) {
+            // Outside the raster layer, so the stroke stays a vector.
+            return;
+        }
+
+        // The base layer hides the committed layer, so a stroke could disappear under it, unless
+        // it is parked, i.e. part of the base layer already.
+        StrokeLayer.Stroke stroke = mStrokeLayer.get(id);
+        View strokeView = mStrokeViews.get(id);
+        boolean inBaseLayer = stroke != null ? stroke.mParked : mParkedStrokes.contains(strokeView);
+        if (!inBaseLayer) {
+            dropBaseLayer();
+        }
+
+        if (stroke != null) {
+            mCommitted.add(id, stroke.mPath, stroke.mPaint);
+        } else if (strokeView instanceof StrokeView) {
+            mCommitted.add(id, ((StrokeView) strokeView).mPath, ((StrokeView) strokeView).mPaint);
+        }
+    }
+
+    /**
+     * @return How committed strokes are rendered.
+     */
+    public RenderMode getRenderMode() {
+        return mRenderMode;
+    }
+
+    /**
+     * Sets how committed strokes are rendered. LAYER draws every stroke in a single view, so the
+     * cost of a frame stays flat as the drawing grows; TILES also caches the strokes in tile
+     * bitmaps, so a frame only blits tiles and a change only renders the tiles it touches; SURFACE
+     * renders them on a thread of its own, so ink isn't held up by the UI thread; VIEWS uses one
+     * StrokeView per stroke.
+     *
+     * @param mode  How to render committed strokes.
+     * @throws IllegalStateException if any stroke is shown or parked.
+     */
+    public void setRenderMode(RenderMode mode) {
+        if (!mStrokeLayer.isEmpty() || !mStrokeViews.isEmpty()) {
+            throw new IllegalStateException("Cannot change render mode of a non-empty drawing");
+        }
+        mRenderMode = mode;
+        mStrokeLayer.setTiled(mode == RenderMode.TILES);
+        mStrokeLayer.setVisibility(mode == RenderMode.SURFACE ? INVISIBLE : VISIBLE);
+
+        if (mode == RenderMode.SURFACE && mSurface == null) {
+            mSurface = new InkSurface(getContext());
+            mSurface.setViewport(mViewport);
+            addView(mSurface, indexOfChild(mStrokeLayer) + 1);
+        } else if (mode != RenderMode.SURFACE && mSurface != null) {
+            removeView(mSurface);
+            mSurface = null;
+        }
+    }
+    //endregion
+
+    //region Viewport
+    /**
+     * @return Copy of the transform from document to screen coordinates.
+     */
+    public Matrix getViewport() {
+        return new Matrix(mViewport);
+    }
+
+    /**
+     * Sets the transform from document to screen coordinates.
+     *
+     * @param viewport  Uniform scale within [MIN_SCALE, MAX_SCALE] and translation, copied.
+     */
+    public void setViewport(Matrix viewport) {
+        mViewport.set(viewport);
+        onViewportChanged();
+    }
+
+    /**
+     * Shows the document at its original scale and position.
+     */
+    public void resetViewport() {
+        mViewport.reset();
+        onViewportChanged();
+    }
+
+    /**
+     * @return Screen pixels per document pixel.
+     */
+    public float getViewportScale() {
+        mViewport.getValues(mViewportValues);
+        return mViewportValues[Matrix.MSCALE_X];
+    }
+
+    /**
+     * Computes the area of the document which is on screen.
+     *
+     * @param out   Rectangle in which to store the area, in document coordinates.
+     */
+    public void getVisibleArea(RectF out) {
+        out.set(0, 0, getWidth(), getHeight());
+        mInverseViewport.mapRect(out);
+    }
+
+    /**
+     * Hands the new viewport to every child rendering strokes, and redraws.
+     */
+    private void onViewportChanged() {
+        mViewport.invert(mInverseViewport);
+        mStrokeLayer.setViewport(mViewport);
+        if (mSurface != null) {
+            mSurface.setViewport(mViewport);
         }
-        mBuffer = null;
+        for (int i = 0; i < getChildCount(); i++) {
+            if (getChildAt(i) instanceof StrokeView) {
+                getChildAt(i).invalidate();
+            }
+        }
+        invalidate();
+    }
+    //endregion
 
-        mCurrentPath.reset();
+    //region Batching
+    /**
+     * Starts a batch of changes. Until the matching endBatch, views are added and removed without
+     * requesting a layout each time, and accessibility announcements are dropped so the caller can
+     * make a single one for the whole batch. Batches may be nested.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
     }
 
+    /**
+     * Ends a batch of changes. When the outermost batch ends, the view is laid out and redrawn once
+     * if any children were added or removed.
+     *
+     * @throws IllegalStateException if no batch was started.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("No batch to end");
+        }
+
+        if (--mBatchDepth == 0 && mBatchChanged) {
+            mBatchChanged = false;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    public void addView(View child, int index, ViewGroup.LayoutParams params) {
+        if (mBatchDepth == 0) {
+            super.addView(child, index, params);
+            return;
+        }
+        addViewInLayout(child, index, params, true);
+        mBatchChanged = true;
+    }
+
+    @Override
+    public void announceForAccessibility(CharSequence text) {
+        if (mBatchDepth == 0) {
+            super.announceForAccessibility(text);
+        }
+    }
+
+    @Override
+    public void removeView(View view) {
+        if (mBatchDepth == 0) {
+            super.removeView(view);
+            return;
+        }
+        removeViewInLayout(view);
+        mBatchChanged = true;
+    }
+    //endregion
+
     //region Getters & Setters
     /**
      * Adds a new listener for stroke completion.
@@ -257,6 +1464,104 @@ public class DrawingView extends FrameLayout {
 
     public void setCurrentPaint(Paint paint) {
         mCurrentPaint = paint;
+        mCurrentStyle = null;
+    }
+
+    /**
+     * @return Interned style of the current paint. It is only looked up again when the paint changed.
+     */
+    public BrushStyle getCurrentStyle() {
+        if (mCurrentStyle == null || !mCurrentStyle.matches(mCurrentPaint)) {
+            mCurrentStyle = BrushStyle.of(mCurrentPaint);
+        }
+        return mCurrentStyle;
+    }
+
+    /**
+     * Gives the current paint the color, width, cap, join, style and flags of a style.
+     *
+     * @param style Style to draw the next strokes with.
+     */
+    public void setCurrentStyle(BrushStyle style) {
+        style.applyTo(mCurrentPaint);
+        mCurrentStyle = style;
+    }
+
+    /**
+     * Sets the filters touch samples go through before they are added to strokes, e.g. to smooth
+     * strokes and to make their number of points independent of the device's input rate. Without
+     * filters, samples are added as they come, at least MIN_MOVE_DIST apart. For instance,
+     * CatmullRomFilter.withSubdivisions(8) followed by ResamplingFilter.byDistance(4) gives smooth
+     * strokes with a point every 4 pixels, however often touches are reported.
+     *
+     * @param filters   Makers of the filters for each stroke, in the order samples go through them.
+     *                  Strokes already being drawn keep their filters.
+     */
+    public void setStrokeFilters(StrokeFilter.Factory... filters) {
+        mStrokeFilters.clear();
+        mStrokeFilters.addAll(Arrays.asList(filters));
+    }
+
+    public boolean isMultiPointer() {
+        return mMultiPointer;
+    }
+
+    /**
+     * Sets whether every pointer draws a stroke of its own, e.g. for several people drawing on one
+     * large display. Otherwise, a second pointer cancels the stroke and pans and zooms instead.
+     * Strokes being drawn are cancelled.
+     *
+     * @param multiPointer  True to draw a stroke per pointer, false to navigate with extra pointers.
+     */
+    public void setMultiPointer(boolean multiPointer) {
+        if (mState == DrawingModel.DRAWING) {
+            onDrawCancel();
+            mState = DrawingModel.START;
+        }
+        mNavigating = false;
+        mMultiPointer = multiPointer;
+    }
+
+    public int getPredictionTime() {
+        return mPredictionTime;
+    }
+
+    /**
+     * Sets how far ahead the stroke being drawn is predicted, to hide the latency between touch and
+     * ink. The prediction is only drawn, never added to the stroke.
+     *
+     * @param time  Time after the last touch sample to predict the stroke to, in milliseconds, or 0
+     *              not to predict.
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    public void setPredictionTime(int time) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Negative prediction time: " + time);
+        }
+        mPredictionTime = time;
+        if (time == 0) {
+            for (int i = 0; i < mActiveStrokes.size(); i++) {
+                clearPrediction(mActiveStrokes.get(i));
+            }
+        }
+    }
+
+    public float getSimplifyTolerance() {
+        return mSimplifyTolerance;
+    }
+
+    /**
+     * Sets how far completed strokes may be simplified.
+     *
+     * @param tolerance Maximum distance of a dropped point from the simplified stroke, in pixels,
+     *                  or 0 to keep every point.
+     * @throws IllegalArgumentException if the tolerance is negative.
+     */
+    public void setSimplifyTolerance(float tolerance) {
+        if (tolerance < 0) {
+            throw new IllegalArgumentException("Negative tolerance: " + tolerance);
+        }
+        mSimplifyTolerance = tolerance;
     }
     //endregion
 }
\ No newline at end of file
@@ -0,0 +1,405 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.SurfaceTexture;
+import android.view.TextureView;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Renders strokes on a thread of its own, into a TextureView, so ink stays smooth while the UI
+ * thread is busy with layout and animations.
+ *
+ * The UI thread never touches the strokes being rendered. It posts commands (show, remove, park,
+ * or a new segment of the stroke being drawn) to a lock-free queue, copying any path and paint it
+ * passes along; the render thread drains the queue, applies the commands to its own copy of the
+ * strokes and redraws the area they changed. Commands are recycled through a preallocated ring, so
+ * posting a segment allocates nothing. The commands mirror those of StrokeLayer, so the same
+ * calls keep both in sync.
+ *
+ * Strokes are in document coordinates; the DrawingView's viewport is posted as a command too and
+ * applied by the render thread, so the surface itself is never scaled.
+ */
+@SuppressLint("ViewConstructor")
+public class InkSurface extends TextureView implements TextureView.SurfaceTextureListener {
+    /**
+     * A change posted by the UI thread. Commands are reused, so each post sets the fields it needs.
+     */
+    private static final class Command {
+        static final int SHOW = 1, REMOVE = 2, PARK_ALL = 3, UNPARK_ALL = 4, QUAD = 5, REPLACE = 6, CLEAR = 7,
+                VIEWPORT = 8;
+
+        int mOp;
+        long mId;
+        Path mPath;
+        Paint mPaint;
+
+        /** Viewport of a VIEWPORT, kept for the next one. */
+        Matrix mMatrix;
+
+        /** Control and end point of a QUAD, and the area it changed. */
+        float mX1, mY1, mX2, mY2;
+        final Rect mDirty = new Rect();
+    }
+
+    /** Number of commands preallocated, enough for the segments of several frames. */
+    private static final int COMMAND_CAPACITY = 256;
+
+    /**
+     * A stroke owned by the render thread.
+     */
+    private static final class Entry {
+        final Path mPath;
+        final Paint mPaint;
+        final RectF mBounds;
+        boolean mParked;
+
+        Entry(Path path, Paint paint) {
+            mPath = path;
+            mPaint = paint;
+            mBounds = new RectF();
+            StrokeLayer.computeBounds(path, paint, mBounds);
+        }
+    }
+
+    /** Commands waiting for the render thread. */
+    private final RecyclingQueue<Command> mCommands;
+
+    /** Strokes by id, in drawing order (bottom first). Only touched by the render thread. */
+    private final LinkedHashMap<Long, Entry> mStrokes;
+
+    /** Area to redraw on the next frame, in document then screen coordinates. Render thread only. */
+    private final RectF mDirtyArea;
+    private final RectF mScreenArea;
+    private final Rect mDirty;
+
+    /** Document to screen transform. Only touched by the render thread. */
+    private final Matrix mViewport;
+
+    /** Whether the whole surface must be redrawn, e.g. after it was resized. */
+    private volatile boolean mFullRedraw;
+
+    /** Render thread, or null while there is no surface to render to. */
+    private volatile Thread mThread;
+
+    /**
+     * Creates an empty, transparent surface. Rendering starts once the surface is available.
+     *
+     * @param context   Context of the surface.
+     */
+    public InkSurface(Context context) {
+        super(context);
+        mCommands = new RecyclingQueue<>(COMMAND_CAPACITY, Command::new);
+        mStrokes = new LinkedHashMap<>();
+        mDirtyArea = new RectF();
+        mScreenArea = new RectF();
+        mDirty = new Rect();
+        mViewport = new Matrix();
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+    }
+
+    /**
+     * Draws a stroke on top of the others, or unparks and moves it to the top if it is parked.
+     *
+     * @param id    Id of the stroke.
+     * @param path  Path of the stroke, copied so the caller may keep changing it.
+     * @param paint Paint of the stroke, copied as well.
+     */
+    public void show(long id, Path path, Paint paint) {
+        Command command = claim(Command.SHOW, id);
+        command.mPath = new Path(path);
+        command.mPaint = new Paint(paint);
+        post();
+    }
+
+    /**
+     * Replaces the path of a stroke whose path changed as a whole.
+     *
+     * @param id    Id of the stroke.
+     * @param path  New path of the stroke, copied.
+     */
+    public void replace(long id, Path path) {
+        Command command = claim(Command.REPLACE, id);
+        command.mPath = new Path(path);
+        post();
+    }
+
+    /**
+     * Appends a quadratic segment to a stroke being drawn, and redraws only the area it covers.
+     *
+     * @param id    Id of the stroke.
+     * @param x1    Horizontal coordinate of the control point.
+     * @param y1    Vertical coordinate of the control point.
+     * @param x2    Horizontal coordinate of the end point.
+     * @param y2    Vertical coordinate of the end point.
+     * @param dirty Area covered by the segment, including the stroke's width.
+     */
+    public void appendQuad(long id, float x1, float y1, float x2, float y2, Rect dirty) {
+        Command command = claim(Command.QUAD, id);
+        command.mX1 = x1;
+        command.mY1 = y1;
+        command.mX2 = x2;
+        command.mY2 = y2;
+        command.mDirty.set(dirty);
+        post();
+    }
+
+    /**
+     * Removes a stroke, whether or not it is parked.
+     *
+     * @param id    Id of the stroke.
+     */
+    public void remove(long id) {
+        claim(Command.REMOVE, id);
+        post();
+    }
+
+    /**
+     * Parks every stroke, e.g. while a checkpoint bitmap under the surface renders them.
+     */
+    public void parkAll() {
+        claim(Command.PARK_ALL, 0);
+        post();
+    }
+
+    /**
+     * Unparks every stroke.
+     */
+    public void unparkAll() {
+        claim(Command.UNPARK_ALL, 0);
+        post();
+    }
+
+    /**
+     * Sets the transform from document to screen coordinates, redrawing everything.
+     *
+     * @param viewport  Viewport of the DrawingView, copied.
+     */
+    public void setViewport(Matrix viewport) {
+        Command command = claim(Command.VIEWPORT, 0);
+        if (command.mMatrix == null) {
+            command.mMatrix = new Matrix();
+        }
+        command.mMatrix.set(viewport);
+        post();
+    }
+
+    /**
+     * Removes every stroke.
+     */
+    public void clear() {
+        claim(Command.CLEAR, 0);
+        post();
+    }
+
+    /**
+     * @return A command to fill and post, with the given operation and stroke id.
+     */
+    private Command claim(int op, long id) {
+        Command command = mCommands.claim();
+        command.mOp = op;
+        command.mId = id;
+        return command;
+    }
+
+    /**
+     * Posts the claimed command to the render thread.
+     */
+    private void post() {
+        mCommands.publish();
+        LockSupport.unpark(mThread);
+    }
+
+    //region Render thread
+    /**
+     * Applies the pending commands, growing mDirtyArea by the area they changed.
+     *
+     * @return True if anything must be redrawn.
+     */
+    private boolean applyCommands() {
+        Command command;
+        boolean changed = false;
+        while ((command = mCommands.peek()) != null) {
+            changed |= apply(command);
+            // The stroke owns the path and paint now, if it took them.
+            command.mPath = null;
+            command.mPaint = null;
+            mCommands.release();
+        }
+        return changed;
+    }
+
+    /**
+     * Applies a command, growing mDirtyArea by the area it changed.
+     *
+     * @return True if anything changed.
+     */
+    private boolean apply(Command command) {
+        Entry entry = mStrokes.get(command.mId);
+        switch (command.mOp) {
+            case Command.SHOW:
+                if (entry != null && !entry.mParked) {
+                    return false;
+                }
+                mStrokes.remove(command.mId);
+                entry = new Entry(command.mPath, command.mPaint);
+                mStrokes.put(command.mId, entry);
+                addDirty(entry.mBounds);
+                break;
+            case Command.REPLACE:
+                if (entry == null) {
+                    return false;
+                }
+                addDirty(entry.mBounds);
+                entry.mPath.set(command.mPath);
+                StrokeLayer.computeBounds(entry.mPath, entry.mPaint, entry.mBounds);
+                addDirty(entry.mBounds);
+                break;
+            case Command.QUAD:
+                if (entry == null) {
+                    return false;
+                }
+                entry.mPath.quadTo(command.mX1, command.mY1, command.mX2, command.mY2);
+                Rect dirty = command.mDirty;
+                entry.mBounds.union(dirty.left, dirty.top, dirty.right, dirty.bottom);
+                mDirtyArea.union(dirty.left, dirty.top, dirty.right, dirty.bottom);
+                break;
+            case Command.REMOVE:
+                if (entry == null) {
+                    return false;
+                }
+                mStrokes.remove(command.mId);
+                addDirty(entry.mBounds);
+                break;
+            case Command.PARK_ALL:
+            case Command.UNPARK_ALL:
+                for (Entry stroke : mStrokes.values()) {
+                    stroke.mParked = command.mOp == Command.PARK_ALL;
+                }
+                mFullRedraw = true;
+                break;
+            case Command.CLEAR:
+                mStrokes.clear();
+                mFullRedraw = true;
+                break;
+            case Command.VIEWPORT:
+                mViewport.set(command.mMatrix);
+                mFullRedraw = true;
+                break;
+            default:
+                throw new IllegalStateException("Unknown command: " + command.mOp);
+        }
+        return true;
+    }
+
+    private void addDirty(RectF bounds) {
+        mDirtyArea.union(bounds);
+    }
+
+    /**
+     * Redraws the dirty area, or the whole surface if needed.
+     */
+    private void render() {
+        Canvas canvas;
+        if (mFullRedraw) {
+            mFullRedraw = false;
+            canvas = lockCanvas();
+        } else {
+            mViewport.mapRect(mScreenArea, mDirtyArea);
+            mScreenArea.roundOut(mDirty);
+            canvas = lockCanvas(mDirty);
+        }
+        mDirtyArea.setEmpty();
+        if (canvas == null) {
+            return;
+        }
+
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            canvas.concat(mViewport);
+            for (Entry entry : mStrokes.values()) {
+                if (!entry.mParked && !canvas.quickReject(entry.mBounds)) {
+                    canvas.drawPath(entry.mPath, entry.mPaint);
+                }
+            }
+        } finally {
+            unlockCanvasAndPost(canvas);
+        }
+    }
+
+    /**
+     * Body of the render thread: waits for commands, applies them and redraws, until stopped.
+     */
+    private void runRenderLoop() {
+        Thread self = Thread.currentThread();
+        while (mThread == self) {
+            boolean changed = applyCommands();
+            if (changed || mFullRedraw) {
+                render();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+    //endregion
+
+    //region SurfaceTextureListener
+    /**
+     * Starts the render thread, drawing everything once.
+     */
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surface, int width, int height) {
+        mFullRedraw = true;
+        Thread thread = new Thread(this::runRenderLoop, "InkSurface");
+        mThread = thread;
+        thread.start();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surface, int width, int height) {
+        mFullRedraw = true;
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * Stops the render thread, waiting for it to finish its frame. The strokes are kept, and
+     * commands posted meanwhile are applied when the surface is available again.
+     */
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surface) {
+        Thread thread = mThread;
+        mThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surface) {
+    }
+    //endregion
+}
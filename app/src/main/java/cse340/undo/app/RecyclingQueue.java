@@ -0,0 +1,140 @@
+package cse340.undo.app;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Queue from one producer thread to one consumer thread whose elements are reused, so that posting
+ * allocates nothing. The elements live in a ring which is filled once up front: the producer fills
+ * the element returned by claim and publishes it, and the consumer reads the element returned by
+ * peek and releases it, after which it is claimed again.
+ *
+ * If the consumer falls a whole ring behind, e.g. while it is stopped, further elements are
+ * allocated and queued after the ring, until the consumer catches up. Elements are always consumed
+ * in the order they were published.
+ *
+ * @param <T>   Type of the elements.
+ */
+final class RecyclingQueue<T> {
+    /** Preallocated elements. Its length is a power of two. */
+    private final T[] mRing;
+
+    /** Makes the elements, for the ring and when it is full. */
+    private final Supplier<T> mFactory;
+
+    /** Number of elements ever published to and released from the ring. */
+    private final AtomicLong mTail, mHead;
+
+    /** Elements published while the ring was full or this queue wasn't empty, oldest first. */
+    private final Queue<T> mOverflow;
+
+    /** Element claimed by the producer, and whether it is from the ring. Producer only. */
+    private T mClaimed;
+    private boolean mClaimedFromRing;
+
+    /** Element peeked by the consumer, and whether it is from the ring. Consumer only. */
+    private T mPeeked;
+    private boolean mPeekedFromRing;
+
+    /**
+     * Creates an empty queue.
+     *
+     * @param capacity  Number of elements to preallocate, rounded up to a power of two.
+     * @param factory   Makes the elements.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    RecyclingQueue(int capacity, Supplier<T> factory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length *= 2;
+        }
+
+        mRing = (T[]) new Object[length];
+        for (int i = 0; i < length; i++) {
+            mRing[i] = factory.get();
+        }
+        mFactory = factory;
+        mTail = new AtomicLong();
+        mHead = new AtomicLong();
+        mOverflow = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Producer only: claims an element to fill, which may hold the values of an old one.
+     *
+     * @return Element to fill and publish.
+     * @throws IllegalStateException if an element is already claimed.
+     */
+    T claim() {
+        if (mClaimed != null) {
+            throw new IllegalStateException("Already claimed: " + mClaimed);
+        }
+        long tail = mTail.get();
+        // The ring is only used while nothing overflowed, so elements stay in order.
+        mClaimedFromRing = tail - mHead.get() < mRing.length && mOverflow.isEmpty();
+        mClaimed = mClaimedFromRing ? mRing[(int) tail & (mRing.length - 1)] : mFactory.get();
+        return mClaimed;
+    }
+
+    /**
+     * Producer only: makes the claimed element visible to the consumer.
+     *
+     * @throws IllegalStateException if no element is claimed.
+     */
+    void publish() {
+        if (mClaimed == null) {
+            throw new IllegalStateException("Nothing claimed");
+        }
+        if (mClaimedFromRing) {
+            mTail.lazySet(mTail.get() + 1);
+        } else {
+            mOverflow.offer(mClaimed);
+        }
+        mClaimed = null;
+    }
+
+    /**
+     * Consumer only: looks at the oldest published element. Calling it again before release
+     * returns the same element.
+     *
+     * @return Oldest published element, or null if there is none.
+     */
+    T peek() {
+        if (mPeeked != null) {
+            return mPeeked;
+        }
+        long head = mHead.get();
+        if (head != mTail.get()) {
+            mPeekedFromRing = true;
+            mPeeked = mRing[(int) head & (mRing.length - 1)];
+        } else {
+            mPeekedFromRing = false;
+            mPeeked = mOverflow.peek();
+        }
+        return mPeeked;
+    }
+
+    /**
+     * Consumer only: removes the peeked element, so it may be claimed again. The consumer must not
+     * use it anymore.
+     *
+     * @throws IllegalStateException if no element is peeked.
+     */
+    void release() {
+        if (mPeeked == null) {
+            throw new IllegalStateException("Nothing peeked");
+        }
+        if (mPeekedFromRing) {
+            mHead.lazySet(mHead.get() + 1);
+        } else {
+            mOverflow.poll();
+        }
+        mPeeked = null;
+    }
+}
@@ -0,0 +1,118 @@
+package cse340.undo.app;
+
+/**
+ * Resamples a stroke at a fixed step, either of distance along the stroke or of time, so the number
+ * of points depends on how long the stroke is, or how long it took, and not on how often the device
+ * reports touches. Points in between samples are interpolated linearly, along with their time and
+ * pressure. The last sample is always passed on, so the stroke ends where the pointer lifted.
+ */
+public class ResamplingFilter implements StrokeFilter {
+    /** Distance between points, or 0 when resampling by time. */
+    private final float mStep;
+
+    /** Time between points, in milliseconds, or 0 when resampling by distance. */
+    private final long mInterval;
+
+    /** Last sample taken, and whether there is one. */
+    private float mLastX, mLastY, mLastPressure;
+    private long mLastTime;
+    private boolean mStarted;
+
+    /** Whether the last sample was passed on as is. */
+    private boolean mLastPassed;
+
+    /** Distance from the last point passed on to the last sample. */
+    private float mTravelled;
+
+    /** Time of the next point to pass on. */
+    private long mNextTime;
+
+    private ResamplingFilter(float step, long interval) {
+        mStep = step;
+        mInterval = interval;
+    }
+
+    /**
+     * @param step  Distance between points along the stroke, in pixels.
+     * @return Factory of filters resampling strokes every step pixels.
+     * @throws IllegalArgumentException if the step is not positive.
+     */
+    public static Factory byDistance(float step) {
+        if (!(step > 0)) {
+            throw new IllegalArgumentException("Step must be positive: " + step);
+        }
+        return () -> new ResamplingFilter(step, 0);
+    }
+
+    /**
+     * @param interval  Time between points, in milliseconds.
+     * @return Factory of filters resampling strokes every interval milliseconds.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public static Factory byTime(long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        return () -> new ResamplingFilter(0, interval);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void addPoint(float x, float y, long time, float pressure, Sink out) {
+        if (!mStarted) {
+            mStarted = true;
+            mNextTime = time + mInterval;
+            out.addPoint(x, y, time, pressure);
+            setLast(x, y, time, pressure, true);
+            return;
+        }
+
+        boolean passed = false;
+        if (mStep > 0) {
+            float dx = x - mLastX, dy = y - mLastY;
+            float length = (float) Math.sqrt(dx * dx + dy * dy);
+            // Distance along this segment of the next point; never 0, so length is positive below.
+            float at = mStep - mTravelled;
+            while (at <= length) {
+                passed = interpolate(at / length, x, y, time, pressure, out);
+                at += mStep;
+            }
+            mTravelled = length - (at - mStep);
+        } else if (time > mLastTime) {
+            while (mNextTime <= time) {
+                passed = interpolate((float) (mNextTime - mLastTime) / (time - mLastTime), x, y, time, pressure, out);
+                mNextTime += mInterval;
+            }
+        }
+        setLast(x, y, time, pressure, passed);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void finish(Sink out) {
+        if (mStarted && !mLastPassed) {
+            out.addPoint(mLastX, mLastY, mLastTime, mLastPressure);
+            mLastPassed = true;
+        }
+    }
+
+    /**
+     * Passes on the point a fraction of the way from the last sample to a new one.
+     *
+     * @return True if the point is the new sample itself.
+     */
+    private boolean interpolate(float fraction, float x, float y, long time, float pressure, Sink out) {
+        out.addPoint(mLastX + (x - mLastX) * fraction, mLastY + (y - mLastY) * fraction,
+                mLastTime + Math.round((time - mLastTime) * (double) fraction),
+                mLastPressure + (pressure - mLastPressure) * fraction);
+        return fraction >= 1;
+    }
+
+    private void setLast(float x, float y, long time, float pressure, boolean passed) {
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+        mLastPressure = pressure;
+        mLastPassed = passed;
+    }
+}
@@ -56,14 +56,14 @@ public class ReversibleDrawingActivity extends AbstractReversibleDrawingActivity
     private  AbstractColorPickerView.ColorChangeListener mListenerOne;
 
     /**
-     * Creates a new AbstractReversibleDrawingActivity with the default history limit.
+     * Creates a new ReversibleDrawingActivity with the default history limit.
      */
     public ReversibleDrawingActivity() {
         super();
     }
 
     /**
-     * Creates a new AbstractReversibleDrawingActivity with the given history limit.
+     * Creates a new ReversibleDrawingActivity with the given history limit.
      *
      * @param history Maximum number of history items to maintain.
      */
@@ -0,0 +1,54 @@
+package cse340.undo.app;
+
+/**
+ * Stage of the input pipeline between touch events and the stroke being drawn. A filter takes the
+ * touch samples of one stroke and passes on the points to build the stroke from, which may be
+ * more, fewer or other points, e.g. resampled or smoothed. Filters are chained, each one's output
+ * being the next one's input.
+ *
+ * A filter only ever sees one stroke, so it may keep whatever state it needs; a new one is made
+ * for each stroke by its Factory. It must pass on the first point of the stroke as is, as soon as
+ * it gets it, since that is where the stroke starts.
+ */
+public interface StrokeFilter {
+    /**
+     * Receives the points passed on by a filter.
+     */
+    interface Sink {
+        /**
+         * @param x Horizontal coordinate of the point.
+         * @param y Vertical coordinate of the point.
+         * @param time  Time of the point, in milliseconds.
+         * @param pressure  Pressure of the point.
+         */
+        void addPoint(float x, float y, long time, float pressure);
+    }
+
+    /**
+     * Makes a filter for each stroke.
+     */
+    interface Factory {
+        /**
+         * @return A new filter, which has seen no point yet.
+         */
+        StrokeFilter create();
+    }
+
+    /**
+     * Takes the next point of the stroke, passing on any points it leads to.
+     *
+     * @param x Horizontal coordinate of the point.
+     * @param y Vertical coordinate of the point.
+     * @param time  Time of the point, in milliseconds.
+     * @param pressure  Pressure of the point.
+     * @param out   Receives the points passed on.
+     */
+    void addPoint(float x, float y, long time, float pressure, Sink out);
+
+    /**
+     * Ends the stroke, passing on any points held back so far.
+     *
+     * @param out   Receives the points passed on.
+     */
+    void finish(Sink out);
+}
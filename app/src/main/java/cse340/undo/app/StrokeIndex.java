@@ -0,0 +1,290 @@
+package cse340.undo.app;
+
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+
+import java.util.Arrays;
+
+/**
+ * Spatial index of strokes by their bounds, as a uniform grid of square cells. Each stroke is listed
+ * in every cell its bounds touch, so a query only looks at the strokes in the cells it covers
+ * instead of every stroke in the drawing.
+ *
+ * Queries work on bounds: they pass every stroke whose bounds intersect the area or contain the
+ * point to a visitor, which may then test it exactly. Results are in no particular order. Ids are
+ * kept unboxed, so queries and growing a stroke within the cells it covers allocate nothing.
+ */
+public class StrokeIndex {
+    /** Width and height of a cell, in pixels. */
+    public static final int CELL_SIZE = 256;
+
+    /**
+     * Receives the strokes a query finds.
+     */
+    public interface Visitor {
+        /**
+         * @param id    Id of a stroke found by the query. Each stroke is visited once.
+         */
+        void visit(long id);
+    }
+
+    /**
+     * Ids of the strokes touching a cell, in the order they were listed.
+     */
+    private static final class Cell {
+        long[] mIds = new long[4];
+        int mSize;
+
+        void add(long id) {
+            if (mSize == mIds.length) {
+                mIds = Arrays.copyOf(mIds, mSize * 2);
+            }
+            mIds[mSize++] = id;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < mSize; i++) {
+                if (mIds[i] == id) {
+                    System.arraycopy(mIds, i + 1, mIds, i, mSize - i - 1);
+                    mSize--;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Bounds of every indexed stroke, by id. */
+    private final LongSparseArray<RectF> mBounds;
+
+    /** Strokes touching each cell, by cell key. */
+    private final LongSparseArray<Cell> mCells;
+
+    /** Range of cells which ever held a stroke, so huge queries don't scan empty cells. */
+    private int mMinX, mMinY, mMaxX, mMaxY;
+
+    /** Reusable copy of a stroke's bounds before it grows. */
+    private final RectF mOldBounds = new RectF();
+
+    /**
+     * Creates an empty index.
+     */
+    public StrokeIndex() {
+        mBounds = new LongSparseArray<>();
+        mCells = new LongSparseArray<>();
+        mMinX = mMinY = Integer.MAX_VALUE;
+        mMaxX = mMaxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Adds a stroke, or replaces its bounds if it is already indexed.
+     *
+     * @param id    Id of the stroke.
+     * @param bounds    Area covered by the stroke. The index keeps its own copy, which it updates
+     *                  in place from then on, so getBounds returns the same rectangle for as long
+     *                  as the stroke is indexed.
+     */
+    public void put(long id, RectF bounds) {
+        RectF indexed = mBounds.get(id);
+        if (indexed != null) {
+            removeFromCells(id, indexed);
+            indexed.set(bounds);
+        } else {
+            indexed = new RectF(bounds);
+            mBounds.put(id, indexed);
+        }
+        addToCells(id, indexed, null);
+    }
+
+    /**
+     * Grows the bounds of an indexed stroke, e.g. as it is being drawn. Only the cells which were
+     * not covered yet are updated, so growing a stroke within the cells it covers allocates
+     * nothing.
+     *
+     * @param id    Id of the stroke.
+     * @param area  Area to add to the stroke's bounds.
+     * @return True if the stroke is indexed, false otherwise.
+     */
+    public boolean grow(long id, RectF area) {
+        RectF bounds = mBounds.get(id);
+        if (bounds == null) {
+            return false;
+        }
+
+        mOldBounds.set(bounds);
+        bounds.union(area);
+        addToCells(id, bounds, mOldBounds);
+        return true;
+    }
+
+    /**
+     * Removes a stroke.
+     *
+     * @param id    Id of the stroke.
+     * @return True if the stroke was indexed, false otherwise.
+     */
+    public boolean remove(long id) {
+        RectF bounds = mBounds.get(id);
+        if (bounds == null) {
+            return false;
+        }
+        mBounds.remove(id);
+        removeFromCells(id, bounds);
+        return true;
+    }
+
+    /**
+     * @param id    Id of a stroke.
+     * @return True if the stroke is indexed.
+     */
+    public boolean contains(long id) {
+        return mBounds.indexOfKey(id) >= 0;
+    }
+
+    /**
+     * @param id    Id of a stroke.
+     * @return Bounds of the stroke, which must not be modified, or null if it is not indexed.
+     */
+    public RectF getBounds(long id) {
+        return mBounds.get(id);
+    }
+
+    /**
+     * @return Number of indexed strokes.
+     */
+    public int size() {
+        return mBounds.size();
+    }
+
+    /**
+     * @param area  Area to test.
+     * @return True if the bounds of every stroke lie within the area.
+     */
+    public boolean isWithin(RectF area) {
+        for (int i = 0; i < mBounds.size(); i++) {
+            if (!area.contains(mBounds.valueAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every stroke.
+     */
+    public void clear() {
+        mBounds.clear();
+        mCells.clear();
+        mMinX = mMinY = Integer.MAX_VALUE;
+        mMaxX = mMaxY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Finds the strokes whose bounds intersect an area.
+     *
+     * @param area  Area to search.
+     * @param visitor   Visits the strokes found, each once.
+     */
+    public void query(RectF area, Visitor visitor) {
+        int left = Math.max(mMinX, cell(area.left)), right = Math.min(mMaxX, cell(area.right));
+        int top = Math.max(mMinY, cell(area.top)), bottom = Math.min(mMaxY, cell(area.bottom));
+
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                Cell cell = mCells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < cell.mSize; i++) {
+                    long id = cell.mIds[i];
+                    RectF bounds = mBounds.get(id);
+                    // A stroke spanning several cells is only reported from the first cell of its
+                    // overlap with the area.
+                    if (RectF.intersects(bounds, area)
+                            && cx == Math.max(left, cell(bounds.left))
+                            && cy == Math.max(top, cell(bounds.top))) {
+                        visitor.visit(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the strokes whose bounds contain a point.
+     *
+     * @param x Horizontal coordinate of the point.
+     * @param y Vertical coordinate of the point.
+     * @param visitor   Visits the strokes found, each once.
+     */
+    public void query(float x, float y, Visitor visitor) {
+        Cell cell = mCells.get(key(cell(x), cell(y)));
+        if (cell == null) {
+            return;
+        }
+
+        for (int i = 0; i < cell.mSize; i++) {
+            long id = cell.mIds[i];
+            if (mBounds.get(id).contains(x, y)) {
+                visitor.visit(id);
+            }
+        }
+    }
+
+    /**
+     * Unlists a stroke from every cell its bounds touch.
+     */
+    private void removeFromCells(long id, RectF bounds) {
+        for (int cy = cell(bounds.top); cy <= cell(bounds.bottom); cy++) {
+            for (int cx = cell(bounds.left); cx <= cell(bounds.right); cx++) {
+                long key = key(cx, cy);
+                Cell cell = mCells.get(key);
+                if (cell != null) {
+                    cell.remove(id);
+                    if (cell.mSize == 0) {
+                        mCells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lists a stroke in every cell its bounds touch, skipping those an older version of its bounds
+     * already touched.
+     */
+    private void addToCells(long id, RectF bounds, RectF old) {
+        int left = cell(bounds.left), top = cell(bounds.top);
+        int right = cell(bounds.right), bottom = cell(bounds.bottom);
+
+        for (int cy = top; cy <= bottom; cy++) {
+            for (int cx = left; cx <= right; cx++) {
+                if (old != null && cx >= cell(old.left) && cx <= cell(old.right)
+                        && cy >= cell(old.top) && cy <= cell(old.bottom)) {
+                    continue;
+                }
+
+                long key = key(cx, cy);
+                Cell cell = mCells.get(key);
+                if (cell == null) {
+                    cell = new Cell();
+                    mCells.put(key, cell);
+                }
+                cell.add(id);
+            }
+        }
+
+        mMinX = Math.min(mMinX, left);
+        mMinY = Math.min(mMinY, top);
+        mMaxX = Math.max(mMaxX, right);
+        mMaxY = Math.max(mMaxY, bottom);
+    }
+
+    private static int cell(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return (long) cx << 32 | cy & 0xffffffffL;
+    }
+}
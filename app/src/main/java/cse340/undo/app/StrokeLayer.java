@@ -0,0 +1,642 @@
+package cse340.undo.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cse340.undo.actions.StrokeGeometry;
+
+/**
+ * Single view which renders a list of strokes itself, instead of using one StrokeView per stroke.
+ * Adding or removing a stroke only invalidates this view, so the cost of a frame no longer grows
+ * with the number of views in the DrawingView.
+ *
+ * Strokes may be parked, e.g. while a checkpoint bitmap renders them. Parked strokes are kept in
+ * place but not drawn.
+ *
+ * When tiled, strokes are rendered into the bitmaps of a TileCache and a frame only blits tiles.
+ * Showing or removing a stroke drops the tiles its bounds touch. A stroke which is invalidated, such
+ * as the one being drawn, becomes live: it leaves the tiles and is drawn as a vector on top of them
+ * until it is removed, so its tiles aren't rendered again on every move.
+ *
+ * Strokes are in document coordinates, which the layer maps to the screen with the DrawingView's
+ * viewport. Only the strokes the index finds in the visible area are drawn, so a frame costs as much
+ * as the strokes on screen. Finding and ordering them allocates nothing once the layer has drawn as
+ * many strokes at once before.
+ * When zoomed out, strokes whose points are known are drawn from simplified copies of their paths,
+ * cached per level of detail. Tiles are drawn from the TileCache level nearest the viewport's scale,
+ * scaled to it, so they blur at most as much as a bitmap scaled by sqrt(2) until the zoom settles
+ * nearer another level.
+ */
+@SuppressLint("ViewConstructor")
+public class StrokeLayer extends View {
+    /**
+     * A stroke drawn by the layer.
+     */
+    static final class Stroke {
+        final Path mPath;
+        final Paint mPaint;
+
+        /** Points behind the path, or null if unknown. */
+        final StrokeGeometry mGeometry;
+
+        /** Simplified paths by level of detail, or null until zoomed out. */
+        Path[] mLod;
+
+        /** Position in the drawing order; strokes with a higher one are drawn on top. */
+        final int mOrder;
+
+        boolean mParked;
+
+        /** Whether the stroke is changing, so it is drawn on top of the tiles. */
+        boolean mLive;
+
+        /** Area covered by the stroke, shared with the index, which keeps it up to date. */
+        final RectF mBounds;
+
+        Stroke(Path path, StrokeGeometry geometry, Paint paint, int order, RectF bounds) {
+            mPath = path;
+            mGeometry = geometry;
+            mPaint = paint;
+            mOrder = order;
+            mBounds = bounds;
+        }
+    }
+
+    /** Strokes by id. Their mOrder gives the drawing order. */
+    private final LongSparseArray<Stroke> mStrokes;
+
+    /**
+     * Last stroke looked up by id, and its id, so the stroke being drawn is found on every move
+     * without a search.
+     */
+    private long mLastId;
+    private Stroke mLastStroke;
+
+    /** Strokes drawn on top of the tiles, in drawing order. */
+    private final List<Stroke> mLiveStrokes = new ArrayList<>();
+
+    /** Number of parked strokes in mStrokes. */
+    private int mParkedCount;
+
+    /** Order of the next stroke shown. */
+    private int mNextOrder;
+
+    /** Index of the strokes' bounds, shared with the DrawingView, used to find visible strokes. */
+    private final StrokeIndex mIndex;
+
+    /** Reusable results of index queries: the first mFoundCount strokes of mFound. */
+    private Stroke[] mFound = new Stroke[16];
+    private int mFoundCount;
+
+    /** Whether queries skip live strokes, e.g. while rendering a tile. */
+    private boolean mSkipLive;
+
+    /** Adds the strokes found by index queries to mFound. */
+    private final StrokeIndex.Visitor mCollector = this::collect;
+
+    /** Cached tiles of the strokes, or null if the layer is not tiled. */
+    private TileCache mTiles;
+
+    /** Renders the strokes of a tile. */
+    private final TileCache.Renderer mTileRenderer = this::renderTile;
+
+    /** Filters tiles drawn at a scale other than their level's. */
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /** Reusable area of a tile, in document coordinates. */
+    private final RectF mTileArea = new RectF();
+
+    /** Reusable clip bounds for drawing, and dirty area for invalidating. */
+    private final Rect mClip = new Rect();
+
+    /** Number of levels of detail, each halving the scale at which the previous one is used. */
+    private static final int LOD_LEVELS = 6;
+
+    /** Distance a simplified path may stray from the full one, in screen pixels. */
+    private static final float LOD_TOLERANCE = 0.5f;
+
+    /** Transform from document to screen coordinates, and its scale. */
+    private final Matrix mViewport = new Matrix();
+    private float mViewportScale = 1;
+
+    /** TileCache level nearest the scale. */
+    private int mTileLevel;
+
+    /** Reusable visible or dirty area, in document coordinates. */
+    private final RectF mVisible = new RectF();
+    private final float[] mValues = new float[9];
+
+    /**
+     * Creates an empty layer.
+     *
+     * @param context   Context of the layer.
+     * @param index Index in which the owner keeps the bounds of the strokes of this layer. It may
+     *              hold other strokes too.
+     */
+    public StrokeLayer(Context context, StrokeIndex index) {
+        super(context);
+        mStrokes = new LongSparseArray<>();
+        mIndex = index;
+    }
+
+    /**
+     * Draws a stroke on top of the others. If it is parked, it is unparked and moved to the top.
+     *
+     * @param id    Id of the stroke.
+     * @param path  Path of the stroke. The layer must be invalidated if it changes.
+     * @param paint Paint of the stroke.
+     */
+    public void show(long id, Path path, Paint paint) {
+        show(id, path, null, paint);
+    }
+
+    /**
+     * Draws a stroke whose points are known on top of the others, so it can be drawn in less detail
+     * when zoomed out. If it is parked, it is unparked and moved to the top.
+     *
+     * @param id    Id of the stroke, which must be in the index.
+     * @param path  Path of the stroke. The layer must be invalidated if it changes.
+     * @param geometry  Points the path was built from, or null if unknown.
+     * @param paint Paint of the stroke.
+     * @throws IllegalStateException if the stroke is not in the index.
+     */
+    public void show(long id, Path path, StrokeGeometry geometry, Paint paint) {
+        Stroke stroke = mStrokes.get(id);
+        if (stroke != null && !stroke.mParked) {
+            return;
+        }
+        RectF bounds = mIndex.getBounds(id);
+        if (bounds == null) {
+            throw new IllegalStateException("Stroke is not indexed: " + id);
+        }
+
+        if (stroke != null) {
+            mStrokes.remove(id);
+            mParkedCount--;
+        }
+        stroke = new Stroke(path, geometry, paint, mNextOrder++, bounds);
+        mStrokes.put(id, stroke);
+        mLastStroke = null;
+        if (mTiles != null) {
+            mTiles.invalidate(getBounds(stroke));
+        }
+        invalidate();
+    }
+
+    /**
+     * Removes a stroke, whether or not it is parked.
+     *
+     * @param id    Id of the stroke.
+     * @return True if the stroke was in the layer, false otherwise.
+     */
+    public boolean remove(long id) {
+        Stroke stroke = mStrokes.get(id);
+        if (stroke == null) {
+            return false;
+        }
+        mStrokes.remove(id);
+        mLastStroke = null;
+        if (stroke.mLive) {
+            mLiveStrokes.remove(stroke);
+        }
+
+        if (stroke.mParked) {
+            mParkedCount--;
+        } else {
+            if (mTiles != null && !stroke.mLive) {
+                mTiles.invalidate(getBounds(stroke));
+            }
+            invalidate();
+        }
+        return true;
+    }
+
+    /**
+     * @param id    Id of a stroke.
+     * @return True if the stroke is in the layer, parked or not.
+     */
+    public boolean contains(long id) {
+        return mStrokes.indexOfKey(id) >= 0;
+    }
+
+    /**
+     * @param id    Id of a stroke.
+     * @return The stroke, parked or not, or null if it is not in the layer.
+     */
+    Stroke get(long id) {
+        if (mLastStroke == null || mLastId != id) {
+            mLastStroke = mStrokes.get(id);
+            mLastId = id;
+        }
+        return mLastStroke;
+    }
+
+    /**
+     * @return True if the layer has no strokes, parked or not.
+     */
+    public boolean isEmpty() {
+        return mStrokes.size() == 0;
+    }
+
+    /**
+     * @return True if strokes are rendered through cached tiles.
+     */
+    public boolean isTiled() {
+        return mTiles != null;
+    }
+
+    /**
+     * Switches between rendering every stroke on each frame and rendering them through cached
+     * tiles, whose bitmaps fit in TileCache.DEFAULT_BUDGET unless the screen needs more.
+     *
+     * @param tiled True to render through tiles.
+     */
+    public void setTiled(boolean tiled) {
+        if (tiled == (mTiles != null)) {
+            return;
+        }
+
+        if (tiled) {
+            mTiles = new TileCache(TileCache.DEFAULT_BUDGET);
+            ensureTileCapacity(getWidth(), getHeight());
+        } else {
+            mTiles.release();
+            mTiles = null;
+            for (Stroke stroke : mLiveStrokes) {
+                stroke.mLive = false;
+            }
+            mLiveStrokes.clear();
+        }
+        invalidate();
+    }
+
+    /**
+     * Redraws part of a stroke whose path changed, e.g. while it is being drawn. When tiled, the
+     * stroke becomes live. Must be called before the index updates the stroke's bounds, so that
+     * the tiles it was drawn on are redrawn without it.
+     *
+     * @param id    Id of the stroke.
+     * @param dirty Area which changed, or null if the whole stroke may have changed.
+     */
+    public void invalidateStroke(long id, Rect dirty) {
+        Stroke stroke = get(id);
+        if (stroke == null || stroke.mParked) {
+            return;
+        }
+
+        if (mTiles != null && !stroke.mLive) {
+            mTiles.invalidate(getBounds(stroke));
+            stroke.mLive = true;
+            int i = mLiveStrokes.size();
+            while (i > 0 && mLiveStrokes.get(i - 1).mOrder > stroke.mOrder) {
+                i--;
+            }
+            mLiveStrokes.add(i, stroke);
+        }
+        stroke.mLod = null;
+
+        if (dirty == null) {
+            invalidate();
+        } else {
+            mVisible.set(dirty);
+            mViewport.mapRect(mVisible);
+            mVisible.roundOut(mClip);
+            DrawingView.invalidateArea(this, mClip);
+        }
+    }
+
+    /**
+     * Parks every stroke.
+     */
+    public void parkAll() {
+        for (int i = 0; i < mStrokes.size(); i++) {
+            mStrokes.valueAt(i).mParked = true;
+        }
+        mParkedCount = mStrokes.size();
+        invalidateTiles();
+        invalidate();
+    }
+
+    /**
+     * Unparks every stroke. Parked strokes are already below the others, so no stroke moves.
+     */
+    public void unparkAll() {
+        if (mParkedCount == 0) {
+            return;
+        }
+
+        for (int i = 0; i < mStrokes.size(); i++) {
+            mStrokes.valueAt(i).mParked = false;
+        }
+        mParkedCount = 0;
+        invalidateTiles();
+        invalidate();
+    }
+
+    /**
+     * Removes every stroke.
+     */
+    public void clear() {
+        mStrokes.clear();
+        mLastStroke = null;
+        mLiveStrokes.clear();
+        mParkedCount = 0;
+        invalidateTiles();
+        invalidate();
+    }
+
+    /**
+     * Draws every stroke which is not parked and intersects the canvas's clip, in document
+     * coordinates.
+     *
+     * @param canvas    Canvas to draw the strokes on.
+     */
+    public void drawStrokes(Canvas canvas) {
+        if (!canvas.getClipBounds(mClip)) {
+            return;
+        }
+        mVisible.set(mClip);
+        findStrokes(mVisible, false);
+
+        for (int i = 0; i < mFoundCount; i++) {
+            Stroke stroke = mFound[i];
+            canvas.drawPath(getDetailedPath(stroke, mViewportScale), stroke.mPaint);
+        }
+        clearFound();
+    }
+
+    /**
+     * Lists the full paths and paints of the strokes which are not parked and intersect an area,
+     * in drawing order, e.g. to draw them on another thread.
+     *
+     * @param area  Area to look in, in document coordinates.
+     * @param paths Receives the paths of the strokes.
+     * @param paints    Receives the paints of the strokes.
+     */
+    public void collectStrokes(RectF area, List<Path> paths, List<Paint> paints) {
+        findStrokes(area, false);
+        for (int i = 0; i < mFoundCount; i++) {
+            paths.add(mFound[i].mPath);
+            paints.add(mFound[i].mPaint);
+        }
+        clearFound();
+    }
+
+    /**
+     * Puts the strokes which are not parked and intersect an area in mFound, in drawing order.
+     *
+     * @param area  Area to look in, in document coordinates.
+     * @param skipLive  True to leave out live strokes too.
+     */
+    private void findStrokes(RectF area, boolean skipLive) {
+        mSkipLive = skipLive;
+        mIndex.query(area, mCollector);
+        sortFound();
+    }
+
+    private void collect(long id) {
+        Stroke stroke = mStrokes.get(id);
+        if (stroke == null || stroke.mParked || mSkipLive && stroke.mLive) {
+            return;
+        }
+        if (mFoundCount == mFound.length) {
+            mFound = Arrays.copyOf(mFound, mFoundCount * 2);
+        }
+        mFound[mFoundCount++] = stroke;
+    }
+
+    /**
+     * Sorts mFound in drawing order, in place. The index lists strokes mostly in the order they
+     * were shown, so they often are sorted already; otherwise they are heapsorted, since sorting
+     * objects with the library allocates a merge buffer once there are a few dozen of them.
+     */
+    private void sortFound() {
+        Stroke[] found = mFound;
+        int count = mFoundCount;
+        int i = 1;
+        while (i < count && found[i - 1].mOrder < found[i].mOrder) {
+            i++;
+        }
+        if (i >= count) {
+            return;
+        }
+
+        for (i = count / 2 - 1; i >= 0; i--) {
+            siftDown(found, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            Stroke top = found[0];
+            found[0] = found[end];
+            found[end] = top;
+            siftDown(found, 0, end);
+        }
+    }
+
+    /**
+     * Moves a stroke down a max-heap of strokes by drawing order until both its children are
+     * below it.
+     */
+    private static void siftDown(Stroke[] heap, int i, int count) {
+        Stroke stroke = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < count) {
+            if (child + 1 < count && heap[child + 1].mOrder > heap[child].mOrder) {
+                child++;
+            }
+            if (heap[child].mOrder <= stroke.mOrder) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = stroke;
+    }
+
+    /**
+     * Empties mFound, without keeping the strokes it held alive.
+     */
+    private void clearFound() {
+        Arrays.fill(mFound, 0, mFoundCount, null);
+        mFoundCount = 0;
+    }
+
+    /**
+     * Sets the transform from document to screen coordinates. Its scale also picks the level of
+     * detail and of the tiles.
+     *
+     * @param viewport  Viewport of the DrawingView, made of a uniform scale and a translation.
+     */
+    public void setViewport(Matrix viewport) {
+        mViewport.set(viewport);
+        mViewport.getValues(mValues);
+        mViewportScale = mValues[Matrix.MSCALE_X];
+        mTileLevel = Math.round((float) (Math.log(mViewportScale) / Math.log(2)));
+        invalidate();
+    }
+
+    /**
+     * Picks the path to draw a stroke with at a scale: the full path, or a copy simplified to
+     * within LOD_TOLERANCE screen pixels, built on first use.
+     *
+     * @param stroke    Stroke to draw.
+     * @param scale Scale from document to screen coordinates.
+     */
+    private Path getDetailedPath(Stroke stroke, float scale) {
+        if (scale > 0.5f || stroke.mGeometry == null) {
+            return stroke.mPath;
+        }
+
+        // Level n is used for scales in (2^-(n + 1), 2^-n].
+        int level = Math.min(LOD_LEVELS, (int) Math.floor(Math.log(1 / scale) / Math.log(2)));
+        if (stroke.mLod == null) {
+            stroke.mLod = new Path[LOD_LEVELS + 1];
+        }
+        if (stroke.mLod[level] == null) {
+            StrokeGeometry simplified = stroke.mGeometry.simplify(LOD_TOLERANCE * (1 << level));
+            stroke.mLod[level] = simplified == stroke.mGeometry ? stroke.mPath : simplified.toPath();
+        }
+        return stroke.mLod[level];
+    }
+
+    /**
+     * Blits the tiles of mTileLevel which intersect the clip, rendering the missing ones, then
+     * draws the live strokes on top.
+     */
+    private void drawTiles(Canvas canvas) {
+        canvas.getClipBounds(mClip);
+        float size = TileCache.TILE_SIZE / TileCache.getScale(mTileLevel);
+        int left = (int) Math.floor(mClip.left / size), top = (int) Math.floor(mClip.top / size);
+        int right = (int) Math.ceil(mClip.right / size) - 1, bottom = (int) Math.ceil(mClip.bottom / size) - 1;
+
+        for (int ty = top; ty <= bottom; ty++) {
+            for (int tx = left; tx <= right; tx++) {
+                Bitmap tile = mTiles.get(mTileLevel, tx, ty, mTileRenderer);
+                mTileArea.set(tx * size, ty * size, (tx + 1) * size, (ty + 1) * size);
+                canvas.drawBitmap(tile, null, mTileArea, mTilePaint);
+            }
+        }
+
+        for (int i = 0; i < mLiveStrokes.size(); i++) {
+            Stroke stroke = mLiveStrokes.get(i);
+            if (!stroke.mParked && !canvas.quickReject(getBounds(stroke))) {
+                canvas.drawPath(stroke.mPath, stroke.mPaint);
+            }
+        }
+    }
+
+    /**
+     * Draws the strokes of a tile: those which are neither parked nor live and touch its area, at
+     * the level of detail of the tile's scale. They are found through the index, so only the
+     * strokes near the tile are visited.
+     */
+    private void renderTile(Canvas canvas, RectF area, float scale) {
+        findStrokes(area, true);
+        for (int i = 0; i < mFoundCount; i++) {
+            Stroke stroke = mFound[i];
+            canvas.drawPath(getDetailedPath(stroke, scale), stroke.mPaint);
+        }
+        clearFound();
+    }
+
+    private void invalidateTiles() {
+        if (mTiles != null) {
+            mTiles.invalidateAll();
+        }
+    }
+
+    /**
+     * Lets the tile cache hold every tile of the view at once, plus a row and column of margin.
+     * Tiles are drawn down to 1/sqrt(2) of their size, between two levels.
+     */
+    private void ensureTileCapacity(int width, int height) {
+        int size = (int) (TileCache.TILE_SIZE / Math.sqrt(2));
+        mTiles.ensureCapacity((width / size + 2) * (height / size + 2));
+    }
+
+    /**
+     * @return Area covered by the stroke.
+     */
+    private static RectF getBounds(Stroke stroke) {
+        return stroke.mBounds;
+    }
+
+    /**
+     * Computes the area a stroke's pixels may cover: its path's bounds grown by getPadding.
+     *
+     * @param path  Path of the stroke.
+     * @param paint Paint of the stroke.
+     * @param out   Rectangle in which to store the area.
+     */
+    static void computeBounds(Path path, Paint paint, RectF out) {
+        path.computeBounds(out, true);
+        float padding = getPadding(paint);
+        out.inset(-padding, -padding);
+    }
+
+    /**
+     * Computes how far a stroke's pixels may reach beyond its path: half the stroke width, more at
+     * the corners of square caps and miter joins, plus a pixel of anti-aliasing.
+     *
+     * @param paint Paint of the stroke.
+     * @return Padding around the path's bounds, in pixels.
+     */
+    static float getPadding(Paint paint) {
+        float factor = 1;
+        if (paint.getStrokeJoin() == Paint.Join.MITER) {
+            factor = Math.max((float) Math.sqrt(2), paint.getStrokeMiter());
+        } else if (paint.getStrokeCap() == Paint.Cap.SQUARE) {
+            factor = (float) Math.sqrt(2);
+        }
+        return paint.getStrokeWidth() / 2 * factor + 1;
+    }
+
+    /**
+     * Renders the strokes which intersect the clip, through the tiles if tiled.
+     */
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.save();
+        canvas.concat(mViewport);
+        if (mTiles != null && mTileLevel >= TileCache.MIN_LEVEL && mTileLevel <= TileCache.MAX_LEVEL) {
+            drawTiles(canvas);
+        } else {
+            // Also when tiled but zoomed beyond the levels, which DrawingView's scales never are.
+            drawStrokes(canvas);
+        }
+        canvas.restore();
+    }
+
+    /** @inheritDoc */
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mTiles != null) {
+            ensureTileCapacity(w, h);
+        }
+    }
+
+    /**
+     * Frees the tile bitmaps; they are rendered again if the layer is attached again.
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mTiles != null) {
+            mTiles.release();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package cse340.undo.app;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.view.View;
@@ -18,6 +19,9 @@ public class StrokeView extends View {
     /** The paint brush with which to draw the path */
     protected final Paint mPaint;
 
+    /** Transform from document to view coordinates, shared with the DrawingView, or null */
+    private Matrix mViewport;
+
     /**
      * Create a new stroke view to show on the DrawingView
      * @param context the context of this new view
@@ -30,6 +34,14 @@ public class StrokeView extends View {
         this.mPaint = paint;
     }
 
+    /**
+     * Sets the transform to draw the path with. The view must be invalidated when it changes.
+     * @param viewport Transform from document to view coordinates, or null for none
+     */
+    public void setViewport(Matrix viewport) {
+        this.mViewport = viewport;
+    }
+
     /**
      * Renders the stroke by drawing the path on the view Canvas.
      */
@@ -37,6 +49,9 @@ public class StrokeView extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
+        if (mViewport != null) {
+            canvas.concat(mViewport);
+        }
         canvas.drawPath(mPath, mPaint);
     }
 }
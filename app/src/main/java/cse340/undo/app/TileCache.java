@@ -0,0 +1,239 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.RectF;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of fixed-size tiles, each a bitmap of the strokes over part of the canvas. Tiles are
+ * rendered on demand and dropped when a stroke over them changes. The bitmaps come from a pool of
+ * at most getCapacity bitmaps: when it is exhausted, the least recently drawn tile is evicted and
+ * its bitmap reused, so memory stays capped however large the canvas is.
+ *
+ * Each tile belongs to a level, at which the canvas is rendered at a scale of 2^level, so a tile
+ * covers TILE_SIZE / 2^level canvas pixels. Drawing the level nearest the viewport's scale keeps
+ * tiles within a factor of sqrt(2) of their size on screen, however far it is zoomed.
+ */
+class TileCache {
+    /** Width and height of a tile, in pixels. */
+    static final int TILE_SIZE = 256;
+
+    /** Default memory budget for the tile bitmaps, in bytes. */
+    static final long DEFAULT_BUDGET = 32 * 1024 * 1024;
+
+    /** Range of levels, wide enough for DrawingView's MIN_SCALE to MAX_SCALE. */
+    static final int MIN_LEVEL = -6, MAX_LEVEL = 3;
+
+    /**
+     * Draws the content of a tile.
+     */
+    interface Renderer {
+        /**
+         * @param canvas    Canvas transformed so that canvas coordinates can be used.
+         * @param area  Area of the canvas covered by the tile.
+         * @param scale Scale of the tile's level.
+         */
+        void render(Canvas canvas, RectF area, float scale);
+    }
+
+    /** Rendered tiles by key, least recently drawn first. */
+    private final LinkedHashMap<Long, Bitmap> mTiles;
+
+    /** Bitmaps of dropped tiles, ready for reuse. */
+    private final Deque<Bitmap> mFree;
+
+    /** Maximum number of bitmaps, cached or free. */
+    private int mCapacity;
+
+    /** Reusable objects for rendering tiles. */
+    private final Canvas mCanvas;
+    private final RectF mArea;
+
+    /** Reusable left, top, right and bottom tiles touched by an area, at each level. */
+    private final int[] mRanges = new int[(MAX_LEVEL - MIN_LEVEL + 1) * 4];
+
+    /**
+     * Creates an empty cache whose bitmaps fit in the given budget.
+     *
+     * @param budget    Memory budget for the tile bitmaps, in bytes.
+     */
+    TileCache(long budget) {
+        mTiles = new LinkedHashMap<>(64, 0.75f, true);
+        mFree = new ArrayDeque<>();
+        mCapacity = (int) Math.max(1, budget / (TILE_SIZE * TILE_SIZE * 4));
+        mCanvas = new Canvas();
+        mArea = new RectF();
+    }
+
+    /**
+     * @return Maximum number of tile bitmaps.
+     */
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Raises the capacity if needed. Every tile drawn in one frame must stay cached until the frame
+     * is drawn, so the capacity must be at least the number of tiles on screen.
+     *
+     * @param tiles Minimum number of tile bitmaps.
+     */
+    void ensureCapacity(int tiles) {
+        mCapacity = Math.max(mCapacity, tiles);
+    }
+
+    /**
+     * @param level Level of tiles.
+     * @return Scale at which the level's tiles are rendered: 2^level.
+     */
+    static float getScale(int level) {
+        return Math.scalb(1f, level);
+    }
+
+    /**
+     * Returns the bitmap of a tile, rendering it first if it isn't cached.
+     *
+     * @param level Level of the tile, in [MIN_LEVEL, MAX_LEVEL].
+     * @param tx    Column of the tile.
+     * @param ty    Row of the tile.
+     * @param renderer  Draws the tile if needed.
+     * @return Bitmap of the tile, valid until the tile is dropped or evicted.
+     * @throws IllegalArgumentException if the level is out of range.
+     */
+    Bitmap get(int level, int tx, int ty, Renderer renderer) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Level " + level + " is out of range");
+        }
+
+        long key = key(level, tx, ty);
+        Bitmap tile = mTiles.get(key);
+        if (tile != null) {
+            return tile;
+        }
+
+        float scale = getScale(level), size = TILE_SIZE / scale;
+        tile = obtain();
+        mCanvas.setBitmap(tile);
+        mCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        mCanvas.save();
+        mCanvas.translate(-tx * TILE_SIZE, -ty * TILE_SIZE);
+        mCanvas.scale(scale, scale);
+        mArea.set(tx * size, ty * size, (tx + 1) * size, (ty + 1) * size);
+        renderer.render(mCanvas, mArea, scale);
+        mCanvas.restore();
+        mCanvas.setBitmap(null);
+
+        mTiles.put(key, tile);
+        return tile;
+    }
+
+    /**
+     * Drops every tile, at any level, which intersects an area, so it is rendered again when next
+     * drawn. The area is grown by a pixel of each level, as anti-aliasing may reach that far
+     * beyond it when zoomed out.
+     *
+     * @param area  Area of the canvas which changed.
+     */
+    void invalidate(RectF area) {
+        long count = 0;
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            float scale = getScale(level);
+            int i = (level - MIN_LEVEL) * 4;
+            mRanges[i] = (int) Math.floor((area.left * scale - 1) / TILE_SIZE);
+            mRanges[i + 1] = (int) Math.floor((area.top * scale - 1) / TILE_SIZE);
+            mRanges[i + 2] = (int) Math.floor((area.right * scale + 1) / TILE_SIZE);
+            mRanges[i + 3] = (int) Math.floor((area.bottom * scale + 1) / TILE_SIZE);
+            count += (long) (mRanges[i + 2] - mRanges[i] + 1) * (mRanges[i + 3] - mRanges[i + 1] + 1);
+        }
+
+        if (count > mTiles.size()) {
+            // Cheaper to check every cached tile than every tile in the area.
+            Iterator<Map.Entry<Long, Bitmap>> it = mTiles.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Bitmap> entry = it.next();
+                long key = entry.getKey();
+                int i = (levelOf(key) - MIN_LEVEL) * 4, tx = columnOf(key), ty = rowOf(key);
+                if (tx >= mRanges[i] && tx <= mRanges[i + 2] && ty >= mRanges[i + 1] && ty <= mRanges[i + 3]) {
+                    mFree.push(entry.getValue());
+                    it.remove();
+                }
+            }
+            return;
+        }
+
+        for (int level = MIN_LEVEL; level <= MAX_LEVEL; level++) {
+            int i = (level - MIN_LEVEL) * 4;
+            for (int ty = mRanges[i + 1]; ty <= mRanges[i + 3]; ty++) {
+                for (int tx = mRanges[i]; tx <= mRanges[i + 2]; tx++) {
+                    Bitmap tile = mTiles.remove(key(level, tx, ty));
+                    if (tile != null) {
+                        mFree.push(tile);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every tile.
+     */
+    void invalidateAll() {
+        mFree.addAll(mTiles.values());
+        mTiles.clear();
+    }
+
+    /**
+     * Drops every tile and frees every bitmap.
+     */
+    void release() {
+        invalidateAll();
+        for (Bitmap bitmap : mFree) {
+            bitmap.recycle();
+        }
+        mFree.clear();
+    }
+
+    /**
+     * Takes a bitmap from the free list, allocates one, or evicts the least recently drawn tile.
+     */
+    private Bitmap obtain() {
+        if (!mFree.isEmpty()) {
+            return mFree.pop();
+        } else if (mTiles.size() < mCapacity) {
+            return Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        }
+
+        Iterator<Bitmap> it = mTiles.values().iterator();
+        Bitmap tile = it.next();
+        it.remove();
+        return tile;
+    }
+
+    /**
+     * Packs a tile's level into the top 6 bits of its key, and its column and row into 29 bits
+     * each, which is far more than a canvas can use.
+     */
+    private static long key(int level, int tx, int ty) {
+        return (long) (level - MIN_LEVEL) << 58 | (tx & 0x1fffffffL) << 29 | ty & 0x1fffffffL;
+    }
+
+    private static int levelOf(long key) {
+        return (int) (key >>> 58) + MIN_LEVEL;
+    }
+
+    private static int columnOf(long key) {
+        return (int) (key << 6 >> 35);
+    }
+
+    private static int rowOf(long key) {
+        return (int) (key << 35 >> 35);
+    }
+}
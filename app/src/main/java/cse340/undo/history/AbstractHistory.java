@@ -1,5 +1,8 @@
 package cse340.undo.history;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import cse340.undo.actions.AbstractReversibleAction;
 
 /**
@@ -8,6 +11,14 @@ import cse340.undo.actions.AbstractReversibleAction;
  * action should be returned.
  */
 public interface AbstractHistory {
+    /**
+     * Listener called when a done action is dropped from the history to make room, so it can never
+     * be undone again.
+     */
+    interface OnEvictedListener {
+        void onEvicted(AbstractReversibleAction action);
+    }
+
     /**
      * Add a reversible event to the history.
      *
@@ -47,4 +58,117 @@ public interface AbstractHistory {
      * @return True if can redo any actions, false otherwise.
      */
     boolean canRedo();
+
+    /**
+     * @return Number of actions which are currently done, i.e. how many times undo can be called.
+     */
+    int getPosition();
+
+    /**
+     * Looks at the action which undo would return after n more undos, without changing the
+     * history. peekUndo(0) is the action the next undo returns.
+     *
+     * @param n Number of actions to look past.
+     * @return The (n + 1)th most recently done action, or null if fewer actions are done.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    AbstractReversibleAction peekUndo(int n);
+
+    /**
+     * @return Maximum number of actions which can be undone, or Integer.MAX_VALUE if the number
+     *         is not limited. Wrappers answer for the history they wrap.
+     */
+    default int getCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sets the listener called when done actions are evicted. Histories which never evict done
+     * actions may ignore it.
+     *
+     * @param listener  Listener to call, or null to remove it.
+     */
+    default void setOnEvictedListener(OnEvictedListener listener) {
+    }
+
+    /**
+     * Does this history keep undone branches, so the branch methods can be used? Wrappers answer
+     * for the history they wrap.
+     *
+     * @return True if the history keeps branches, false otherwise.
+     */
+    default boolean supportsBranches() {
+        return false;
+    }
+
+    /**
+     * Lists every branch in the history, in the order in which their tips were added.
+     *
+     * @return List of branches (empty if the history is empty).
+     * @throws IllegalStateException if the history does not support branches.
+     * @see TreeHistory#getBranches()
+     */
+    default List<Branch> getBranches() {
+        throw new IllegalStateException("History does not support branches: " + this);
+    }
+
+    /**
+     * @return The branch which redo currently leads to.
+     * @throws IllegalStateException if the history does not support branches.
+     * @see TreeHistory#getCurrentBranch()
+     */
+    default Branch getCurrentBranch() {
+        throw new IllegalStateException("History does not support branches: " + this);
+    }
+
+    /**
+     * Points redo along the given branch. After the returned number of undo calls, redo walks
+     * down the branch.
+     *
+     * @param branch    Branch to select, from getBranches.
+     * @return Number of actions to undo to reach the common ancestor of the branches.
+     * @throws IllegalStateException if the history does not support branches.
+     * @see TreeHistory#selectBranch(Branch)
+     */
+    default int selectBranch(Branch branch) {
+        throw new IllegalStateException("History does not support branches: " + this);
+    }
+
+    /**
+     * Undoes up to n actions at once.
+     *
+     * @param n Number of actions to undo.
+     * @return The undone actions, most recently done first. Shorter than n if the history ran out.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    default List<AbstractReversibleAction> undo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        }
+
+        List<AbstractReversibleAction> actions = new ArrayList<>(Math.min(n, getPosition()));
+        for (AbstractReversibleAction action; actions.size() < n && (action = undo()) != null; ) {
+            actions.add(action);
+        }
+        return actions;
+    }
+
+    /**
+     * Redoes up to n actions at once.
+     *
+     * @param n Number of actions to redo.
+     * @return The redone actions, most recently undone first. Shorter than n if the history ran out.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    default List<AbstractReversibleAction> redo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        }
+
+        List<AbstractReversibleAction> actions = new ArrayList<>();
+        for (AbstractReversibleAction action; actions.size() < n && (action = redo()) != null; ) {
+            actions.add(action);
+        }
+        return actions;
+    }
 }
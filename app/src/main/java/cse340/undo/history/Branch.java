@@ -0,0 +1,51 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * A branch of a history which keeps undone work, identified by the last action on it (its tip).
+ * Branches are made by the history they belong to and can only be selected in it.
+ *
+ * @see AbstractHistory#supportsBranches()
+ * @see TreeHistory
+ */
+public final class Branch {
+    /** Node of the tip, in the tree of the TreeHistory which made this branch. */
+    final TreeHistory.Node mTip;
+
+    Branch(TreeHistory.Node tip) {
+        mTip = tip;
+    }
+
+    /**
+     * @return Number of actions from the start of the history to the tip of this branch.
+     */
+    public int getDepth() {
+        return mTip.mDepth;
+    }
+
+    /**
+     * @return The last action on this branch.
+     */
+    public AbstractReversibleAction getTip() {
+        return mTip.mAction;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Branch && ((Branch) o).mTip == mTip;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(mTip);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "Branch to " + mTip.mAction + " (" + mTip.mDepth + " actions)";
+    }
+}
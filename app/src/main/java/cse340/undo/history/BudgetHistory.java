@@ -0,0 +1,166 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Keeps a history of actions that have been done and undone using two stacks, like StackHistory,
+ * but limits the history by memory instead of by number of actions. Every action reports its
+ * estimated retained size, and the oldest actions are evicted until the total fits in the budget.
+ * The most recent action is always kept, even if it alone is larger than the budget.
+ *
+ * @see AbstractReversibleAction#getRetainedSize()
+ */
+public class BudgetHistory implements AbstractHistory {
+    /** Data structures for storing undo/redo events. */
+    private final Deque<AbstractReversibleAction> mUndoStack, mRedoStack;
+
+    /** Maximum number of bytes which should be retained by the actions in the history. */
+    private final long mBudget;
+
+    /** Sum of the retained sizes of every action in mUndoStack and mRedoStack. */
+    private long mSize;
+
+    /** Listener called when a done action is evicted (or null). */
+    private OnEvictedListener mEvictedListener;
+
+    /**
+     * Initializes empty undo/redo stacks.
+     *
+     * @param budget    Maximum number of bytes retained by the actions in the history.
+     * @throws IllegalArgumentException if budget is not positive.
+     */
+    public BudgetHistory(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Illegal budget: " + budget);
+        }
+        this.mBudget = budget;
+
+        mUndoStack = new ArrayDeque<>();
+        mRedoStack = new ArrayDeque<>();
+    }
+
+    /**
+     * Add a reversible event to the history, evicting the oldest events until it fits the budget.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        while (!mRedoStack.isEmpty()) {
+            mSize -= mRedoStack.pop().getRetainedSize();
+        }
+
+        mUndoStack.push(action);
+        mSize += action.getRetainedSize();
+
+        while (mSize > mBudget && mUndoStack.size() > 1) {
+            AbstractReversibleAction evicted = mUndoStack.removeLast();
+            mSize -= evicted.getRetainedSize();
+            if (mEvictedListener != null) {
+                mEvictedListener.onEvicted(evicted);
+            }
+        }
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        if (mUndoStack.isEmpty()) {
+            return null;
+        }
+
+        AbstractReversibleAction action = mUndoStack.pop();
+        mRedoStack.push(action);
+        return action;
+    }
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        if (mRedoStack.isEmpty()) {
+            return null;
+        }
+
+        AbstractReversibleAction action = mRedoStack.pop();
+        mUndoStack.push(action);
+        return action;
+    }
+
+    /**
+     * Clears the history.
+     */
+    @Override
+    public void clear() {
+        mUndoStack.clear();
+        mRedoStack.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return !mUndoStack.isEmpty();
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return !mRedoStack.isEmpty();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void setOnEvictedListener(OnEvictedListener listener) {
+        mEvictedListener = listener;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mUndoStack.size();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        } else if (n >= mUndoStack.size()) {
+            return null;
+        }
+
+        Iterator<AbstractReversibleAction> it = mUndoStack.iterator();
+        for (int i = 0; i < n; i++) {
+            it.next();
+        }
+        return it.next();
+    }
+
+    @NonNull
+    public String toString() {
+        return "Undo size: " + mUndoStack.size() + ", redo size: " + mRedoStack.size()
+                + ", bytes: " + mSize + "/" + mBudget;
+    }
+}
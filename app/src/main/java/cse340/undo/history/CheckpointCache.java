@@ -0,0 +1,176 @@
+package cse340.undo.history;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Paint;
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.app.DrawingView;
+
+/**
+ * Stores raster checkpoints of the drawing. A checkpoint is a compressed rendering of every stroke
+ * plus the paint, taken right after an action (its anchor) was done. Since the state after an action
+ * never changes while the action is in a history, restoring the checkpoint and replaying the actions
+ * after its anchor rebuilds any later state without replaying the whole history.
+ *
+ * Checkpoints are keyed by the id of their anchor, so they are found for copies of it re-created
+ * from storage too. Snapshots are rendered and compressed off the UI thread. The total compressed size is capped by a budget, and
+ * the least recently used checkpoints are evicted first.
+ */
+public class CheckpointCache implements Closeable {
+    /**
+     * A compressed rendering of the strokes and the paint at the time it was taken.
+     */
+    public static final class Checkpoint {
+        private final byte[] mImage;
+        private final Paint mPaint;
+
+        private Checkpoint(byte[] image, Paint paint) {
+            mImage = image;
+            mPaint = paint;
+        }
+
+        /**
+         * @return Newly decoded rendering of the strokes.
+         */
+        public Bitmap decode() {
+            return BitmapFactory.decodeByteArray(mImage, 0, mImage.length);
+        }
+
+        /**
+         * @return Paint at the time of the checkpoint. Must not be modified.
+         */
+        public Paint getPaint() {
+            return mPaint;
+        }
+    }
+
+    /** Checkpoints by anchor id, least recently used first. */
+    private final LinkedHashMap<Long, Checkpoint> mCheckpoints;
+
+    /** Ids of the anchors whose snapshots are still being compressed. */
+    private final Set<Long> mPending;
+
+    /** Maximum total size of the compressed checkpoints, in bytes. */
+    private final long mBudget;
+
+    /** Total size of the compressed checkpoints, in bytes. */
+    private long mSize;
+
+    /** Incremented by clear, so snapshots compressed before it are dropped. */
+    private int mGeneration;
+
+    /** Thread which compresses snapshots. */
+    private final ExecutorService mEncoder;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param budget    Maximum total size of the compressed checkpoints, in bytes.
+     * @throws IllegalArgumentException if budget is not positive.
+     */
+    public CheckpointCache(long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Illegal budget: " + budget);
+        }
+        this.mBudget = budget;
+
+        mCheckpoints = new LinkedHashMap<>(16, 0.75f, true);
+        mPending = new HashSet<>();
+        mEncoder = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Stores a checkpoint for the state right after the anchor was done. The snapshot is rendered
+     * and compressed in the background.
+     *
+     * @param anchor    Most recently done action at the time of the snapshot.
+     * @param snapshot  Every stroke at the time.
+     * @param paint Current paint, which is copied.
+     */
+    public synchronized void capture(AbstractReversibleAction anchor, DrawingView.Snapshot snapshot,
+                                     Paint paint) {
+        if (contains(anchor)) {
+            return;
+        }
+
+        Paint copy = new Paint(paint);
+        int generation = mGeneration;
+        long id = anchor.getId();
+        mPending.add(id);
+        mEncoder.execute(() -> {
+            Bitmap bitmap = snapshot.render();
+            ByteArrayOutputStream image = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, image);
+            bitmap.recycle();
+            put(id, new Checkpoint(image.toByteArray(), copy), generation);
+        });
+    }
+
+    /**
+     * @param anchor    Action to look for.
+     * @return True if a checkpoint for the anchor is stored or being compressed.
+     */
+    public synchronized boolean contains(AbstractReversibleAction anchor) {
+        long id = anchor.getId();
+        return mPending.contains(id) || mCheckpoints.containsKey(id);
+    }
+
+    /**
+     * @param anchor    Action to look for.
+     * @return The checkpoint taken right after the anchor was done, or null if there is none.
+     */
+    public synchronized Checkpoint get(AbstractReversibleAction anchor) {
+        return mCheckpoints.get(anchor.getId());
+    }
+
+    /**
+     * Removes every checkpoint.
+     */
+    public synchronized void clear() {
+        mCheckpoints.clear();
+        mPending.clear();
+        mSize = 0;
+        mGeneration++;
+    }
+
+    /**
+     * Removes every checkpoint and stops compressing snapshots.
+     */
+    @Override
+    public void close() {
+        mEncoder.shutdownNow();
+        clear();
+    }
+
+    private synchronized void put(long id, Checkpoint checkpoint, int generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+        mPending.remove(id);
+        mCheckpoints.put(id, checkpoint);
+        mSize += checkpoint.mImage.length;
+
+        Iterator<Map.Entry<Long, Checkpoint>> it = mCheckpoints.entrySet().iterator();
+        while (mSize > mBudget && it.hasNext()) {
+            mSize -= it.next().getValue().mImage.length;
+            it.remove();
+        }
+    }
+
+    @NonNull
+    public synchronized String toString() {
+        return "Checkpoints: " + mCheckpoints.size() + ", bytes: " + mSize + "/" + mBudget;
+    }
+}
@@ -0,0 +1,194 @@
+package cse340.undo.history;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Wraps another history and collapses runs of similar actions into one entry. When an action is
+ * added within the time window of the previously added one, and nothing was undone or redone in
+ * between, the previous action is asked to merge it. If it does, the new action is dropped and the
+ * wrapped history keeps a single entry which undoes the whole run at once.
+ *
+ * @see AbstractReversibleAction#mergeWith(AbstractReversibleAction)
+ */
+public class CoalescingHistory implements AbstractHistory {
+    /**
+     * Source of the time at which actions are added, so tests can control it.
+     */
+    public interface Clock {
+        /**
+         * @return Current time in milliseconds, which never goes backwards.
+         */
+        long uptimeMillis();
+    }
+
+    /** History which stores the merged actions. */
+    private final AbstractHistory mHistory;
+
+    /** Maximum time between two actions for them to be merged, in milliseconds. */
+    private final long mWindow;
+
+    /** Clock giving the time at which actions are added. */
+    private final Clock mClock;
+
+    /** Most recently added action, or null if it can't be merged into anymore. */
+    private AbstractReversibleAction mLast;
+
+    /** Time at which an action was last added or merged into mLast. */
+    private long mLastTime;
+
+    /**
+     * Wraps a history, timing actions by SystemClock.uptimeMillis.
+     *
+     * @param history   History which stores the merged actions.
+     * @param window    Maximum time between two actions for them to be merged, in milliseconds.
+     * @throws IllegalArgumentException if window is negative.
+     */
+    public CoalescingHistory(AbstractHistory history, long window) {
+        this(history, window, SystemClock::uptimeMillis);
+    }
+
+    /**
+     * Wraps a history.
+     *
+     * @param history   History which stores the merged actions.
+     * @param window    Maximum time between two actions for them to be merged, in milliseconds.
+     * @param clock Clock giving the time at which actions are added.
+     * @throws IllegalArgumentException if window is negative.
+     */
+    public CoalescingHistory(AbstractHistory history, long window, Clock clock) {
+        if (window < 0) {
+            throw new IllegalArgumentException("Illegal window: " + window);
+        }
+        this.mHistory = history;
+        this.mWindow = window;
+        this.mClock = clock;
+    }
+
+    /**
+     * Add a reversible event to the history, merging it into the previous one if possible.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        long now = mClock.uptimeMillis();
+        if (mLast != null && now - mLastTime <= mWindow && mLast.mergeWith(action)) {
+            mLastTime = now;
+            return;
+        }
+
+        mHistory.addAction(action);
+        mLast = action;
+        mLastTime = now;
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        mLast = null;
+        return mHistory.undo();
+    }
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        mLast = null;
+        return mHistory.redo();
+    }
+
+    /**
+     * Clears the history.
+     */
+    @Override
+    public void clear() {
+        mLast = null;
+        mHistory.clear();
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return mHistory.canUndo();
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return mHistory.canRedo();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mHistory.getPosition();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getCapacity() {
+        return mHistory.getCapacity();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        return mHistory.peekUndo(n);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void setOnEvictedListener(OnEvictedListener listener) {
+        mHistory.setOnEvictedListener(listener);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean supportsBranches() {
+        return mHistory.supportsBranches();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public List<Branch> getBranches() {
+        return mHistory.getBranches();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public Branch getCurrentBranch() {
+        return mHistory.getCurrentBranch();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int selectBranch(Branch branch) {
+        mLast = null;
+        return mHistory.selectBranch(branch);
+    }
+
+    @NonNull
+    public String toString() {
+        return mHistory.toString();
+    }
+}
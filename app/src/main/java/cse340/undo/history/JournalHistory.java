@@ -0,0 +1,790 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ActionCodec;
+import cse340.undo.app.DrawingView;
+
+/**
+ * Wraps another history and keeps a write-ahead journal of it on disk, so the drawing and its
+ * history survive the process being killed. Every operation is appended to the journal as a one
+ * byte op code, followed by an ActionCodec record for added actions.
+ *
+ * The calling thread only queues operations. A background thread encodes the records, batches,
+ * writes and syncs them, and keeps its own copy of the records of the actions in the history so it
+ * can compact the journal on its own. Recovery reads and decodes the journal on that thread too;
+ * only replaying the recovered actions into the view and the wrapped history runs on the UI thread.
+ *
+ * An action may still change after it was added, when a CoalescingHistory wrapping this one merges
+ * the next action into it. This is only possible until the next operation, so the most recently
+ * added action is only handed to the background thread then. Flushing journals it right away, and
+ * a REPLACE record is appended later if it was merged into afterwards.
+ *
+ * To keep recovery fast, the journal is periodically compacted into a snapshot of the document:
+ * the actions which fell out of the wrapped history but are still drawn, the actions in the
+ * history, and enough undos to restore the position. Dropped actions with a state key are kept as
+ * BASE records, only the last of several overwriting the same state. Dropped strokes and other
+ * actions without one are moved to an append-only base file next to the journal rather than kept
+ * in memory; the snapshot records how much of that file belongs to it.
+ *
+ * Histories with branches can't be journaled, since the journal only describes a single line of
+ * actions. Once an action which ActionCodec does not support is added, the journal can't describe
+ * the document anymore, so it keeps the last document it could and journals nothing else until it
+ * is opened again.
+ *
+ * @see ActionCodec
+ */
+public class JournalHistory implements AbstractHistory, Closeable {
+    /** First bytes of every journal file, followed by the format version. */
+    private static final int MAGIC = 0x554e444a;
+    private static final int VERSION = 4;
+
+    /** Op codes of the journal records. */
+    private static final byte OP_ADD = 1;
+    private static final byte OP_UNDO = 2;
+    private static final byte OP_REDO = 3;
+    private static final byte OP_CLEAR = 4;
+    private static final byte OP_REPLACE = 5;
+    private static final byte OP_BASE = 6;
+
+    /** Suffix of the base file, which is next to the journal. */
+    private static final String BASE_SUFFIX = ".base";
+
+    /** Time that records are batched for before being written, in milliseconds. */
+    private static final long WRITE_DELAY = 250;
+
+    /** Minimum number of records appended since the last compaction before compacting again. */
+    private static final int MIN_COMPACTION_RECORDS = 256;
+
+    private static final String LOG_TAG = "JournalHistory";
+
+    /**
+     * An action known to the journal, by its encoded record.
+     */
+    private static final class Entry {
+        /** ActionCodec record of the action. */
+        byte[] mRecord;
+
+        /** State key of the action, or null if it has none. */
+        final Object mKey;
+
+        Entry(byte[] record, Object key) {
+            mRecord = record;
+            mKey = key;
+        }
+    }
+
+    /**
+     * An operation read from the journal, to be replayed on the UI thread.
+     */
+    private static final class Recovered {
+        /** Op code of the operation. */
+        final byte mOp;
+
+        /** Action of an ADD or BASE record, or null. */
+        AbstractReversibleAction mAction;
+
+        Recovered(byte op, AbstractReversibleAction action) {
+            mOp = op;
+            mAction = action;
+        }
+    }
+
+    /** History which stores the actions. */
+    private final AbstractHistory mHistory;
+
+    /** Thread which encodes, writes and compacts the journal. */
+    private final ScheduledExecutorService mWriter;
+
+    /** Whether open and close were called. */
+    private boolean mOpened, mClosed;
+
+    /** Whether journaling stopped because an action could not be encoded. */
+    private boolean mSuspended;
+
+    /** Most recently added action while it can still be merged into, or null. */
+    private AbstractReversibleAction mTop;
+
+    /** Number of actions evicted from mHistory when mTop was added. */
+    private int mTopEvicted;
+
+    /** Whether flush already handed mTop to mWriter. */
+    private boolean mTopJournaled;
+
+    // The fields below are only used by mWriter.
+
+    /** Journal file, or null until the recovered actions are replayed. */
+    private File mFile;
+
+    /** Entries of the actions in mHistory, oldest first. The first mCursor are done. */
+    private final List<Entry> mLive;
+    private int mCursor;
+
+    /** Entry of the most recently added action, which REPLACE records apply to. */
+    private Entry mTopEntry;
+
+    /** Entries of dropped actions with a state key, by state key. */
+    private final LinkedHashMap<Object, Entry> mKeyedBase;
+
+    /** Records of dropped actions without a state key, which are not in the base file yet. */
+    private final List<byte[]> mNewBase;
+
+    /** Length of the part of the base file which belongs to the current snapshot. */
+    private long mBaseLength;
+
+    /** Number of records appended since the last compaction. */
+    private int mRecordCount;
+
+    /** Records waiting to be written, and whether a write is scheduled. */
+    private final ByteArrayOutputStream mPending;
+    private boolean mWriteScheduled;
+
+    /** Reusable buffers used to encode records. */
+    private final ByteArrayOutputStream mRecord;
+    private final DataOutputStream mRecordOut;
+
+    /** Open journal file, or null. */
+    private FileOutputStream mOut;
+
+    /**
+     * Wraps a history. Nothing is journaled until open is called.
+     *
+     * @param history   History which stores the actions.
+     * @throws IllegalArgumentException if the history supports branches.
+     */
+    public JournalHistory(AbstractHistory history) {
+        if (history.supportsBranches()) {
+            throw new IllegalArgumentException("Cannot journal a history with branches: " + history);
+        }
+        this.mHistory = history;
+
+        mLive = new ArrayList<>();
+        mKeyedBase = new LinkedHashMap<>();
+        mNewBase = new ArrayList<>();
+        mPending = new ByteArrayOutputStream();
+        mRecord = new ByteArrayOutputStream();
+        mRecordOut = new DataOutputStream(mRecord);
+        mWriter = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * Recovers the drawing and history from the journal file, if it exists, and starts journaling
+     * to it. The wrapped history should be empty. The journal is read and decoded in the
+     * background, then the recovered actions are done on the view in one batch on the UI thread
+     * and onOpened is called. The history must not be used before that. A truncated or corrupt
+     * tail, e.g. from a crash during a write, is ignored.
+     *
+     * @param file  Journal file, e.g. in the app's files directory.
+     * @param view  DrawingView in which to redo the recovered actions.
+     * @param onOpened  Called on the UI thread once the recovered actions are done.
+     * @throws IllegalStateException if the journal is already open.
+     */
+    public void open(File file, DrawingView view, Runnable onOpened) {
+        if (mOpened) {
+            throw new IllegalStateException("Journal already open: " + file);
+        }
+        mOpened = true;
+
+        mWriter.execute(() -> {
+            List<AbstractReversibleAction> base = new ArrayList<>();
+            List<Recovered> ops = new ArrayList<>();
+            long baseLength = file.exists() ? read(file, base, ops) : 0;
+
+            view.post(() -> {
+                if (mClosed) {
+                    return;
+                }
+                replay(base, ops, view);
+                mWriter.execute(() -> start(file, baseLength));
+                onOpened.run();
+            });
+        });
+    }
+
+    /**
+     * Add a reversible event to the history and journal it. If ActionCodec does not support the
+     * action, journaling stops instead.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        if (!mSuspended && !ActionCodec.canEncode(action)) {
+            Log.w(LOG_TAG, "Cannot journal " + action + ", journaling stopped");
+            seal();
+            mWriter.execute(this::write);
+            mSuspended = true;
+        }
+        if (mSuspended) {
+            mHistory.addAction(action);
+            return;
+        }
+
+        seal();
+        int position = mHistory.getPosition();
+        mHistory.addAction(action);
+
+        // Journaled by the next operation, once it can't be merged into anymore.
+        mTop = action;
+        mTopEvicted = position + 1 - mHistory.getPosition();
+        mTopJournaled = false;
+    }
+
+    /**
+     * Undoes an action and journals it.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        seal();
+        AbstractReversibleAction action = mHistory.undo();
+        if (action != null && !mSuspended) {
+            mWriter.execute(this::writeUndo);
+        }
+        return action;
+    }
+
+    /**
+     * Redoes an action and journals it.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        seal();
+        AbstractReversibleAction action = mHistory.redo();
+        if (action != null && !mSuspended) {
+            mWriter.execute(this::writeRedo);
+        }
+        return action;
+    }
+
+    /**
+     * Clears the history and journals it. The done actions stay in the drawing.
+     */
+    @Override
+    public void clear() {
+        seal();
+        mHistory.clear();
+        if (!mSuspended) {
+            mWriter.execute(this::writeClear);
+        }
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return mHistory.canUndo();
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return mHistory.canRedo();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mHistory.getPosition();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getCapacity() {
+        return mHistory.getCapacity();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        return mHistory.peekUndo(n);
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void setOnEvictedListener(OnEvictedListener listener) {
+        mHistory.setOnEvictedListener(listener);
+    }
+
+    /**
+     * Journals the most recently added action as it is now and writes everything journaled so far
+     * right away, e.g. before the app goes to the background.
+     */
+    public void flush() {
+        if (mTop != null) {
+            // It may still be merged into, so encode it here rather than racing with the merge.
+            AbstractReversibleAction top = mTop;
+            byte[] record = toRecord(top);
+            if (mTopJournaled) {
+                mWriter.execute(() -> writeReplace(record));
+            } else {
+                int evicted = mTopEvicted;
+                mWriter.execute(() -> writeAdd(top, record, evicted));
+                mTopJournaled = true;
+            }
+        }
+        mWriter.execute(this::write);
+    }
+
+    /**
+     * Writes everything journaled so far and stops the writer thread. The history must not be used
+     * afterwards. Closing it again has no effect.
+     */
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        flush();
+        mClosed = true;
+        mWriter.shutdown();
+        try {
+            mWriter.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands the most recently added action to mWriter, now that it can't change anymore.
+     */
+    private void seal() {
+        if (mTop == null) {
+            return;
+        }
+
+        AbstractReversibleAction top = mTop;
+        mTop = null;
+        if (mTopJournaled) {
+            mWriter.execute(() -> writeReplace(encode(top)));
+        } else {
+            int evicted = mTopEvicted;
+            mWriter.execute(() -> writeAdd(top, null, evicted));
+        }
+    }
+
+    /**
+     * Replays recovered operations into the view and the wrapped history. Runs on the UI thread.
+     */
+    private void replay(List<AbstractReversibleAction> base, List<Recovered> ops, DrawingView view) {
+        view.beginBatch();
+        try {
+            for (AbstractReversibleAction action : base) {
+                action.doAction(view);
+                action.flatten(view);
+            }
+
+            for (Recovered op : ops) {
+                AbstractReversibleAction action = op.mAction;
+                switch (op.mOp) {
+                    case OP_ADD:
+                        action.doAction(view);
+                        addAction(action);
+                        break;
+                    case OP_BASE:
+                        action.doAction(view);
+                        action.flatten(view);
+                        mWriter.execute(() -> addBase(new Entry(encode(action), action.getStateKey())));
+                        break;
+                    case OP_UNDO:
+                        AbstractReversibleAction undone = undo();
+                        if (undone == null) {
+                            throw new IllegalStateException("Nothing to undo");
+                        }
+                        undone.undoAction(view);
+                        break;
+                    case OP_REDO:
+                        AbstractReversibleAction redone = redo();
+                        if (redone == null) {
+                            throw new IllegalStateException("Nothing to redo");
+                        }
+                        redone.doAction(view);
+                        break;
+                    case OP_CLEAR:
+                        clear();
+                        break;
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, "Ignoring inconsistent journal tail", e);
+        } finally {
+            view.endBatch();
+        }
+        seal();
+    }
+
+    /**
+     * Starts journaling to the file, replacing the recovered journal with a snapshot. Runs on
+     * mWriter.
+     */
+    private void start(File file, long baseLength) {
+        mFile = file;
+        mBaseLength = baseLength;
+        try (RandomAccessFile base = new RandomAccessFile(baseFile(), "rw")) {
+            // Drop anything appended after the recovered snapshot was written.
+            base.setLength(baseLength);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not truncate " + baseFile(), e);
+        }
+        compact();
+    }
+
+    /**
+     * Journals an added action. Runs on mWriter, like the other write methods.
+     *
+     * @param action    Action which was added.
+     * @param record    Record of the action, or null to encode it here.
+     * @param evicted   Number of actions evicted from mHistory when it was added.
+     */
+    private void writeAdd(AbstractReversibleAction action, byte[] record, int evicted) {
+        Entry entry = new Entry(record != null ? record : encode(action), action.getStateKey());
+        append(OP_ADD, entry.mRecord);
+
+        // The redo branch is gone, and the oldest actions may have been evicted.
+        mLive.subList(mCursor, mLive.size()).clear();
+        mLive.add(entry);
+        mCursor++;
+        for (int i = 0; i < evicted; i++) {
+            addBase(mLive.get(i));
+        }
+        mLive.subList(0, evicted).clear();
+        mCursor -= evicted;
+
+        mTopEntry = entry;
+        commit();
+    }
+
+    /**
+     * Journals a REPLACE record if the most recently added action changed since it was journaled.
+     *
+     * @param record    Current record of the action.
+     */
+    private void writeReplace(byte[] record) {
+        if (!Arrays.equals(record, mTopEntry.mRecord)) {
+            mTopEntry.mRecord = record;
+            append(OP_REPLACE, record);
+            commit();
+        }
+    }
+
+    private void writeUndo() {
+        append(OP_UNDO, null);
+        mCursor--;
+        commit();
+    }
+
+    private void writeRedo() {
+        append(OP_REDO, null);
+        mCursor++;
+        commit();
+    }
+
+    private void writeClear() {
+        append(OP_CLEAR, null);
+        for (Entry entry : mLive.subList(0, mCursor)) {
+            addBase(entry);
+        }
+        mLive.clear();
+        mCursor = 0;
+        commit();
+    }
+
+    /**
+     * Adds an evicted or cleared action to the base of the document. An action with a state key
+     * drops any earlier one with the same key; the others wait for the base file.
+     */
+    private void addBase(Entry entry) {
+        if (entry.mKey == null) {
+            mNewBase.add(entry.mRecord);
+        } else {
+            mKeyedBase.remove(entry.mKey);
+            mKeyedBase.put(entry.mKey, entry);
+        }
+    }
+
+    private byte[] encode(AbstractReversibleAction action) {
+        mRecord.reset();
+        try {
+            ActionCodec.write(action, mRecordOut);
+            mRecordOut.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode " + action, e);
+        }
+        return mRecord.toByteArray();
+    }
+
+    /**
+     * Encodes an action without the buffers owned by mWriter.
+     */
+    private static byte[] toRecord(AbstractReversibleAction action) {
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try {
+            ActionCodec.write(action, new DataOutputStream(record));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode " + action, e);
+        }
+        return record.toByteArray();
+    }
+
+    /**
+     * Queues a record to be written by the next commit.
+     *
+     * @param op    Op code of the record.
+     * @param record    ActionCodec record following the op code, or null if there is none.
+     */
+    private void append(byte op, byte[] record) {
+        if (mFile == null) {
+            return;
+        }
+
+        mPending.write(op);
+        if (record != null) {
+            mPending.write(record, 0, record.length);
+        }
+        mRecordCount++;
+    }
+
+    /**
+     * Schedules the queued records to be written, or compacts the journal instead if it grew much
+     * longer than the snapshot would be. Called after every operation.
+     */
+    private void commit() {
+        if (mFile == null) {
+            return;
+        }
+
+        if (mRecordCount >= MIN_COMPACTION_RECORDS && mRecordCount > 2 * (mLive.size() + mKeyedBase.size())) {
+            compact();
+        } else if (!mWriteScheduled) {
+            mWriteScheduled = true;
+            mWriter.schedule(this::write, WRITE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Appends the new base records to the base file and replaces the journal with a snapshot of
+     * the document and history. Any queued records are dropped, since the snapshot covers them.
+     */
+    private void compact() {
+        try {
+            if (!mNewBase.isEmpty()) {
+                try (RandomAccessFile base = new RandomAccessFile(baseFile(), "rw")) {
+                    // Overwrite whatever a failed attempt left after the valid part.
+                    base.seek(mBaseLength);
+                    for (byte[] record : mNewBase) {
+                        base.write(record);
+                    }
+                    base.setLength(base.getFilePointer());
+                    base.getFD().sync();
+                    mBaseLength = base.getFilePointer();
+                }
+                mNewBase.clear();
+            }
+
+            // Write the snapshot next to the journal, then swap it in atomically.
+            File temp = new File(mFile.getPath() + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(mBaseLength);
+                for (Entry entry : mKeyedBase.values()) {
+                    out.writeByte(OP_BASE);
+                    out.write(entry.mRecord);
+                }
+                for (Entry entry : mLive) {
+                    out.writeByte(OP_ADD);
+                    out.write(entry.mRecord);
+                }
+                for (int i = mCursor; i < mLive.size(); i++) {
+                    out.writeByte(OP_UNDO);
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            if (mOut != null) {
+                mOut.close();
+                mOut = null;
+            }
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Could not replace " + mFile);
+            }
+
+            mPending.reset();
+            mRecordCount = 0;
+        } catch (IOException e) {
+            // The old journal plus the queued records still describe the document.
+            Log.e(LOG_TAG, "Could not compact journal " + mFile, e);
+            write();
+        }
+    }
+
+    /**
+     * Writes and syncs the queued records.
+     */
+    private void write() {
+        mWriteScheduled = false;
+        if (mFile == null || mPending.size() == 0) {
+            return;
+        }
+
+        try {
+            if (mOut == null) {
+                mOut = new FileOutputStream(mFile, true);
+            }
+            mPending.writeTo(mOut);
+            mOut.getFD().sync();
+            mPending.reset();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not write journal " + mFile, e);
+        }
+    }
+
+    private File baseFile() {
+        return new File(mFile.getPath() + BASE_SUFFIX);
+    }
+
+    /**
+     * Reads and decodes the journal and the part of the base file which belongs to it. Runs on
+     * mWriter.
+     *
+     * @param file  Journal file.
+     * @param base  Receives the actions in the base file.
+     * @param ops   Receives the operations in the journal, with REPLACE records already applied.
+     * @return Length of the part of the base file which belongs to the journal.
+     */
+    private static long read(File file, List<AbstractReversibleAction> base, List<Recovered> ops) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a journal or unsupported version: " + file);
+            }
+            long baseLength = in.readLong();
+            readBase(new File(file.getPath() + BASE_SUFFIX), baseLength, base);
+
+            // An added action may be replaced by the records right after it.
+            Recovered added = null;
+            try {
+                while (true) {
+                    byte op = in.readByte();
+                    switch (op) {
+                        case OP_REPLACE:
+                            if (added == null) {
+                                throw new IOException("Nothing to replace");
+                            }
+                            added.mAction = ActionCodec.read(in, false);
+                            break;
+                        case OP_ADD:
+                            ops.add(added = new Recovered(op, ActionCodec.read(in, false)));
+                            break;
+                        case OP_BASE:
+                            ops.add(new Recovered(op, ActionCodec.read(in, false)));
+                            added = null;
+                            break;
+                        case OP_UNDO:
+                        case OP_REDO:
+                        case OP_CLEAR:
+                            ops.add(new Recovered(op, null));
+                            added = null;
+                            break;
+                        default:
+                            throw new IOException("Unknown op: " + op);
+                    }
+                }
+            } catch (EOFException e) {
+                // End of the journal, or a record cut short by a crash.
+            } catch (IOException | RuntimeException e) {
+                Log.e(LOG_TAG, "Ignoring corrupt journal tail in " + file, e);
+            }
+            return baseLength;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not recover journal " + file, e);
+            base.clear();
+            ops.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the records in the first length bytes of a base file.
+     */
+    private static void readBase(File file, long length, List<AbstractReversibleAction> base)
+            throws IOException {
+        if (length == 0) {
+            return;
+        }
+
+        try (CountingInputStream counter = new CountingInputStream(new FileInputStream(file))) {
+            DataInputStream in = new DataInputStream(counter);
+            while (counter.mCount < length) {
+                base.add(ActionCodec.read(in, false));
+            }
+        }
+    }
+
+    /**
+     * Buffered stream which counts the bytes read from it.
+     */
+    private static final class CountingInputStream extends BufferedInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public synchronized int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                mCount += n;
+            }
+            return n;
+        }
+    }
+
+    @NonNull
+    public String toString() {
+        return mHistory + (mOpened && !mSuspended ? ", journaled" : ", not journaled");
+    }
+}
@@ -0,0 +1,176 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Keeps a history of actions that have been done and undone in a fixed-size circular array. The
+ * done actions occupy the mUndoSize slots starting at mStart (oldest first), and the undone actions
+ * occupy the mRedoSize slots directly after them (most recently undone first). When the array is
+ * full, adding an action overwrites the oldest one by advancing mStart, so eviction is O(1) and no
+ * memory is allocated after construction.
+ */
+public class RingHistory implements AbstractHistory {
+    /** Circular storage for undo/redo events. Its length is the capacity of the history. */
+    private final AbstractReversibleAction[] mActions;
+
+    /** Index in mActions of the oldest action in the history. */
+    private int mStart;
+
+    /** Number of actions which can be undone and redone. mUndoSize + mRedoSize <= capacity. */
+    private int mUndoSize, mRedoSize;
+
+    /** Listener called when a done action is evicted (or null). */
+    private OnEvictedListener mEvictedListener;
+
+    /**
+     * Initializes an empty history.
+     *
+     * @param capacity  Maximum number of actions which can be undone or redone.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public RingHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        }
+
+        mActions = new AbstractReversibleAction[capacity];
+    }
+
+    /**
+     * Add a reversible event to the history.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        // Drop the redo branch so the undone actions can be garbage collected.
+        for (int i = 0; i < mRedoSize; i++) {
+            mActions[slot(mUndoSize + i)] = null;
+        }
+        mRedoSize = 0;
+
+        if (mUndoSize == mActions.length) {
+            // Full, so overwrite the oldest action and make the next one the oldest.
+            AbstractReversibleAction evicted = mActions[mStart];
+            mActions[mStart] = action;
+            mStart = slot(1);
+            if (mEvictedListener != null) {
+                mEvictedListener.onEvicted(evicted);
+            }
+        } else {
+            mActions[slot(mUndoSize)] = action;
+            mUndoSize++;
+        }
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        if (mUndoSize == 0) {
+            return null;
+        }
+
+        mUndoSize--;
+        mRedoSize++;
+        return mActions[slot(mUndoSize)];
+    }
+
+    /**
+     * Redoes an action.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        if (mRedoSize == 0) {
+            return null;
+        }
+
+        AbstractReversibleAction action = mActions[slot(mUndoSize)];
+        mUndoSize++;
+        mRedoSize--;
+        return action;
+    }
+
+    /**
+     * Clears the history.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(mActions, null);
+        mStart = 0;
+        mUndoSize = 0;
+        mRedoSize = 0;
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return mUndoSize > 0;
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return mRedoSize > 0;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public void setOnEvictedListener(OnEvictedListener listener) {
+        mEvictedListener = listener;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mUndoSize;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getCapacity() {
+        return mActions.length;
+    }
+
+    /**
+     * Maps an offset from the oldest action to an index in mActions.
+     *
+     * @param offset    Offset from mStart, in [0, capacity].
+     * @return Index in mActions.
+     */
+    private int slot(int offset) {
+        int index = mStart + offset;
+        return index >= mActions.length ? index - mActions.length : index;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        }
+        return n < mUndoSize ? mActions[slot(mUndoSize - 1 - n)] : null;
+    }
+
+    @NonNull
+    public String toString() {
+        return "Undo size: " + mUndoSize + ", redo size: " + mRedoSize;
+    }
+}
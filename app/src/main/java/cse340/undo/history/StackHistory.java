@@ -2,8 +2,9 @@ package cse340.undo.history;
 
 import android.support.annotation.NonNull;
 
+import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Iterator;
 
 import cse340.undo.actions.AbstractReversibleAction;
 
@@ -19,6 +20,9 @@ public class StackHistory implements AbstractHistory {
     /** Should always be true that mUndoStack.size() + mRedoStack.size() <= capacity. */
     private final int mCapacity;
 
+    /** Listener called when a done action is evicted (or null). */
+    private OnEvictedListener mEvictedListener;
+
     /**
      * Initializes empty undo/redo stacks.
      *
@@ -31,8 +35,8 @@ public class StackHistory implements AbstractHistory {
         }
         this.mCapacity = capacity;
 
-        mUndoStack = new LinkedList<>();
-        mRedoStack = new LinkedList<>();
+        mUndoStack = new ArrayDeque<>();
+        mRedoStack = new ArrayDeque<>();
     }
 
     /**
@@ -48,21 +52,12 @@ public class StackHistory implements AbstractHistory {
         // 3. Clear out the redo stack (when we do a new action we have to delete all the redo
         // actions to ensure consistency)
 
-        int index = 0;
-        if(mUndoStack.size() == mCapacity) {
-            Deque<AbstractReversibleAction> tempStorage = new LinkedList<>();
-            while(!mUndoStack.isEmpty()) {
-                AbstractReversibleAction tempAction = mUndoStack.pop();
-                if(index != mCapacity-1) {
-                    tempStorage.push(tempAction);
-                }
-                index++;
-            }
-
-            while(!tempStorage.isEmpty()) {
-                mUndoStack.push(tempStorage.pop());
+        if (mUndoStack.size() == mCapacity) {
+            // The oldest action is at the bottom of the stack.
+            AbstractReversibleAction evicted = mUndoStack.removeLast();
+            if (mEvictedListener != null) {
+                mEvictedListener.onEvicted(evicted);
             }
-
         }
         mUndoStack.push(action);
         mRedoStack.clear();
@@ -140,6 +135,40 @@ public class StackHistory implements AbstractHistory {
     @Override
     public boolean canRedo() {return !mRedoStack.isEmpty();}
 
+    /** @inheritDoc */
+    @Override
+    public void setOnEvictedListener(OnEvictedListener listener) {
+        mEvictedListener = listener;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mUndoStack.size();
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        } else if (n >= mUndoStack.size()) {
+            return null;
+        }
+
+        Iterator<AbstractReversibleAction> it = mUndoStack.iterator();
+        for (int i = 0; i < n; i++) {
+            it.next();
+        }
+        return it.next();
+    }
+
     @NonNull
     public String toString() {
         return  "Undo size: " + mUndoStack.size() + ", redo size: " + mRedoStack.size();
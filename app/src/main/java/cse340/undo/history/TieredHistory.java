@@ -0,0 +1,425 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ActionCodec;
+import cse340.undo.actions.RecordInput;
+
+/**
+ * Keeps an effectively unlimited history of actions by keeping only a window of them on the heap.
+ * Every action has an index in the history; the first mCursor actions are done and the rest are
+ * undone. Actions outside the in-memory window are spilled to an append-only file with ActionCodec
+ * and decoded straight from a memory-mapped buffer when undo or redo reaches them. Re-created
+ * actions keep the id of the original, so caches keyed by it still find them.
+ *
+ * The file holds the records of the actions [0, mFileCount) in order, and every action outside the
+ * window is in the file. Records stay in the file after they are paged back in, so actions can be
+ * dropped from the window again for free. The file is truncated when the history is cleared or a
+ * new action invalidates the redo branch.
+ *
+ * Every action added to this history must be supported by ActionCodec.
+ *
+ * @see ActionCodec
+ */
+public class TieredHistory implements AbstractHistory, Closeable {
+    /** File that spilled actions are appended to. */
+    private final File mFile;
+
+    /** Open spill file, or null if nothing has been spilled yet. */
+    private RandomAccessFile mRaf;
+    private FileChannel mChannel;
+
+    /** Read-only mapping of the spill file. May be shorter than the file, or null if not mapped. */
+    private MappedByteBuffer mMapped;
+
+    /** Start of the record of each spilled action in the file. Has mFileCount valid entries. */
+    private long[] mOffsets;
+
+    /** Number of actions whose records are in the file. */
+    private int mFileCount;
+
+    /** Length of the valid part of the file. */
+    private long mFileLength;
+
+    /** Actions kept on the heap, which are the actions [mLow, mLow + mWindow.size()). */
+    private final Deque<AbstractReversibleAction> mWindow;
+    private int mLow;
+
+    /** Maximum number of actions in mWindow. */
+    private final int mWindowCapacity;
+
+    /** Total number of actions in the history. */
+    private int mSize;
+
+    /** Number of actions which are done. Undo returns action mCursor - 1, redo action mCursor. */
+    private int mCursor;
+
+    /** Reusable buffer used to encode records before appending them. */
+    private final RecordBuffer mRecord;
+    private final DataOutputStream mRecordOut;
+
+    /**
+     * Initializes an empty history. The spill file is only created once something is spilled.
+     *
+     * @param file  File to spill actions to, e.g. in the app's cache directory.
+     * @param windowCapacity    Maximum number of actions kept on the heap.
+     * @throws IllegalArgumentException if windowCapacity is not positive.
+     */
+    public TieredHistory(File file, int windowCapacity) {
+        if (windowCapacity <= 0) {
+            throw new IllegalArgumentException("Illegal capacity: " + windowCapacity);
+        }
+        this.mFile = file;
+        this.mWindowCapacity = windowCapacity;
+
+        mWindow = new ArrayDeque<>(windowCapacity + 1);
+        mOffsets = new long[64];
+        mRecord = new RecordBuffer();
+        mRecordOut = new DataOutputStream(mRecord);
+    }
+
+    /**
+     * Add a reversible event to the history, dropping the redo branch.
+     *
+     * @param action    Reversible action to be added.
+     * @throws IllegalArgumentException if the action is not supported by ActionCodec.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        if (!ActionCodec.canEncode(action)) {
+            throw new IllegalArgumentException("Cannot spill action: " + action);
+        }
+
+        truncate(mCursor);
+
+        if (mWindow.isEmpty()) {
+            mLow = mSize;
+        }
+        mWindow.addLast(action);
+        mSize++;
+        mCursor++;
+        trimWindow();
+    }
+
+    /**
+     * Undoes an action, reading it from the spill file if needed.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        if (mCursor == 0) {
+            return null;
+        }
+
+        AbstractReversibleAction action = get(mCursor - 1);
+        mCursor--;
+        trimWindow();
+        return action;
+    }
+
+    /**
+     * Redoes an action, reading it from the spill file if needed.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        if (mCursor == mSize) {
+            return null;
+        }
+
+        AbstractReversibleAction action = get(mCursor);
+        mCursor++;
+        trimWindow();
+        return action;
+    }
+
+    /**
+     * Clears the history and truncates the spill file.
+     */
+    @Override
+    public void clear() {
+        mCursor = 0;
+        truncate(0);
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return mCursor > 0;
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return mCursor < mSize;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mCursor;
+    }
+
+    /**
+     * Looks at an action without paging it into the window. Actions outside the window are
+     * re-created from the spill file for each call.
+     *
+     * @param n Number of actions to look past.
+     * @return The (n + 1)th most recently done action, or null if fewer actions are done.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        } else if (n >= mCursor) {
+            return null;
+        }
+
+        int index = mCursor - 1 - n;
+        return index >= mLow && index < mLow + mWindow.size() ? find(index) : read(index);
+    }
+
+    /**
+     * Closes and deletes the spill file. The history must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        mWindow.clear();
+        mMapped = null;
+        if (mRaf != null) {
+            try {
+                mRaf.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do, the file is deleted anyway.
+            }
+            mRaf = null;
+            mChannel = null;
+        }
+        mFile.delete();
+    }
+
+    /**
+     * Returns the action at the given index, paging it into the window if needed.
+     *
+     * @param index Index of the action, in [0, mSize).
+     * @return The action at index.
+     */
+    private AbstractReversibleAction get(int index) {
+        int high = mLow + mWindow.size();
+        if (index == mLow - 1) {
+            mWindow.addFirst(read(index));
+            mLow--;
+            return mWindow.peekFirst();
+        } else if (index == high && !mWindow.isEmpty()) {
+            mWindow.addLast(read(index));
+            return mWindow.peekLast();
+        } else if (index < mLow || index >= high) {
+            // Not adjacent to the window, so start a new window at index.
+            spillThrough(high);
+            mWindow.clear();
+            mWindow.addLast(read(index));
+            mLow = index;
+            return mWindow.peekFirst();
+        }
+        return find(index);
+    }
+
+    /**
+     * Returns an action in the window, walking from whichever end is closer.
+     *
+     * @param index Index of the action, in [mLow, mLow + mWindow.size()).
+     * @return The action at index.
+     */
+    private AbstractReversibleAction find(int index) {
+        int high = mLow + mWindow.size();
+        if (index - mLow <= high - 1 - index) {
+            int i = mLow;
+            for (AbstractReversibleAction action : mWindow) {
+                if (i++ == index) {
+                    return action;
+                }
+            }
+        } else {
+            int i = high - 1;
+            for (Iterator<AbstractReversibleAction> it = mWindow.descendingIterator(); it.hasNext(); ) {
+                AbstractReversibleAction action = it.next();
+                if (i-- == index) {
+                    return action;
+                }
+            }
+        }
+        throw new IllegalStateException("Action " + index + " not in window");
+    }
+
+    /**
+     * Shrinks the window to its capacity by dropping the action furthest from the cursor,
+     * spilling it first if it is not in the file yet.
+     */
+    private void trimWindow() {
+        while (mWindow.size() > mWindowCapacity) {
+            int high = mLow + mWindow.size();
+            if (mCursor - mLow > high - mCursor) {
+                spillThrough(mLow + 1);
+                mWindow.removeFirst();
+                mLow++;
+            } else {
+                spillThrough(high);
+                mWindow.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Appends the records of the actions [mFileCount, end) to the file. These must be in the
+     * window, which holds as long as end is at most the end of the window.
+     *
+     * @param end   Index after the last action that must be in the file.
+     */
+    private void spillThrough(int end) {
+        if (mFileCount >= end) {
+            return;
+        }
+
+        try {
+            open();
+            int i = mLow;
+            for (AbstractReversibleAction action : mWindow) {
+                if (i >= end) {
+                    break;
+                } else if (i >= mFileCount) {
+                    append(action);
+                }
+                i++;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not spill history to " + mFile, e);
+        }
+    }
+
+    /**
+     * Appends the record of the action at index mFileCount to the file.
+     */
+    private void append(AbstractReversibleAction action) throws IOException {
+        mRecord.reset();
+        ActionCodec.write(action, mRecordOut);
+        mRecordOut.flush();
+
+        if (mFileCount == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mOffsets.length * 2);
+        }
+        mOffsets[mFileCount++] = mFileLength;
+
+        mRaf.seek(mFileLength);
+        mRaf.write(mRecord.buffer(), 0, mRecord.size());
+        mFileLength += mRecord.size();
+    }
+
+    /**
+     * Reads the action at the given index from the file.
+     *
+     * @param index Index of the action, in [0, mFileCount).
+     * @return The re-created action.
+     */
+    private AbstractReversibleAction read(int index) {
+        if (index >= mFileCount) {
+            throw new IllegalStateException("Action " + index + " was never spilled");
+        }
+
+        long start = mOffsets[index];
+        long end = index + 1 < mFileCount ? mOffsets[index + 1] : mFileLength;
+        try {
+            if (mMapped == null || mMapped.capacity() < end) {
+                // Map everything written so far, so reading nearby records doesn't remap.
+                mMapped = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mFileLength);
+            }
+
+            mMapped.position((int) start);
+            AbstractReversibleAction action = ActionCodec.read(RecordInput.of(mMapped), index < mCursor);
+            if (mMapped.position() != end) {
+                throw new IOException("Record " + index + " has the wrong length");
+            }
+            return action;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read history from " + mFile, e);
+        }
+    }
+
+    /**
+     * Drops the actions [size, mSize) from the window and the file.
+     *
+     * @param size  New size of the history, at least mCursor.
+     */
+    private void truncate(int size) {
+        if (size >= mSize) {
+            return;
+        }
+
+        while (!mWindow.isEmpty() && mLow + mWindow.size() > size) {
+            mWindow.removeLast();
+        }
+
+        if (mFileCount > size) {
+            mFileCount = size;
+            mFileLength = mOffsets[size];
+            mMapped = null;
+            try {
+                mChannel.truncate(mFileLength);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not truncate " + mFile, e);
+            }
+        }
+
+        mSize = size;
+    }
+
+    /**
+     * Opens the spill file if it is not open yet, discarding any old contents.
+     */
+    private void open() throws IOException {
+        if (mRaf == null) {
+            mRaf = new RandomAccessFile(mFile, "rw");
+            mRaf.setLength(0);
+            mChannel = mRaf.getChannel();
+        }
+    }
+
+    /**
+     * Byte array stream which exposes its buffer, so records can be written without copying.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    @NonNull
+    public String toString() {
+        return "Undo size: " + mCursor + ", redo size: " + (mSize - mCursor)
+                + ", in memory: " + mWindow.size() + ", spilled: " + mFileCount;
+    }
+}
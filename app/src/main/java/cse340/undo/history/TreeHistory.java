@@ -0,0 +1,270 @@
+package cse340.undo.history;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Keeps a history of actions as a tree, so undone work is never lost. Every node holds one action
+ * and its parent is the action done before it; the root holds no action. Adding an action after
+ * undoing starts a new branch from the current node instead of clearing the redo branch, and all
+ * branches share the nodes of their common ancestors.
+ *
+ * Redo follows the child of the current node that was most recently visited. To move to another
+ * branch, call selectBranch and then undo and redo through the common ancestor of the two branches.
+ *
+ * @see Branch
+ * @see cse340.undo.app.AbstractReversibleDrawingActivity#switchBranch(Branch)
+ */
+public class TreeHistory implements AbstractHistory {
+    /**
+     * A node in the history tree. Package-private so that a Branch can point at its tip.
+     */
+    static final class Node {
+        /** Action done when moving from the parent to this node (null for the root). */
+        final AbstractReversibleAction mAction;
+
+        /** Node before this one (null for the root). */
+        final Node mParent;
+
+        /** Number of actions between the root and this node. */
+        final int mDepth;
+
+        /** Order in which nodes were added, used to sort branches. */
+        final long mSequence;
+
+        /** Nodes added after this one, oldest first. */
+        final List<Node> mChildren;
+
+        /** Child which redo moves to (or null if there are no children). */
+        Node mRedoChild;
+
+        Node(AbstractReversibleAction action, Node parent, long sequence) {
+            mAction = action;
+            mParent = parent;
+            mDepth = parent == null ? 0 : parent.mDepth + 1;
+            mSequence = sequence;
+            mChildren = new ArrayList<>(1);
+        }
+    }
+
+    /** Root of the tree, which holds no action. */
+    private Node mRoot;
+
+    /** Node of the most recently done action (the root if nothing is done). */
+    private Node mCurrent;
+
+    /** Sequence number of the next node. */
+    private long mNextSequence;
+
+    /** Number of leaves in the tree. */
+    private int mBranchCount;
+
+    /**
+     * Initializes an empty history.
+     */
+    public TreeHistory() {
+        clear();
+    }
+
+    /**
+     * Add a reversible event to the history. Any undone actions are kept on their own branch.
+     *
+     * @param action    Reversible action to be added.
+     */
+    @Override
+    public void addAction(AbstractReversibleAction action) {
+        Node node = new Node(action, mCurrent, mNextSequence++);
+        if (mCurrent == mRoot || !mCurrent.mChildren.isEmpty()) {
+            // Extending a leaf keeps the number of branches, anything else starts a new one.
+            mBranchCount++;
+        }
+        mCurrent.mChildren.add(node);
+        mCurrent.mRedoChild = node;
+        mCurrent = node;
+    }
+
+    /**
+     * Undoes an action.
+     *
+     * @return null if there is nothing to undo, otherwise the action to be undone.
+     */
+    @Override
+    public AbstractReversibleAction undo() {
+        if (mCurrent == mRoot) {
+            return null;
+        }
+
+        // Leave mRedoChild alone, it already points here unless another branch was selected.
+        AbstractReversibleAction action = mCurrent.mAction;
+        mCurrent = mCurrent.mParent;
+        return action;
+    }
+
+    /**
+     * Redoes an action on the selected branch.
+     *
+     * @return null if there is nothing to redo, otherwise the action to be redone.
+     */
+    @Override
+    public AbstractReversibleAction redo() {
+        if (mCurrent.mRedoChild == null) {
+            return null;
+        }
+
+        mCurrent = mCurrent.mRedoChild;
+        return mCurrent.mAction;
+    }
+
+    /**
+     * Clears the history, including every branch.
+     */
+    @Override
+    public void clear() {
+        mRoot = new Node(null, null, mNextSequence++);
+        mCurrent = mRoot;
+        mBranchCount = 0;
+    }
+
+    /**
+     * Is there anything that can be undone?
+     *
+     * @return True if can undo any actions, false otherwise.
+     */
+    @Override
+    public boolean canUndo() {
+        return mCurrent != mRoot;
+    }
+
+    /**
+     * Is there anything that can be done?
+     *
+     * @return True if can redo any actions, false otherwise.
+     */
+    @Override
+    public boolean canRedo() {
+        return mCurrent.mRedoChild != null;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public int getPosition() {
+        return mCurrent.mDepth;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public AbstractReversibleAction peekUndo(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Illegal count: " + n);
+        } else if (n >= mCurrent.mDepth) {
+            return null;
+        }
+
+        Node node = mCurrent;
+        for (int i = 0; i < n; i++) {
+            node = node.mParent;
+        }
+        return node.mAction;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public boolean supportsBranches() {
+        return true;
+    }
+
+    /**
+     * Lists every branch in the history, in the order in which their tips were added.
+     *
+     * @return List of branches (empty if the history is empty).
+     */
+    @Override
+    public List<Branch> getBranches() {
+        List<Branch> branches = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        if (!mRoot.mChildren.isEmpty()) {
+            stack.push(mRoot);
+        }
+
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.mChildren.isEmpty()) {
+                branches.add(new Branch(node));
+            }
+            for (Node child : node.mChildren) {
+                stack.push(child);
+            }
+        }
+
+        branches.sort((a, b) -> Long.compare(a.mTip.mSequence, b.mTip.mSequence));
+        return branches;
+    }
+
+    /**
+     * @return The branch which redo currently leads to.
+     */
+    @Override
+    public Branch getCurrentBranch() {
+        Node tip = mCurrent;
+        while (tip.mRedoChild != null) {
+            tip = tip.mRedoChild;
+        }
+        return new Branch(tip);
+    }
+
+    /**
+     * Points redo along the given branch, starting at the common ancestor of the branch and the
+     * current node. After the returned number of undo calls, redo walks down the branch.
+     *
+     * @param branch    Branch to select, from getBranches.
+     * @return Number of actions to undo to reach the common ancestor.
+     * @throws IllegalArgumentException if the branch is not in this history.
+     */
+    @Override
+    public int selectBranch(Branch branch) {
+        if (!contains(branch.mTip)) {
+            throw new IllegalArgumentException("Branch not in history: " + branch);
+        }
+
+        Node target = branch.mTip;
+        Node current = mCurrent;
+
+        // Walk both nodes up to the same depth, then together until they meet.
+        while (target.mDepth > current.mDepth) {
+            target.mParent.mRedoChild = target;
+            target = target.mParent;
+        }
+        while (current.mDepth > target.mDepth) {
+            current = current.mParent;
+        }
+        while (target != current) {
+            target.mParent.mRedoChild = target;
+            target = target.mParent;
+            current = current.mParent;
+        }
+
+        return mCurrent.mDepth - target.mDepth;
+    }
+
+    /**
+     * @param node  Node to check.
+     * @return True if node is the root of this tree or one of its descendants.
+     */
+    private boolean contains(Node node) {
+        while (node.mParent != null) {
+            node = node.mParent;
+        }
+        return node == mRoot;
+    }
+
+    @NonNull
+    public String toString() {
+        return "Undo size: " + mCurrent.mDepth + ", branches: " + mBranchCount;
+    }
+}
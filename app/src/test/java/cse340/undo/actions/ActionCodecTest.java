@@ -0,0 +1,166 @@
+package cse340.undo.actions;
+
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ActionCodecTest {
+    @Test
+    public void roundTripsColorChanges() throws IOException {
+        ChangeColorAction action = new ChangeColorAction(0xff00ff00);
+        action.mPrev = 0x80ff0000;
+
+        ChangeColorAction copy = (ChangeColorAction) roundTrip(action, true);
+        assertEquals(action.mColor, copy.mColor);
+        assertEquals(action.mPrev, copy.mPrev);
+    }
+
+    @Test
+    public void roundTripsOpacityChanges() throws IOException {
+        ChangeOpacityAction action = new ChangeOpacityAction(64);
+        action.mPrev = 255;
+
+        ChangeOpacityAction copy = (ChangeOpacityAction) roundTrip(action, false);
+        assertEquals(action.mOpacity, copy.mOpacity);
+        assertEquals(action.mPrev, copy.mPrev);
+    }
+
+    @Test
+    public void roundTripsThicknessChanges() throws IOException {
+        ChangeThicknessAction action = new ChangeThicknessAction(12);
+        action.mPrev = 2.5f;
+
+        ChangeThicknessAction copy = (ChangeThicknessAction) roundTrip(action, true);
+        assertEquals(action.mThickness, copy.mThickness);
+        assertEquals(action.mPrev, copy.mPrev, 0);
+    }
+
+    @Test
+    public void roundTripsStrokes() throws IOException {
+        StrokeAction action = stroke(-3, 4, 5.5f, -6.25f);
+
+        StrokeAction copy = (StrokeAction) roundTrip(action, true);
+        assertSame(action.getStyle(), copy.getStyle());
+        assertEquals(2, copy.getGeometry().getPointCount());
+        assertEquals(-6.25f, copy.getGeometry().getY(1), 0);
+    }
+
+    @Test
+    public void roundTripsNestedCompositesOfEveryType() throws IOException {
+        CompositeAction inner = new CompositeAction("Inner");
+        inner.add(new ChangeOpacityAction(10));
+        CompositeAction action = new CompositeAction("Fill \u00e9t\u00e9 \u2713");
+        action.add(new ChangeColorAction(0xff0000ff));
+        action.add(new ChangeThicknessAction(3));
+        action.add(stroke(0, 0, 1, 1));
+        action.add(inner);
+
+        CompositeAction copy = (CompositeAction) roundTrip(action, true);
+        assertEquals(action.getName(), copy.getName());
+        List<AbstractReversibleAction> children = copy.getChildren();
+        assertEquals(4, children.size());
+        for (int i = 0; i < children.size(); i++) {
+            AbstractReversibleAction child = children.get(i);
+            assertSame(action.getChildren().get(i).getClass(), child.getClass());
+            assertEquals(action.getChildren().get(i).getId(), child.getId());
+            assertTrue(child.isDone());
+        }
+        assertEquals(1, ((CompositeAction) children.get(3)).getChildren().size());
+    }
+
+    @Test
+    public void readsStreamsAndBuffersAlike() throws IOException {
+        CompositeAction action = new CompositeAction("Both");
+        action.add(stroke(1, 2, 3, 4));
+        byte[] record = encode(action);
+
+        AbstractReversibleAction fromStream = ActionCodec.read(
+                new DataInputStream(new ByteArrayInputStream(record)), false);
+        assertEquals(action.getId(), fromStream.getId());
+        assertEquals(action.getName(), ((CompositeAction) fromStream).getName());
+    }
+
+    @Test
+    public void encodesOnlyKnownActions() {
+        assertTrue(ActionCodec.canEncode(new ChangeColorAction(0)));
+        assertTrue(ActionCodec.canEncode(stroke(0, 0)));
+        // Strokes without points, and subclasses which may have more state.
+        assertFalse(ActionCodec.canEncode(new StrokeAction(new Path(), paint())));
+        assertFalse(ActionCodec.canEncode(new ChangeColorAction(0) { }));
+
+        CompositeAction composite = new CompositeAction("Mixed");
+        composite.add(new ChangeColorAction(0));
+        assertTrue(ActionCodec.canEncode(composite));
+        composite.add(new ChangeThicknessAction(1) { });
+        assertFalse(ActionCodec.canEncode(composite));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writeRejectsUnknownActions() throws IOException {
+        encode(new ChangeColorAction(0) { });
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsUnknownTypes() throws IOException {
+        ActionCodec.read(RecordInput.of(ByteBuffer.wrap(new byte[] { 42, 1 })), false);
+    }
+
+    private static Paint paint() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setColor(0xff336699);
+        paint.setStrokeWidth(4);
+        return paint;
+    }
+
+    /**
+     * @param points    Coordinates of the points, x then y.
+     */
+    private static StrokeAction stroke(float... points) {
+        StrokeGeometry geometry = new StrokeGeometry();
+        for (int i = 0; i < points.length; i += 2) {
+            geometry.addPoint(points[i], points[i + 1]);
+        }
+        return new StrokeAction(geometry, paint());
+    }
+
+    private static byte[] encode(AbstractReversibleAction action) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ActionCodec.write(action, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes an action and reads it back from a buffer, checking that the whole record is read and
+     * that the copy keeps the id and class and has the given done flag.
+     */
+    private static AbstractReversibleAction roundTrip(AbstractReversibleAction action, boolean done)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(action));
+        AbstractReversibleAction copy = ActionCodec.read(RecordInput.of(buffer), done);
+        assertEquals(0, buffer.remaining());
+        assertSame(action.getClass(), copy.getClass());
+        assertEquals(action.getId(), copy.getId());
+        assertEquals(done, copy.isDone());
+        return copy;
+    }
+}
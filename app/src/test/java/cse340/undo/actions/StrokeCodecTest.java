@@ -0,0 +1,195 @@
+package cse340.undo.actions;
+
+import android.graphics.Paint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StrokeCodecTest {
+    /** Largest error quantization may add to a coordinate. */
+    private static final float QUANTUM = 0.5f / StrokeCodec.SCALE;
+
+    @Test
+    public void zigZagKeepsSmallMagnitudesSmall() {
+        assertEquals(0, StrokeCodec.zigZag(0));
+        assertEquals(1, StrokeCodec.zigZag(-1));
+        assertEquals(2, StrokeCodec.zigZag(1));
+        assertEquals(3, StrokeCodec.zigZag(-2));
+        for (int value : new int[] { 0, 1, -1, 63, -64, 1 << 20, -(1 << 20), Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            assertEquals(value, StrokeCodec.unZigZag(StrokeCodec.zigZag(value)));
+        }
+    }
+
+    @Test
+    public void varLongsRoundTrip() throws IOException {
+        long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, 0xffffffffL, Long.MAX_VALUE, -1 };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (long value : values) {
+            StrokeCodec.writeVarLong(out, value);
+        }
+        // 1, 1, 1, 2, 2, 3, 5, 5, 9 and 10 bytes.
+        assertEquals(39, bytes.size());
+
+        RecordInput in = RecordInput.of(ByteBuffer.wrap(bytes.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, StrokeCodec.readVarLong(in));
+        }
+    }
+
+    @Test
+    public void roundTripsNegativeDeltasAndLargeCoordinates() throws IOException {
+        // Multiples of 1/SCALE survive exactly.
+        float[] points = { 0, 0, -100.5f, 250.25f, 1e6f, -1e6f, -1e6f, 1e6f, 3.0625f, -0.0625f, 3.0625f, -0.0625f };
+        StrokeAction stroke = stroke(paint(), points);
+
+        StrokeAction copy = roundTrip(stroke);
+        assertEquals(stroke.getId(), copy.getId());
+        assertPoints(points, copy.getGeometry(), 0);
+    }
+
+    @Test
+    public void quantizesToASixteenthOfAPixel() throws IOException {
+        Random random = new Random(340);
+        float[] points = new float[200];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (random.nextFloat() - 0.5f) * 4000;
+        }
+
+        StrokeAction copy = roundTrip(stroke(paint(), points));
+        assertPoints(points, copy.getGeometry(), QUANTUM);
+        for (int i = 0; i < copy.getGeometry().getPointCount(); i++) {
+            float x = copy.getGeometry().getX(i) * StrokeCodec.SCALE;
+            assertEquals(Math.round(x), x, 0);
+        }
+
+        // Points closer than the quantum collapse.
+        StrokeAction close = roundTrip(stroke(paint(), 10, 10, 10 + 1f / 64, 10 - 1f / 64));
+        assertEquals(close.getGeometry().getX(0), close.getGeometry().getX(1), 0);
+        assertEquals(close.getGeometry().getY(0), close.getGeometry().getY(1), 0);
+    }
+
+    @Test
+    public void smallStepsTakeOneBytePerCoordinate() throws IOException {
+        int small = encode(stroke(paint(), 100, 100, 101, 99, 102, 100, 103, 101)).length;
+        int large = encode(stroke(paint(), 100, 100, 1100, -900, 2100, 100, 3100, 1100)).length;
+        assertEquals(small + 3 * 2 * 2, large);
+    }
+
+    @Test
+    public void roundTripsEmptyAndSinglePointStrokes() throws IOException {
+        assertEquals(0, roundTrip(stroke(paint())).getGeometry().getPointCount());
+
+        float[] point = { -12.5f, 7.25f };
+        assertPoints(point, roundTrip(stroke(paint(), point)).getGeometry(), 0);
+    }
+
+    @Test
+    public void roundTripsThePaint() throws IOException {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.DITHER_FLAG);
+        paint.setColor(0x80123456);
+        paint.setStrokeWidth(7.5f);
+        paint.setStyle(Paint.Style.FILL_AND_STROKE);
+        paint.setStrokeCap(Paint.Cap.SQUARE);
+        paint.setStrokeJoin(Paint.Join.BEVEL);
+        StrokeAction stroke = stroke(paint, 0, 0, 1, 1);
+
+        // Styles are interned, so an equal style is the same one.
+        assertSame(stroke.getStyle(), roundTrip(stroke).getStyle());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedRecordsFail() throws IOException {
+        byte[] record = encode(stroke(paint(), 0, 0, 10, 10));
+        StrokeCodec.read(RecordInput.of(ByteBuffer.wrap(Arrays.copyOf(record, record.length - 1))));
+    }
+
+    @Test
+    public void decoderReadsOnePointAtATime() throws IOException {
+        StrokeAction stroke = stroke(paint(), 1, 2, 3, 4);
+        StrokeCodec.Decoder decoder = new StrokeCodec.Decoder(RecordInput.of(ByteBuffer.wrap(encode(stroke))));
+        assertEquals(stroke.getId(), decoder.getId());
+        assertEquals(2, decoder.getPointCount());
+
+        assertTrue(decoder.next());
+        assertEquals(1, decoder.getX(), 0);
+        assertTrue(decoder.next());
+        assertEquals(4, decoder.getY(), 0);
+        assertFalse(decoder.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void encoderRejectsExtraPoints() throws IOException {
+        StrokeCodec.Encoder encoder = new StrokeCodec.Encoder(new DataOutputStream(new ByteArrayOutputStream()));
+        encoder.begin(1, paint(), 1);
+        encoder.addPoint(0, 0);
+        encoder.addPoint(1, 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void encoderRejectsMissingPoints() throws IOException {
+        StrokeCodec.Encoder encoder = new StrokeCodec.Encoder(new DataOutputStream(new ByteArrayOutputStream()));
+        encoder.begin(1, paint(), 2);
+        encoder.addPoint(0, 0);
+        encoder.begin(2, paint(), 0);
+    }
+
+    private static Paint paint() {
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(5);
+        return paint;
+    }
+
+    /**
+     * @param points    Coordinates of the points, x then y.
+     */
+    private static StrokeAction stroke(Paint paint, float... points) {
+        StrokeGeometry geometry = new StrokeGeometry();
+        for (int i = 0; i < points.length; i += 2) {
+            geometry.addPoint(points[i], points[i + 1]);
+        }
+        return new StrokeAction(geometry, paint);
+    }
+
+    private static byte[] encode(StrokeAction stroke) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StrokeCodec.write(stroke, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a stroke and reads it back, checking that the whole record is read.
+     */
+    private static StrokeAction roundTrip(StrokeAction stroke) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encode(stroke));
+        StrokeAction copy = StrokeCodec.read(RecordInput.of(buffer));
+        assertEquals(0, buffer.remaining());
+        return copy;
+    }
+
+    private static void assertPoints(float[] expected, StrokeGeometry geometry, float delta) {
+        assertEquals(expected.length / 2, geometry.getPointCount());
+        for (int i = 0; i < geometry.getPointCount(); i++) {
+            assertEquals(expected[2 * i], geometry.getX(i), delta);
+            assertEquals(expected[2 * i + 1], geometry.getY(i), delta);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package cse340.undo.actions;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StrokeGeometryTest {
+    /** Number of line segments each curve is split into when comparing rendered strokes. */
+    private static final int SEGMENTS = 64;
+
+    @Test
+    public void simplifyingAStraightLineKeepsItsEnds() {
+        StrokeGeometry geometry = new StrokeGeometry();
+        for (int i = 0; i <= 10; i++) {
+            geometry.addPoint(i * 10, 0);
+        }
+
+        StrokeGeometry simplified = geometry.simplify(0.5f);
+        assertEquals(2, simplified.getPointCount());
+        assertEquals(0, simplified.getX(0), 0);
+        assertEquals(100, simplified.getX(1), 0);
+    }
+
+    @Test
+    public void simplifyingReturnsTheSameGeometryIfNoPointCanBeDropped() {
+        StrokeGeometry geometry = new StrokeGeometry();
+        geometry.addPoint(0, 0);
+        geometry.addPoint(10, 10);
+        assertSame(geometry, geometry.simplify(0.5f));
+    }
+
+    @Test
+    public void simplifyingGivesUpOnStrokesWhichWouldTakeQuadraticTime() {
+        // The middle of each leg could be dropped, but the zigzag widens, so every split of it
+        // only peels off the corner at one of its ends.
+        StrokeGeometry geometry = new StrokeGeometry();
+        for (int i = 0; i < 1000; i++) {
+            float x = i, y = i % 2 == 1 ? i : -i;
+            if (i > 0) {
+                geometry.addPoint((geometry.getX(geometry.getPointCount() - 1) + x) / 2,
+                        (geometry.getY(geometry.getPointCount() - 1) + y) / 2);
+            }
+            geometry.addPoint(x, y);
+        }
+        assertSame(geometry, geometry.simplify(0.5f));
+    }
+
+    @Test
+    public void simplifyingALongDrawnStrokeStaysWithinTheWorkLimit() {
+        Random random = new Random(340);
+        StrokeGeometry geometry = new StrokeGeometry();
+        float x = 0, y = 0, angle = 0;
+        for (int i = 0; i < 1000; i++) {
+            angle += (random.nextFloat() - 0.5f) * 0.5f;
+            x += (float) Math.cos(angle) * 4;
+            y += (float) Math.sin(angle) * 4;
+            geometry.addPoint(x, y);
+        }
+        assertTrue(geometry.simplify(1).getPointCount() < geometry.getPointCount() / 2);
+    }
+
+    @Test
+    public void simplifiedCurveStaysWithinTheToleranceOfTheRenderedStroke() {
+        Random random = new Random(340);
+        for (int stroke = 0; stroke < 50; stroke++) {
+            StrokeGeometry geometry = new StrokeGeometry();
+            float x = 0, y = 0, angle = 0;
+            for (int i = 0; i < 60; i++) {
+                angle += (random.nextFloat() - 0.5f) * 2;
+                x += (float) Math.cos(angle) * 8;
+                y += (float) Math.sin(angle) * 8;
+                geometry.addPoint(x, y);
+            }
+
+            float tolerance = 1 + random.nextFloat() * 4;
+            StrokeGeometry simplified = geometry.simplify(tolerance);
+            float[] curve = flatten(simplified);
+            float[] samples = flatten(geometry);
+            for (int i = 0; i < samples.length; i += 2) {
+                float distance = distanceToPolyline(samples[i], samples[i + 1], curve);
+                // The measurement flattens curves too, so allow a little slack.
+                assertTrue("Stroke " + stroke + " strays " + distance + " > " + tolerance,
+                        distance <= tolerance * 1.1f);
+            }
+        }
+    }
+
+    /**
+     * @return Interleaved points along the curve the Path of the geometry follows.
+     */
+    private static float[] flatten(StrokeGeometry geometry) {
+        int count = geometry.getPointCount();
+        float[] out = new float[count * SEGMENTS * 2 + 2];
+        int n = 0;
+        out[n++] = geometry.getX(0);
+        out[n++] = geometry.getY(0);
+        for (int j = 0; j < count; j++) {
+            float cx = geometry.getX(j), cy = geometry.getY(j);
+            float sx = j == 0 ? cx : (geometry.getX(j - 1) + cx) / 2;
+            float sy = j == 0 ? cy : (geometry.getY(j - 1) + cy) / 2;
+            float ex = j == count - 1 ? cx : (geometry.getX(j + 1) + cx) / 2;
+            float ey = j == count - 1 ? cy : (geometry.getY(j + 1) + cy) / 2;
+            for (int k = 1; k <= SEGMENTS; k++) {
+                float t = (float) k / SEGMENTS, u = 1 - t;
+                out[n++] = u * u * sx + 2 * u * t * cx + t * t * ex;
+                out[n++] = u * u * sy + 2 * u * t * cy + t * t * ey;
+            }
+        }
+        return out;
+    }
+
+    private static float distanceToPolyline(float x, float y, float[] polyline) {
+        float best = Float.MAX_VALUE;
+        for (int i = 2; i < polyline.length; i += 2) {
+            float ax = polyline[i - 2], ay = polyline[i - 1];
+            float dx = polyline[i] - ax, dy = polyline[i + 1] - ay;
+            float lengthSquared = dx * dx + dy * dy;
+            float t = lengthSquared == 0 ? 0
+                    : Math.max(0, Math.min(1, ((x - ax) * dx + (y - ay) * dy) / lengthSquared));
+            float ex = x - ax - t * dx, ey = y - ay - t * dy;
+            best = Math.min(best, ex * ex + ey * ey);
+        }
+        return (float) Math.sqrt(best);
+    }
+}
@@ -0,0 +1,41 @@
+package cse340.undo.app;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes the current thread allocates while running some code, to check that hot paths
+ * such as handling a touch sample don't allocate. Relies on the HotSpot extension of
+ * ThreadMXBean, which the JVM running unit tests provides.
+ */
+final class AllocationCounter {
+    /** Number of times the code is run before measuring, so the JIT has settled. */
+    private static final int WARM_UP_RUNS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {
+    }
+
+    /**
+     * Runs the code a few times, then once more while counting.
+     *
+     * @param code  Code to measure.
+     * @return Number of bytes the current thread allocated during the last run, less what
+     *         measuring itself allocates.
+     */
+    static long allocatedBy(Runnable code) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            code.run();
+        }
+        long overhead = measure(() -> { });
+        return Math.max(0, measure(code) - overhead);
+    }
+
+    private static long measure(Runnable code) {
+        long threadId = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(threadId);
+        code.run();
+        return THREADS.getThreadAllocatedBytes(threadId) - before;
+    }
+}
@@ -0,0 +1,56 @@
+package cse340.undo.app;
+
+import org.junit.Test;
+
+import cse340.undo.actions.StrokeGeometry;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that handling the points of a stroke allocates nothing once a stroke is under way.
+ */
+public class AllocationTest {
+    /** Number of points handled per measurement. */
+    private static final int POINTS = 10000;
+
+    /** Sink which drops the points. */
+    private static final StrokeFilter.Sink DROP = (x, y, time, pressure) -> { };
+
+    @Test
+    public void recyclingQueueAllocatesNothingWhileItKeepsUp() {
+        RecyclingQueue<float[]> queue = new RecyclingQueue<>(16, () -> new float[1]);
+        assertEquals(0, AllocationCounter.allocatedBy(() -> {
+            for (int i = 0; i < POINTS; i++) {
+                queue.claim()[0] = i;
+                queue.publish();
+                if (i % 8 == 7) {
+                    while (queue.peek() != null) {
+                        queue.release();
+                    }
+                }
+            }
+        }));
+    }
+
+    @Test
+    public void filtersAllocateNothingPerPoint() {
+        StrokeFilter smoothing = CatmullRomFilter.withSubdivisions(4).create();
+        StrokeFilter resampling = ResamplingFilter.byDistance(2).create();
+        StrokeFilter.Sink chain = (x, y, time, pressure) -> smoothing.addPoint(x, y, time, pressure, DROP);
+        assertEquals(0, AllocationCounter.allocatedBy(() -> {
+            for (int i = 0; i < POINTS; i++) {
+                resampling.addPoint(i, (float) Math.sin(i / 10.0) * 50, i, 1, chain);
+            }
+        }));
+    }
+
+    @Test
+    public void addingPointsWithinCapacityAllocatesNothing() {
+        StrokeGeometry geometry = new StrokeGeometry(4 * POINTS);
+        assertEquals(0, AllocationCounter.allocatedBy(() -> {
+            for (int i = 0; i < POINTS; i++) {
+                geometry.addPoint(i, i, i, 1);
+            }
+        }));
+    }
+}
@@ -0,0 +1,136 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import cse340.undo.BuildConfig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Feeds touch events through a DrawingView in LAYER mode, drawing its stroke layer after each move
+ * as a frame would, and checks that a stroke under way allocates nothing. Graphics are native, so
+ * only the view's own Java code is measured. Debug builds log input, so this only runs against
+ * release builds, e.g. through testReleaseUnitTest.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class DrawingViewAllocationTest {
+    /** Width and height of the view, in pixels. */
+    private static final int SIZE = 1024;
+
+    /**
+     * Number of strokes drawn before measuring, all on screen, so every frame finds and orders
+     * more than a library sort handles without a merge buffer.
+     */
+    private static final int COMMITTED_STROKES = 64;
+
+    /**
+     * Number of moves measured. AllocationCounter runs them several times, which the stroke being
+     * drawn holds without growing its arrays.
+     */
+    private static final int MOVES = 48;
+
+    /** Time between touch events, in milliseconds. */
+    private static final int EVENT_INTERVAL = 8;
+
+    private DrawingView mView;
+    private View mLayer;
+    private Canvas mCanvas;
+    private long mTime;
+
+    @Before
+    public void setUp() {
+        Assume.assumeFalse("Debug builds log input", BuildConfig.DEBUG);
+
+        mView = new DrawingView(RuntimeEnvironment.getApplication(), null);
+        mView.setRenderMode(DrawingView.RenderMode.LAYER);
+        mView.measure(View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(SIZE, View.MeasureSpec.EXACTLY));
+        mView.layout(0, 0, SIZE, SIZE);
+        // Completed strokes are committed as the activity would, without a history.
+        mView.addListener(action -> action.doAction(mView));
+
+        for (int i = 0; i < mView.getChildCount(); i++) {
+            if (mView.getChildAt(i) instanceof StrokeLayer) {
+                mLayer = mView.getChildAt(i);
+            }
+        }
+        assertNotNull(mLayer);
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void drawingAStrokeAllocatesNothingPerMove() {
+        // Strokes start in different cells of the index, so it finds them out of drawing order.
+        for (int i = 0; i < COMMITTED_STROKES; i++) {
+            float left = 16 + (i % 4) * 200, y = 16 + i * 14;
+            drawLine(left, y, left + 300, y);
+        }
+
+        // The stroke goes around a circle, so every run of the moves continues it.
+        long downTime = mTime;
+        MotionEvent[] moves = new MotionEvent[MOVES];
+        for (int i = 0; i < MOVES; i++) {
+            double angle = 2 * Math.PI * (i + 1) / MOVES;
+            moves[i] = event(downTime, MotionEvent.ACTION_MOVE,
+                    SIZE / 2 + 150 * (float) Math.cos(angle), SIZE / 2 + 150 * (float) Math.sin(angle));
+        }
+
+        dispatch(event(downTime, MotionEvent.ACTION_DOWN, SIZE / 2 + 150, SIZE / 2));
+        long allocated = AllocationCounter.allocatedBy(() -> {
+            for (MotionEvent move : moves) {
+                mView.onTouchEvent(move);
+                mLayer.draw(mCanvas);
+            }
+        });
+        dispatch(event(downTime, MotionEvent.ACTION_UP, SIZE / 2 + 150, SIZE / 2));
+        for (MotionEvent move : moves) {
+            move.recycle();
+        }
+
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Draws and commits a straight stroke.
+     */
+    private void drawLine(float x0, float y0, float x1, float y1) {
+        long downTime = mTime;
+        dispatch(event(downTime, MotionEvent.ACTION_DOWN, x0, y0));
+        for (int i = 1; i <= 10; i++) {
+            dispatch(event(downTime, MotionEvent.ACTION_MOVE, x0 + (x1 - x0) * i / 10, y0 + (y1 - y0) * i / 10));
+        }
+        dispatch(event(downTime, MotionEvent.ACTION_UP, x1, y1));
+    }
+
+    /**
+     * @return A new event, EVENT_INTERVAL after the previous one.
+     */
+    private MotionEvent event(long downTime, int action, float x, float y) {
+        mTime += EVENT_INTERVAL;
+        return MotionEvent.obtain(downTime, mTime, action, x, y, 0);
+    }
+
+    /**
+     * Passes an event to the view, then recycles it.
+     */
+    private void dispatch(MotionEvent event) {
+        mView.onTouchEvent(event);
+        mLayer.draw(mCanvas);
+        event.recycle();
+    }
+}
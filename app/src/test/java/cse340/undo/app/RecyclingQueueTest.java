@@ -0,0 +1,52 @@
+package cse340.undo.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RecyclingQueueTest {
+    @Test
+    public void elementsComeOutInOrderAcrossOverflow() {
+        RecyclingQueue<int[]> queue = new RecyclingQueue<>(4, () -> new int[1]);
+        for (int i = 0; i < 10; i++) {
+            queue.claim()[0] = i;
+            queue.publish();
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, queue.peek()[0]);
+            queue.release();
+        }
+        // The ring has room again, but the overflow must drain first.
+        for (int i = 10; i < 12; i++) {
+            queue.claim()[0] = i;
+            queue.publish();
+        }
+        for (int i = 3; i < 12; i++) {
+            assertEquals(i, queue.peek()[0]);
+            queue.release();
+        }
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void releasedElementsAreReused() {
+        RecyclingQueue<int[]> queue = new RecyclingQueue<>(1, () -> new int[1]);
+        int[] first = queue.claim();
+        queue.publish();
+        assertSame(first, queue.peek());
+        queue.release();
+        assertSame(first, queue.claim());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void publishingNeedsAClaim() {
+        new RecyclingQueue<>(1, Object::new).publish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new RecyclingQueue<>(0, Object::new);
+    }
+}
@@ -0,0 +1,168 @@
+package cse340.undo.app;
+
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StrokeIndexTest {
+    private static final int CELL = StrokeIndex.CELL_SIZE;
+
+    private StrokeIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new StrokeIndex();
+    }
+
+    @Test
+    public void findsStrokesAcrossCellBoundaries() {
+        // Touches the four cells around (CELL, CELL).
+        mIndex.put(1, new RectF(CELL - 5, CELL - 5, CELL + 5, CELL + 5));
+        mIndex.put(2, new RectF(10, 10, 20, 20));
+
+        assertFound(query(CELL + 1, CELL + 1, CELL + 2, CELL + 2), 1);
+        assertFound(query(CELL - 2, CELL + 1, CELL - 1, CELL + 2), 1);
+        assertFound(query(0, 0, CELL + 1, CELL + 1), 1, 2);
+        // In a cell the stroke touches, but outside its bounds.
+        assertFound(query(CELL + 10, CELL + 10, CELL + 20, CELL + 20));
+
+        assertFound(queryPoint(CELL - 1, CELL - 1), 1);
+        assertFound(queryPoint(CELL + 1, CELL + 1), 1);
+        assertFound(queryPoint(15, 15), 2);
+        assertFound(queryPoint(CELL + 6, CELL));
+    }
+
+    @Test
+    public void findsStrokesAtNegativeCoordinates() {
+        mIndex.put(1, new RectF(-CELL - 10, -10, -CELL + 10, 10));
+
+        assertFound(query(-CELL - 20, -5, -CELL - 5, 5), 1);
+        assertFound(queryPoint(-CELL + 5, 5), 1);
+        assertFound(queryPoint(5, 5));
+    }
+
+    @Test
+    public void reportsStrokesSpanningManyCellsOnce() {
+        mIndex.put(1, new RectF(-3 * CELL, -3 * CELL, 4 * CELL, 4 * CELL));
+        mIndex.put(2, new RectF(CELL + 10, CELL + 10, 3 * CELL + 10, CELL + 20));
+
+        assertFound(query(-10 * CELL, -10 * CELL, 10 * CELL, 10 * CELL), 1, 2);
+        // Starting inside both strokes, so neither is found from its first cell.
+        assertFound(query(2 * CELL + 5, CELL + 5, 5 * CELL, 3 * CELL), 1, 2);
+    }
+
+    @Test
+    public void removeUnlistsAStrokeFromEveryCell() {
+        mIndex.put(1, new RectF(0, 0, 3 * CELL, 3 * CELL));
+        mIndex.put(2, new RectF(CELL + 10, CELL + 10, CELL + 20, CELL + 20));
+
+        assertTrue(mIndex.remove(1));
+        assertFalse(mIndex.remove(1));
+        assertFalse(mIndex.contains(1));
+        assertEquals(1, mIndex.size());
+        assertFound(query(0, 0, 3 * CELL, 3 * CELL), 2);
+        assertFound(queryPoint(2 * CELL, 2 * CELL));
+    }
+
+    @Test
+    public void putReplacesTheBoundsOfAnIndexedStroke() {
+        mIndex.put(1, new RectF(0, 0, 10, 10));
+        RectF bounds = mIndex.getBounds(1);
+        mIndex.put(1, new RectF(5 * CELL, 5 * CELL, 5 * CELL + 10, 5 * CELL + 10));
+
+        assertEquals(1, mIndex.size());
+        assertFound(queryPoint(5, 5));
+        assertFound(queryPoint(5 * CELL + 5, 5 * CELL + 5), 1);
+        assertSame(bounds, mIndex.getBounds(1));
+    }
+
+    @Test
+    public void growExtendsAStrokeIntoNewCells() {
+        RectF original = new RectF(10, 10, 20, 20);
+        mIndex.put(1, original);
+        RectF bounds = mIndex.getBounds(1);
+
+        assertTrue(mIndex.grow(1, new RectF(2 * CELL + 10, 15, 2 * CELL + 20, 25)));
+        assertSame(bounds, mIndex.getBounds(1));
+        assertEquals(new RectF(10, 10, 2 * CELL + 20, 25), bounds);
+        // The caller's rectangle is copied, not grown.
+        assertEquals(new RectF(10, 10, 20, 20), original);
+
+        assertFound(queryPoint(CELL + 5, 20), 1);
+        assertFound(queryPoint(2 * CELL + 15, 20), 1);
+        assertFound(query(CELL, 0, 3 * CELL, CELL), 1);
+
+        // Growing within the cells it covers lists it no more than once per cell.
+        mIndex.grow(1, new RectF(30, 12, 40, 22));
+        assertFound(query(0, 0, 3 * CELL, CELL), 1);
+        assertTrue(mIndex.remove(1));
+        assertFound(query(0, 0, 3 * CELL, CELL));
+    }
+
+    @Test
+    public void growIgnoresStrokesWhichAreNotIndexed() {
+        assertFalse(mIndex.grow(1, new RectF(0, 0, 10, 10)));
+        assertEquals(0, mIndex.size());
+    }
+
+    @Test
+    public void clearRemovesEveryStroke() {
+        mIndex.put(1, new RectF(0, 0, 10, 10));
+        mIndex.put(2, new RectF(CELL, CELL, CELL + 10, CELL + 10));
+
+        mIndex.clear();
+        assertEquals(0, mIndex.size());
+        assertFound(query(-CELL, -CELL, 2 * CELL, 2 * CELL));
+
+        mIndex.put(3, new RectF(0, 0, 10, 10));
+        assertFound(queryPoint(5, 5), 3);
+    }
+
+    @Test
+    public void isWithinChecksEveryStroke() {
+        mIndex.put(1, new RectF(0, 0, 10, 10));
+        mIndex.put(2, new RectF(100, 100, 110, 110));
+
+        assertTrue(mIndex.isWithin(new RectF(0, 0, 110, 110)));
+        assertFalse(mIndex.isWithin(new RectF(0, 0, 105, 105)));
+    }
+
+    private List<Long> query(float left, float top, float right, float bottom) {
+        List<Long> found = new ArrayList<>();
+        mIndex.query(new RectF(left, top, right, bottom), found::add);
+        return found;
+    }
+
+    private List<Long> queryPoint(float x, float y) {
+        List<Long> found = new ArrayList<>();
+        mIndex.query(x, y, found::add);
+        return found;
+    }
+
+    /**
+     * Checks that exactly the given strokes were found, each once, in any order.
+     */
+    private static void assertFound(List<Long> found, long... ids) {
+        List<Long> expected = new ArrayList<>();
+        for (long id : ids) {
+            expected.add(id);
+        }
+        Collections.sort(found);
+        assertEquals(expected, found);
+    }
+}
@@ -0,0 +1,176 @@
+package cse340.undo.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TileCacheTest {
+    private static final int TILE = TileCache.TILE_SIZE;
+
+    /** Budget of exactly three tile bitmaps. */
+    private static final long BUDGET = 3L * TILE * TILE * 4;
+
+    private TileCache mCache;
+
+    /** Areas passed to the renderer, in order. */
+    private List<RectF> mRendered;
+
+    private final TileCache.Renderer mRenderer = (Canvas canvas, RectF area, float scale) -> mRendered.add(new RectF(area));
+
+    @Before
+    public void setUp() {
+        mCache = new TileCache(BUDGET);
+        mRendered = new ArrayList<>();
+    }
+
+    @Test
+    public void capacityComesFromTheBudget() {
+        assertEquals(3, mCache.getCapacity());
+        assertEquals(1, new TileCache(1).getCapacity());
+
+        mCache.ensureCapacity(2);
+        assertEquals(3, mCache.getCapacity());
+        mCache.ensureCapacity(5);
+        assertEquals(5, mCache.getCapacity());
+    }
+
+    @Test
+    public void rendersATileOnceThenCachesIt() {
+        Bitmap tile = mCache.get(0, 1, -2, mRenderer);
+        assertSame(tile, mCache.get(0, 1, -2, mRenderer));
+
+        assertEquals(1, mRendered.size());
+        assertEquals(new RectF(TILE, -2 * TILE, 2 * TILE, -TILE), mRendered.get(0));
+        assertEquals(TILE, tile.getWidth());
+    }
+
+    @Test
+    public void tilesOfOtherLevelsCoverScaledAreas() {
+        Bitmap tile = mCache.get(0, 1, 1, mRenderer);
+        assertNotSame(tile, mCache.get(1, 1, 1, mRenderer));
+        mCache.get(-2, 1, 1, mRenderer);
+
+        assertEquals(3, mRendered.size());
+        assertEquals(new RectF(TILE / 2, TILE / 2, TILE, TILE), mRendered.get(1));
+        assertEquals(new RectF(4 * TILE, 4 * TILE, 8 * TILE, 8 * TILE), mRendered.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsLevelsOutOfRange() {
+        mCache.get(TileCache.MAX_LEVEL + 1, 0, 0, mRenderer);
+    }
+
+    @Test
+    public void invalidateDropsTheTilesOfEveryLevel() {
+        // Enough tiles far from the area that looking its tiles up is cheaper than checking them.
+        mCache.ensureCapacity(36);
+        for (int i = 0; i < 32; i++) {
+            mCache.get(0, i, 100, mRenderer);
+        }
+        mRendered.clear();
+
+        mCache.get(TileCache.MIN_LEVEL, -1, -1, mRenderer);
+        mCache.get(TileCache.MAX_LEVEL, 20, 0, mRenderer);
+        mCache.get(1, 0, 0, mRenderer);
+        // Another tile of level 1, which doesn't touch the area.
+        mCache.get(1, 0, 1, mRenderer);
+
+        mCache.invalidate(new RectF(-10, 10, 3 * TILE, 20));
+        mCache.get(TileCache.MIN_LEVEL, -1, -1, mRenderer);
+        mCache.get(TileCache.MAX_LEVEL, 20, 0, mRenderer);
+        mCache.get(1, 0, 0, mRenderer);
+        mCache.get(1, 0, 1, mRenderer);
+        assertEquals(7, mRendered.size());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyDrawnTile() {
+        Bitmap a = mCache.get(0, 0, 0, mRenderer);
+        Bitmap b = mCache.get(0, 1, 0, mRenderer);
+        mCache.get(0, 2, 0, mRenderer);
+        // Drawing a makes b the least recently drawn.
+        mCache.get(0, 0, 0, mRenderer);
+
+        assertSame(b, mCache.get(0, 3, 0, mRenderer));
+        assertEquals(4, mRendered.size());
+        assertSame(a, mCache.get(0, 0, 0, mRenderer));
+        mCache.get(0, 2, 0, mRenderer);
+        assertEquals(4, mRendered.size());
+
+        // b was evicted, and now tile 3 is the least recently drawn.
+        mCache.get(0, 1, 0, mRenderer);
+        assertEquals(5, mRendered.size());
+        assertEquals(new RectF(TILE, 0, 2 * TILE, TILE), mRendered.get(4));
+    }
+
+    @Test
+    public void reusesTheMostRecentlyFreedBitmapFirst() {
+        Bitmap a = mCache.get(0, 0, 0, mRenderer);
+        Bitmap b = mCache.get(0, 1, 0, mRenderer);
+        mCache.invalidate(new RectF(10, 10, 20, 20));
+        mCache.invalidate(new RectF(TILE + 10, 10, TILE + 20, 20));
+
+        // Free bitmaps are used before allocating up to the capacity.
+        assertSame(b, mCache.get(0, 5, 5, mRenderer));
+        assertSame(a, mCache.get(0, 6, 5, mRenderer));
+        Bitmap c = mCache.get(0, 7, 5, mRenderer);
+        assertNotSame(a, c);
+        assertNotSame(b, c);
+    }
+
+    @Test
+    public void invalidateDropsOnlyTheTilesInTheArea() {
+        mCache.get(0, 0, 0, mRenderer);
+        mCache.get(0, 1, 0, mRenderer);
+        mCache.get(0, 0, 1, mRenderer);
+
+        // Ends on the edge of the tile, so it touches tiles 0 and 1.
+        mCache.invalidate(new RectF(5, 5, TILE, 10));
+        mCache.get(0, 0, 0, mRenderer);
+        mCache.get(0, 1, 0, mRenderer);
+        mCache.get(0, 0, 1, mRenderer);
+        assertEquals(5, mRendered.size());
+    }
+
+    @Test
+    public void invalidatingAHugeAreaChecksTheCachedTiles() {
+        Bitmap a = mCache.get(0, 0, 0, mRenderer);
+        mCache.get(0, -4, 100, mRenderer);
+
+        mCache.invalidate(new RectF(-1e6f, -1e6f, 1e6f, 50 * TILE));
+        mCache.get(0, -4, 100, mRenderer);
+        assertEquals(2, mRendered.size());
+        assertSame(a, mCache.get(0, 0, 0, mRenderer));
+        assertEquals(3, mRendered.size());
+    }
+
+    @Test
+    public void releaseRecyclesEveryBitmap() {
+        Bitmap a = mCache.get(0, 0, 0, mRenderer);
+        Bitmap b = mCache.get(0, 1, 0, mRenderer);
+        mCache.invalidate(new RectF(0, 0, 10, 10));
+
+        mCache.release();
+        assertTrue(a.isRecycled());
+        assertTrue(b.isRecycled());
+
+        // Usable again, with new bitmaps.
+        assertNotSame(a, mCache.get(0, 0, 0, mRenderer));
+    }
+}
@@ -0,0 +1,59 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Behavior every bounded AbstractHistory must have, on top of the common contract. Subclasses
+ * create a history which holds exactly CAPACITY TestActions of the default size.
+ */
+public abstract class BoundedHistoryContractTest extends HistoryContractTest {
+    @Test
+    public void addingWhenFullEvictsTheOldestActions() {
+        List<AbstractReversibleAction> added = new ArrayList<>();
+        for (int i = 0; i < CAPACITY + 2; i++) {
+            added.add(add("a" + i));
+        }
+
+        assertEquals(added.subList(0, 2), mEvicted);
+        assertEquals(CAPACITY, mHistory.getPosition());
+        for (int i = CAPACITY + 1; i >= 2; i--) {
+            assertSame(added.get(i), mHistory.undo());
+        }
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void evictionKeepsWorkingAfterManyAdds() {
+        AbstractReversibleAction last = null;
+        for (int i = 0; i < 10 * CAPACITY + 1; i++) {
+            last = add("a" + i);
+            if (i % 3 == 0) {
+                mHistory.undo();
+                mHistory.redo();
+            }
+        }
+
+        assertEquals(9 * CAPACITY + 1, mEvicted.size());
+        assertSame(last, mHistory.undo());
+        assertSame(last, mHistory.redo());
+    }
+
+    @Test
+    public void peekUndoSeesOnlyActionsLeftAfterEviction() {
+        for (int i = 0; i < CAPACITY + 1; i++) {
+            add("a" + i);
+        }
+
+        assertEquals("a1", mHistory.peekUndo(CAPACITY - 1).toString());
+        assertNull(mHistory.peekUndo(CAPACITY));
+    }
+}
@@ -0,0 +1,60 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BudgetHistoryTest extends BoundedHistoryContractTest {
+    /** @inheritDoc */
+    @Override
+    protected AbstractHistory createHistory() {
+        return new BudgetHistory(CAPACITY * TestAction.SIZE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveBudget() {
+        new BudgetHistory(0);
+    }
+
+    @Test
+    public void largeActionEvictsSeveralSmallOnes() {
+        add("a");
+        add("b");
+        add("c");
+        AbstractReversibleAction large = new TestAction("large", 3 * TestAction.SIZE);
+        mHistory.addAction(large);
+
+        assertEquals(2, mEvicted.size());
+        assertSame(large, mHistory.undo());
+        mHistory.undo();
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void keepsTheNewestActionEvenIfOverBudget() {
+        add("a");
+        AbstractReversibleAction huge = new TestAction("huge", 10 * CAPACITY * TestAction.SIZE);
+        mHistory.addAction(huge);
+
+        assertEquals(1, mEvicted.size());
+        assertSame(huge, mHistory.undo());
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void droppedRedoBranchFreesItsBudget() {
+        for (int i = 0; i < CAPACITY; i++) {
+            add("a" + i);
+        }
+        mHistory.undo(2);
+        add("b0");
+        add("b1");
+
+        assertEquals(0, mEvicted.size());
+        assertEquals(CAPACITY, mHistory.getPosition());
+    }
+}
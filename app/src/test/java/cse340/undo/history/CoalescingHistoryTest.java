@@ -0,0 +1,104 @@
+package cse340.undo.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeThicknessAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CoalescingHistoryTest {
+    /** Maximum time between two merged actions, in milliseconds. */
+    private static final long WINDOW = 1000;
+
+    private CoalescingHistory mHistory;
+
+    /** Time the history's clock reports, in milliseconds. */
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mHistory = new CoalescingHistory(new RingHistory(4), WINDOW, () -> mNow);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeWindow() {
+        new CoalescingHistory(new RingHistory(4), -1);
+    }
+
+    @Test
+    public void mergesChangesWithinTheWindow() {
+        AbstractReversibleAction first = addThickness(1);
+        mNow += WINDOW / 2;
+        addThickness(2);
+        // The window starts again at every merge.
+        mNow += WINDOW;
+        addThickness(3);
+
+        assertEquals(1, mHistory.getPosition());
+        assertSame(first, mHistory.undo());
+        assertEquals("Change brush thickness to 3", first.toString());
+    }
+
+    @Test
+    public void keepsChangesApartOutsideTheWindow() {
+        addThickness(1);
+        mNow += WINDOW + 1;
+        addThickness(2);
+
+        assertEquals(2, mHistory.getPosition());
+    }
+
+    @Test
+    public void keepsActionsWhichDoNotMergeApart() {
+        addThickness(1);
+        AbstractReversibleAction other = new TestAction("other");
+        mHistory.addAction(other);
+        addThickness(2);
+
+        assertEquals(3, mHistory.getPosition());
+        assertSame(other, mHistory.peekUndo(1));
+    }
+
+    @Test
+    public void undoStopsMerging() {
+        AbstractReversibleAction first = addThickness(1);
+        mHistory.undo();
+        mHistory.redo();
+        AbstractReversibleAction second = addThickness(2);
+
+        assertEquals(2, mHistory.getPosition());
+        assertSame(second, mHistory.undo());
+        assertSame(first, mHistory.undo());
+    }
+
+    @Test
+    public void redoStopsMerging() {
+        addThickness(1);
+        // Even with nothing to redo.
+        assertNull(mHistory.redo());
+        addThickness(2);
+
+        assertEquals(2, mHistory.getPosition());
+    }
+
+    @Test
+    public void clearStopsMerging() {
+        addThickness(1);
+        mHistory.clear();
+        AbstractReversibleAction second = addThickness(2);
+
+        assertEquals(1, mHistory.getPosition());
+        assertSame(second, mHistory.undo());
+        assertEquals("Change brush thickness to 2", second.toString());
+    }
+
+    private AbstractReversibleAction addThickness(int thickness) {
+        AbstractReversibleAction action = new ChangeThicknessAction(thickness);
+        mHistory.addAction(action);
+        return action;
+    }
+}
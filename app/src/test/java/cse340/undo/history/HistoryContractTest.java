@@ -0,0 +1,169 @@
+package cse340.undo.history;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behavior every AbstractHistory must have. Subclasses create a history which holds at least
+ * CAPACITY TestActions of the default size.
+ *
+ * @see BoundedHistoryContractTest
+ */
+public abstract class HistoryContractTest {
+    /** Number of TestActions the history under test can hold at least. */
+    protected static final int CAPACITY = 4;
+
+    /** History under test. */
+    protected AbstractHistory mHistory;
+
+    /** Actions passed to the evicted listener, in order. */
+    protected List<AbstractReversibleAction> mEvicted;
+
+    /**
+     * @return A new, empty history holding at least CAPACITY TestActions of the default size.
+     */
+    protected abstract AbstractHistory createHistory();
+
+    @Before
+    public void setUp() {
+        mHistory = createHistory();
+        mEvicted = new ArrayList<>();
+        mHistory.setOnEvictedListener(mEvicted::add);
+    }
+
+    @Test
+    public void emptyHistoryHasNothingToUndoOrRedo() {
+        assertFalse(mHistory.canUndo());
+        assertFalse(mHistory.canRedo());
+        assertNull(mHistory.undo());
+        assertNull(mHistory.redo());
+        assertEquals(0, mHistory.getPosition());
+    }
+
+    @Test
+    public void undoAndRedoReturnActionsInReverseOrder() {
+        AbstractReversibleAction a = add("a"), b = add("b");
+
+        assertSame(b, mHistory.undo());
+        assertSame(a, mHistory.undo());
+        assertNull(mHistory.undo());
+        assertSame(a, mHistory.redo());
+        assertSame(b, mHistory.redo());
+        assertNull(mHistory.redo());
+    }
+
+    @Test
+    public void positionCountsDoneActions() {
+        add("a");
+        add("b");
+        assertEquals(2, mHistory.getPosition());
+
+        mHistory.undo();
+        assertEquals(1, mHistory.getPosition());
+        assertTrue(mHistory.canUndo());
+        assertTrue(mHistory.canRedo());
+
+        mHistory.redo();
+        assertEquals(2, mHistory.getPosition());
+        assertFalse(mHistory.canRedo());
+    }
+
+    @Test
+    public void addingLeavesNothingToRedo() {
+        AbstractReversibleAction a = add("a");
+        add("b");
+        mHistory.undo();
+
+        AbstractReversibleAction c = add("c");
+        assertFalse(mHistory.canRedo());
+        assertSame(c, mHistory.undo());
+        assertSame(a, mHistory.undo());
+        assertNull(mHistory.undo());
+        assertTrue(mEvicted.isEmpty());
+    }
+
+    @Test
+    public void clearEmptiesTheHistoryWithoutEvicting() {
+        add("a");
+        add("b");
+        mHistory.undo();
+
+        mHistory.clear();
+        assertFalse(mHistory.canUndo());
+        assertFalse(mHistory.canRedo());
+        assertEquals(0, mHistory.getPosition());
+        assertTrue(mEvicted.isEmpty());
+
+        AbstractReversibleAction c = add("c");
+        assertSame(c, mHistory.undo());
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void undoAndRedoSeveralStopAtTheEnds() {
+        AbstractReversibleAction a = add("a"), b = add("b"), c = add("c");
+
+        List<AbstractReversibleAction> undone = mHistory.undo(5);
+        assertEquals(3, undone.size());
+        assertSame(c, undone.get(0));
+        assertSame(a, undone.get(2));
+
+        List<AbstractReversibleAction> redone = mHistory.redo(2);
+        assertEquals(2, redone.size());
+        assertSame(a, redone.get(0));
+        assertSame(b, redone.get(1));
+        assertEquals(2, mHistory.getPosition());
+    }
+
+    @Test
+    public void peekUndoDoesNotChangeTheHistory() {
+        AbstractReversibleAction a = add("a"), b = add("b"), c = add("c");
+        mHistory.undo();
+
+        assertSame(b, mHistory.peekUndo(0));
+        assertSame(a, mHistory.peekUndo(1));
+        assertNull(mHistory.peekUndo(2));
+        assertEquals(2, mHistory.getPosition());
+        assertSame(b, mHistory.undo());
+        assertSame(b, mHistory.redo());
+        assertSame(c, mHistory.redo());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void peekUndoRejectsNegativeCount() {
+        mHistory.peekUndo(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void undoSeveralRejectsNegativeCount() {
+        mHistory.undo(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void redoSeveralRejectsNegativeCount() {
+        mHistory.redo(-1);
+    }
+
+    /**
+     * Adds a TestAction of the default size to the history under test.
+     *
+     * @param name  Name of the action.
+     * @return The added action.
+     */
+    protected AbstractReversibleAction add(String name) {
+        AbstractReversibleAction action = new TestAction(name);
+        mHistory.addAction(action);
+        return action;
+    }
+}
@@ -0,0 +1,255 @@
+package cse340.undo.history;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeColorAction;
+import cse340.undo.actions.ChangeThicknessAction;
+import cse340.undo.app.DrawingView;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Journals paint changes, then recovers them into a new history and view as the next session
+ * would, and checks that the recovered document and history match.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class JournalHistoryTest {
+    /** Number of actions the wrapped histories hold. */
+    private static final int CAPACITY = 4;
+
+    /** Longest time recovery may take, in milliseconds. */
+    private static final long TIMEOUT = 5000;
+
+    private static final int RED = 0xffff0000;
+
+    private File mDir;
+    private File mFile;
+    private DrawingView mView;
+    private JournalHistory mJournal;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("journal").toFile();
+        mFile = new File(mDir, "history.journal");
+        mJournal = open(new RingHistory(CAPACITY));
+    }
+
+    @After
+    public void tearDown() {
+        mJournal.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void recoversAddUndoAndRedo() {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        AbstractReversibleAction b = add(new ChangeThicknessAction(2));
+        AbstractReversibleAction c = add(new ChangeThicknessAction(3));
+        undo();
+        undo();
+        redo();
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(2, mJournal.getPosition());
+        assertCopy(b, mJournal.peekUndo(0));
+        assertCopy(a, mJournal.peekUndo(1));
+        assertEquals(2, mView.getCurrentStyle().getWidth(), 0);
+        assertCopy(c, redo());
+        assertEquals(3, mView.getCurrentStyle().getWidth(), 0);
+    }
+
+    @Test
+    public void recoversActionsReplacedAfterAFlush() {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        mJournal.flush();
+        // As a CoalescingHistory would, after the action was journaled.
+        a.mergeWith(new ChangeThicknessAction(9));
+        add(new ChangeThicknessAction(2));
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(2, mJournal.getPosition());
+        assertCopy(a, mJournal.peekUndo(1));
+        assertEquals("Change brush thickness to 9", mJournal.peekUndo(1).toString());
+    }
+
+    @Test
+    public void clearKeepsTheDrawingButNotTheHistory() {
+        add(new ChangeColorAction(RED));
+        add(new ChangeThicknessAction(7));
+        mJournal.clear();
+        AbstractReversibleAction c = add(new ChangeThicknessAction(3));
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(1, mJournal.getPosition());
+        assertCopy(c, mJournal.peekUndo(0));
+        assertEquals(RED, mView.getCurrentStyle().getColor());
+
+        // The cleared actions are now BASE records of the compacted journal.
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(1, mJournal.getPosition());
+        assertEquals(RED, mView.getCurrentStyle().getColor());
+        undo();
+        assertEquals(7, mView.getCurrentStyle().getWidth(), 0);
+    }
+
+    @Test
+    public void evictedActionsStayInTheDrawing() {
+        for (int i = 1; i <= CAPACITY + 2; i++) {
+            add(new ChangeThicknessAction(i));
+        }
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(CAPACITY, mJournal.getPosition());
+        for (int i = 0; i < CAPACITY; i++) {
+            undo();
+        }
+        assertFalse(mJournal.canUndo());
+        assertEquals(2, mView.getCurrentStyle().getWidth(), 0);
+    }
+
+    @Test
+    public void ignoresATornTail() throws IOException {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        AbstractReversibleAction b = add(new ChangeThicknessAction(2));
+        add(new ChangeThicknessAction(3));
+        mJournal.close();
+
+        // A crash in the middle of writing the last record.
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(2, mJournal.getPosition());
+        assertCopy(b, mJournal.peekUndo(0));
+        assertCopy(a, mJournal.peekUndo(1));
+        assertFalse(mJournal.canRedo());
+    }
+
+    @Test
+    public void ignoresACorruptTail() throws IOException {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        mJournal.close();
+
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[] { 0x7f, 1, 2, 3 });
+        }
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(1, mJournal.getPosition());
+        assertCopy(a, mJournal.peekUndo(0));
+    }
+
+    @Test
+    public void compactsLongJournals() {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        AbstractReversibleAction b = add(new ChangeThicknessAction(2));
+        for (int i = 0; i < 300; i++) {
+            undo();
+            redo();
+        }
+        undo();
+        mJournal.close();
+
+        // 601 undo and redo records alone would take more.
+        assertTrue(mFile.length() < 300);
+
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(1, mJournal.getPosition());
+        assertCopy(a, mJournal.peekUndo(0));
+        assertCopy(b, redo());
+    }
+
+    @Test
+    public void stopsJournalingAtActionsItCannotEncode() {
+        AbstractReversibleAction a = add(new ChangeThicknessAction(1));
+        add(new TestAction("unencodable"));
+        add(new ChangeThicknessAction(2));
+        assertEquals(3, mJournal.getPosition());
+
+        // The journal keeps the last document it could describe.
+        reopen(new RingHistory(CAPACITY));
+        assertEquals(1, mJournal.getPosition());
+        assertCopy(a, mJournal.peekUndo(0));
+        assertEquals(1, mView.getCurrentStyle().getWidth(), 0);
+    }
+
+    /**
+     * Closes the journal and recovers it into a new view, as after a restart.
+     */
+    private void reopen(AbstractHistory history) {
+        mJournal.close();
+        mJournal = open(history);
+    }
+
+    /**
+     * Opens the journal file into a new view, then waits until it is recovered.
+     */
+    private JournalHistory open(AbstractHistory history) {
+        mView = new DrawingView(RuntimeEnvironment.getApplication(), null);
+        JournalHistory journal = new JournalHistory(history);
+        boolean[] opened = new boolean[1];
+        journal.open(mFile, mView, () -> opened[0] = true);
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!opened[0]) {
+            assertTrue("Recovery timed out", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.yield();
+        }
+        return journal;
+    }
+
+    /**
+     * Does an action and adds it to the journal, as the activity would.
+     */
+    private AbstractReversibleAction add(AbstractReversibleAction action) {
+        action.doAction(mView);
+        mJournal.addAction(action);
+        return action;
+    }
+
+    private void undo() {
+        mJournal.undo().undoAction(mView);
+    }
+
+    private AbstractReversibleAction redo() {
+        AbstractReversibleAction action = mJournal.redo();
+        action.doAction(mView);
+        return action;
+    }
+
+    /**
+     * Checks that an action is a copy of the expected one.
+     */
+    private static void assertCopy(AbstractReversibleAction expected, AbstractReversibleAction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
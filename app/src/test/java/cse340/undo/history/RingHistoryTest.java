@@ -0,0 +1,24 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RingHistoryTest extends BoundedHistoryContractTest {
+    /** @inheritDoc */
+    @Override
+    protected AbstractHistory createHistory() {
+        return new RingHistory(CAPACITY);
+    }
+
+    @Test
+    public void reportsItsCapacity() {
+        assertEquals(CAPACITY, mHistory.getCapacity());
+        assertEquals(CAPACITY, new CoalescingHistory(mHistory, 0).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new RingHistory(0);
+    }
+}
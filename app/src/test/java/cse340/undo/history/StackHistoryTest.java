@@ -0,0 +1,24 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StackHistoryTest extends BoundedHistoryContractTest {
+    /** @inheritDoc */
+    @Override
+    protected AbstractHistory createHistory() {
+        return new StackHistory(CAPACITY);
+    }
+
+    @Test
+    public void reportsItsCapacity() {
+        assertEquals(CAPACITY, mHistory.getCapacity());
+        assertEquals(CAPACITY, new CoalescingHistory(mHistory, 0).getCapacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveCapacity() {
+        new StackHistory(0);
+    }
+}
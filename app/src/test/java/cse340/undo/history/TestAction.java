@@ -0,0 +1,35 @@
+package cse340.undo.history;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+/**
+ * Action which only records its name and retained size, for testing histories without a view.
+ */
+class TestAction extends AbstractReversibleAction {
+    /** Retained size reported by default, in bytes. */
+    static final long SIZE = 100;
+
+    private final String mName;
+    private final long mSize;
+
+    TestAction(String name) {
+        this(name, SIZE);
+    }
+
+    TestAction(String name, long size) {
+        mName = name;
+        mSize = size;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public long getRetainedSize() {
+        return mSize;
+    }
+
+    /** @inheritDoc */
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
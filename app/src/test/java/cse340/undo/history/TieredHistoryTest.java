@@ -0,0 +1,198 @@
+package cse340.undo.history;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+import cse340.undo.actions.ChangeThicknessAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Spills ChangeThicknessActions, which ActionCodec can encode, through a small window, and checks
+ * that the actions read back match the ones added.
+ */
+public class TieredHistoryTest {
+    /** Number of actions kept on the heap. */
+    private static final int WINDOW = 3;
+
+    /** Number of actions added by most tests, enough to spill most of them. */
+    private static final int COUNT = 10;
+
+    private File mDir;
+    private File mFile;
+    private TieredHistory mHistory;
+
+    /** Actions added to the history, in order. */
+    private List<AbstractReversibleAction> mAdded;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("tiered").toFile();
+        mFile = new File(mDir, "history.spill");
+        mHistory = new TieredHistory(mFile, WINDOW);
+        mAdded = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        mHistory.close();
+        mDir.delete();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveWindow() {
+        new TieredHistory(mFile, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsActionsItCannotEncode() {
+        mHistory.addAction(new TestAction("a"));
+    }
+
+    @Test
+    public void onlyCreatesTheFileOnceItSpills() {
+        addActions(WINDOW);
+        assertFalse(mFile.exists());
+
+        add();
+        assertTrue(mFile.length() > 0);
+    }
+
+    @Test
+    public void undoReadsSpilledActionsBack() {
+        addActions(COUNT);
+
+        for (int i = COUNT - 1; i >= 0; i--) {
+            AbstractReversibleAction action = mHistory.undo();
+            if (i >= COUNT - WINDOW) {
+                assertSame(mAdded.get(i), action);
+            } else {
+                // Re-created from the file, about to be undone.
+                assertNotSame(mAdded.get(i), action);
+                assertTrue(action.isDone());
+            }
+            assertCopy(mAdded.get(i), action);
+        }
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void redoPagesActionsBackIn() {
+        addActions(COUNT);
+        assertEquals(COUNT, mHistory.undo(COUNT).size());
+
+        for (int i = 0; i < COUNT; i++) {
+            AbstractReversibleAction action = mHistory.redo();
+            assertCopy(mAdded.get(i), action);
+            if (i >= WINDOW) {
+                // Dropped from the window on the way down, so re-created undone.
+                assertFalse(action.isDone());
+            }
+        }
+        assertNull(mHistory.redo());
+        assertEquals(COUNT, mHistory.getPosition());
+    }
+
+    @Test
+    public void jumpingAwayFromTheWindowPagesInAroundTheCursor() {
+        addActions(COUNT);
+        mHistory.undo(COUNT - 1);
+
+        assertCopy(mAdded.get(1), mHistory.redo());
+        assertCopy(mAdded.get(1), mHistory.undo());
+        assertCopy(mAdded.get(0), mHistory.undo());
+        assertEquals(COUNT, mHistory.redo(COUNT).size());
+        assertCopy(mAdded.get(COUNT - 1), mHistory.undo());
+    }
+
+    @Test
+    public void peekUndoReadsSpilledActionsWithoutMovingTheCursor() {
+        addActions(COUNT);
+
+        assertCopy(mAdded.get(1), mHistory.peekUndo(COUNT - 2));
+        assertCopy(mAdded.get(0), mHistory.peekUndo(COUNT - 1));
+        assertNull(mHistory.peekUndo(COUNT));
+        assertEquals(COUNT, mHistory.getPosition());
+        assertSame(mAdded.get(COUNT - 1), mHistory.undo());
+    }
+
+    @Test
+    public void addingTruncatesTheSpilledRedoBranch() {
+        addActions(COUNT);
+        mHistory.undo(COUNT - 2);
+        long spilled = mFile.length();
+
+        AbstractReversibleAction added = add();
+        assertTrue(mFile.length() < spilled);
+        assertFalse(mHistory.canRedo());
+        assertEquals(3, mHistory.getPosition());
+
+        // Spill the new branch, then read it back past where the old one was.
+        addActions(COUNT);
+        assertEquals(COUNT, mHistory.undo(COUNT).size());
+        assertCopy(added, mHistory.undo());
+        assertCopy(mAdded.get(1), mHistory.undo());
+        assertCopy(mAdded.get(0), mHistory.undo());
+        assertNull(mHistory.undo());
+    }
+
+    @Test
+    public void clearTruncatesTheFile() {
+        addActions(COUNT);
+        mHistory.undo(2);
+
+        mHistory.clear();
+        assertEquals(0, mFile.length());
+        assertFalse(mHistory.canUndo());
+        assertFalse(mHistory.canRedo());
+        assertEquals(0, mHistory.getPosition());
+
+        mAdded.clear();
+        addActions(COUNT);
+        assertEquals(COUNT, mHistory.undo(COUNT).size());
+        assertNull(mHistory.undo());
+        assertCopy(mAdded.get(0), mHistory.redo());
+    }
+
+    /**
+     * Adds count new actions.
+     */
+    private void addActions(int count) {
+        for (int i = 0; i < count; i++) {
+            add();
+        }
+    }
+
+    /**
+     * Adds an action with a thickness unique to it.
+     *
+     * @return The added action.
+     */
+    private AbstractReversibleAction add() {
+        AbstractReversibleAction action = new ChangeThicknessAction(mAdded.size() + 1);
+        mHistory.addAction(action);
+        mAdded.add(action);
+        return action;
+    }
+
+    /**
+     * Checks that an action is the expected one or a copy of it.
+     */
+    private static void assertCopy(AbstractReversibleAction expected, AbstractReversibleAction actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
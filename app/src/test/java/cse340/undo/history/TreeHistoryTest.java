@@ -0,0 +1,140 @@
+package cse340.undo.history;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import cse340.undo.actions.AbstractReversibleAction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TreeHistoryTest extends HistoryContractTest {
+    /** @inheritDoc */
+    @Override
+    protected AbstractHistory createHistory() {
+        return new TreeHistory();
+    }
+
+    @Test
+    public void supportsBranchesThroughWrappers() {
+        assertTrue(mHistory.supportsBranches());
+        assertTrue(new CoalescingHistory(mHistory, 0).supportsBranches());
+        assertFalse(new RingHistory(CAPACITY).supportsBranches());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void otherHistoriesRejectBranchMethods() {
+        new RingHistory(CAPACITY).getBranches();
+    }
+
+    @Test
+    public void emptyHistoryHasNoBranches() {
+        assertTrue(mHistory.getBranches().isEmpty());
+    }
+
+    @Test
+    public void extendingATipKeepsOneBranch() {
+        add("a");
+        add("b");
+        mHistory.undo();
+        mHistory.redo();
+        AbstractReversibleAction c = add("c");
+
+        List<Branch> branches = mHistory.getBranches();
+        assertEquals(1, branches.size());
+        assertSame(c, branches.get(0).getTip());
+        assertEquals(3, branches.get(0).getDepth());
+    }
+
+    @Test
+    public void addingAfterUndoStartsABranch() {
+        add("a");
+        AbstractReversibleAction b = add("b");
+        mHistory.undo();
+        AbstractReversibleAction c = add("c");
+        mHistory.undo(2);
+        AbstractReversibleAction d = add("d");
+
+        // Branches come in the order their tips were added.
+        List<Branch> branches = mHistory.getBranches();
+        assertEquals(3, branches.size());
+        assertSame(b, branches.get(0).getTip());
+        assertSame(c, branches.get(1).getTip());
+        assertSame(d, branches.get(2).getTip());
+        assertEquals(1, branches.get(2).getDepth());
+    }
+
+    @Test
+    public void currentBranchIsWhereRedoLeads() {
+        add("a");
+        AbstractReversibleAction b = add("b");
+        mHistory.undo();
+        AbstractReversibleAction c = add("c");
+
+        assertSame(c, mHistory.getCurrentBranch().getTip());
+        mHistory.undo(2);
+        // Redo follows the most recently visited child.
+        assertSame(c, mHistory.getCurrentBranch().getTip());
+
+        mHistory.selectBranch(mHistory.getBranches().get(0));
+        assertSame(b, mHistory.getCurrentBranch().getTip());
+        assertEquals(mHistory.getBranches().get(0), mHistory.getCurrentBranch());
+    }
+
+    @Test
+    public void selectBranchReturnsTheUndosToTheCommonAncestor() {
+        AbstractReversibleAction a = add("a");
+        AbstractReversibleAction b = add("b");
+        add("b2");
+        mHistory.undo(2);
+        add("c");
+        add("c2");
+        add("c3");
+        Branch first = mHistory.getBranches().get(0);
+
+        assertEquals(3, mHistory.selectBranch(first));
+        // Nothing moves until the caller undoes and redoes.
+        assertEquals(4, mHistory.getPosition());
+        mHistory.undo(3);
+        assertSame(a, mHistory.peekUndo(0));
+        assertSame(b, mHistory.redo());
+        assertEquals(first.getDepth() - 2, mHistory.redo(first.getDepth()).size());
+        assertSame(first.getTip(), mHistory.peekUndo(0));
+        assertFalse(mHistory.canRedo());
+    }
+
+    @Test
+    public void selectingTheCurrentBranchNeedsNoUndo() {
+        add("a");
+        add("b");
+        mHistory.undo();
+
+        assertEquals(0, mHistory.selectBranch(mHistory.getCurrentBranch()));
+        assertEquals(1, mHistory.getPosition());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void selectBranchRejectsClearedBranches() {
+        add("a");
+        Branch branch = mHistory.getCurrentBranch();
+        mHistory.clear();
+        add("b");
+
+        mHistory.selectBranch(branch);
+    }
+
+    @Test
+    public void clearDropsEveryBranch() {
+        add("a");
+        mHistory.undo();
+        add("b");
+
+        mHistory.clear();
+        assertTrue(mHistory.getBranches().isEmpty());
+        assertNull(mHistory.redo());
+    }
+}